@@ -0,0 +1,138 @@
+package com.aigreentick.audit.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Who performed a request, for database-level auditing. Immutable, so one instance can be shared by every
+ * thread working on the request.
+ * <p>
+ * Only plain header values are read when the request comes in; the client IP is resolved from them on first use,
+ * so requests that never write to MongoDB pay nothing for it. Nothing references the request itself, which the
+ * container recycles once it completed.
+ */
+public final class AuditContext {
+
+    public static final AuditContext EMPTY = new AuditContext(null, null, null, null, null, null, null);
+
+    private final String username;
+    private final String userId;
+    private final String organizationId;
+    private final String urlDomain;
+
+    // Raw values the client IP is resolved from
+    private final String forwardedFor;
+    private final String realIp;
+    private final String remoteAddress;
+
+    // Resolved on first use; racing threads compute the same value
+    private String ipAddress;
+
+    private AuditContext(String username, String userId, String organizationId, String urlDomain,
+                         String forwardedFor, String realIp, String remoteAddress) {
+        this.username = username;
+        this.userId = userId;
+        this.organizationId = organizationId;
+        this.urlDomain = urlDomain;
+        this.forwardedFor = forwardedFor;
+        this.realIp = realIp;
+        this.remoteAddress = remoteAddress;
+    }
+
+    public static AuditContext of(String username, String userId, String organizationId, String urlDomain,
+                                  String ipAddress) {
+        return new AuditContext(username, userId, organizationId, urlDomain, null, null, ipAddress);
+    }
+
+    /**
+     * Context of an HTTP request: user headers, the host the request was sent to and the client address.
+     * A missing {@code X-Username} is recorded as {@code anonymous}.
+     */
+    public static AuditContext fromRequest(HttpServletRequest request) {
+        String username = request.getHeader("X-Username");
+        if (username == null || username.isEmpty()) {
+            username = "anonymous";
+        }
+        return new AuditContext(username, request.getHeader("X-User-Id"), request.getHeader("X-Organization-Id"),
+            // Host of the request URL, without building it
+            request.getServerName(),
+            request.getHeader("X-Forwarded-For"), request.getHeader("X-Real-IP"), request.getRemoteAddr());
+    }
+
+    /**
+     * Context of a WebFlux request, read the same way as {@link #fromRequest(HttpServletRequest)}
+     */
+    public static AuditContext fromRequest(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        String username = headers.getFirst("X-Username");
+        if (username == null || username.isEmpty()) {
+            username = "anonymous";
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return new AuditContext(username, headers.getFirst("X-User-Id"), headers.getFirst("X-Organization-Id"),
+            request.getURI().getHost(),
+            headers.getFirst("X-Forwarded-For"), headers.getFirst("X-Real-IP"),
+            remoteAddress != null ? remoteAddress.getHostString() : null);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getOrganizationId() {
+        return organizationId;
+    }
+
+    public String getUrlDomain() {
+        return urlDomain;
+    }
+
+    /**
+     * First address of {@code X-Forwarded-For}, else {@code X-Real-IP}, else the remote address
+     */
+    public String getIpAddress() {
+        String resolved = ipAddress;
+        if (resolved == null) {
+            resolved = resolveIpAddress();
+            ipAddress = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * The context as a document to stamp on the written document, or null if it is empty
+     */
+    public org.bson.Document toStamp() {
+        org.bson.Document stamp = new org.bson.Document();
+        putIfPresent(stamp, "username", getUsername());
+        putIfPresent(stamp, "userId", getUserId());
+        putIfPresent(stamp, "organizationId", getOrganizationId());
+        putIfPresent(stamp, "urlDomain", getUrlDomain());
+        putIfPresent(stamp, "ipAddress", getIpAddress());
+        return stamp.isEmpty() ? null : stamp;
+    }
+
+    private String resolveIpAddress() {
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            int comma = forwardedFor.indexOf(',');
+            return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+        }
+        if (realIp != null && !realIp.isEmpty()) {
+            return realIp;
+        }
+        return remoteAddress;
+    }
+
+    private static void putIfPresent(org.bson.Document stamp, String key, String value) {
+        if (value != null && !value.isEmpty()) {
+            stamp.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Structural diff of two stored documents, for UPDATE audit logs that record only what changed.
+ * Embedded documents are compared field by field and reported by dotted path ({@code address.city});
+ * any other value, arrays included, is reported as a whole when it differs.
+ */
+public final class AuditDiff {
+
+    public static final String PATH = "path";
+    public static final String OLD = "old";
+    public static final String NEW = "new";
+
+    private AuditDiff() {
+    }
+
+    /**
+     * Changed paths between the two documents as {@code {path, old, new}}, in document order
+     */
+    public static List<Document> diff(Document oldDocument, Document newDocument) {
+        List<Document> changes = new ArrayList<>();
+        diff("", oldDocument, newDocument, changes);
+        return changes;
+    }
+
+    /**
+     * Set the values of an UPDATE audit log: the changed paths, plus both documents if a full snapshot is wanted.
+     * Without the old document there is nothing to diff against, and the new document is kept as it is.
+     *
+     * @return false if nothing changed
+     */
+    public static boolean applyUpdate(AuditLog auditLog, Document oldDocument, Document newDocument, boolean fullSnapshot) {
+        if (oldDocument == null || newDocument == null) {
+            auditLog.setOldValue(oldDocument);
+            auditLog.setNewValue(newDocument);
+            return true;
+        }
+        List<Document> changes = diff(oldDocument, newDocument);
+        auditLog.setChanges(changes);
+        if (fullSnapshot) {
+            auditLog.setOldValue(oldDocument);
+            auditLog.setNewValue(newDocument);
+        }
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Net changes of two consecutive change lists: per path the first old and the last new value.
+     * Paths that ended up where they started are left out.
+     */
+    public static List<Document> merge(List<Document> earlier, List<Document> later) {
+        Map<String, Document> merged = new LinkedHashMap<>();
+        for (Document change : earlier) {
+            merged.put(change.getString(PATH), change);
+        }
+        for (Document change : later) {
+            String path = change.getString(PATH);
+            Document first = merged.get(path);
+            if (first == null) {
+                merged.put(path, change);
+                continue;
+            }
+            Document net = new Document(PATH, path);
+            if (first.containsKey(OLD)) {
+                net.append(OLD, first.get(OLD));
+            }
+            if (change.containsKey(NEW)) {
+                net.append(NEW, change.get(NEW));
+            }
+            boolean unchanged = net.containsKey(OLD) == net.containsKey(NEW) && Objects.equals(net.get(OLD), net.get(NEW));
+            if (unchanged) {
+                merged.remove(path);
+            } else {
+                merged.put(path, net);
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static void diff(String prefix, Map<String, Object> oldDocument, Map<String, Object> newDocument,
+                             List<Document> changes) {
+        for (Map.Entry<String, Object> entry : oldDocument.entrySet()) {
+            String path = prefix + entry.getKey();
+            Object oldValue = entry.getValue();
+            if (!newDocument.containsKey(entry.getKey())) {
+                changes.add(new Document(PATH, path).append(OLD, oldValue));
+                continue;
+            }
+            Object newValue = newDocument.get(entry.getKey());
+            if (oldValue instanceof Map<?, ?> oldEmbedded && newValue instanceof Map<?, ?> newEmbedded) {
+                diff(path + ".", asDocument(oldEmbedded), asDocument(newEmbedded), changes);
+            } else if (!Objects.equals(oldValue, newValue)) {
+                changes.add(new Document(PATH, path).append(OLD, oldValue).append(NEW, newValue));
+            }
+        }
+        for (Map.Entry<String, Object> entry : newDocument.entrySet()) {
+            if (!oldDocument.containsKey(entry.getKey())) {
+                changes.add(new Document(PATH, prefix + entry.getKey()).append(NEW, entry.getValue()));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asDocument(Map<?, ?> map) {
+        return map.isEmpty() ? Collections.emptyMap() : (Map<String, Object>) map;
+    }
+}
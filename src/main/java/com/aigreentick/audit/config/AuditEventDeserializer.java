@@ -0,0 +1,46 @@
+package com.aigreentick.audit.config;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads audit and exception events in either {@link AuditWireFormat}, detected per record,
+ * so JSON records written before the switch to the binary format are still consumed
+ */
+public class AuditEventDeserializer<T> implements Deserializer<T> {
+
+    private final Class<T> type;
+    private final ObjectReader binaryReader;
+    private final ObjectReader jsonReader;
+
+    public AuditEventDeserializer(Class<T> type) {
+        this.type = type;
+        this.binaryReader = AuditWireFormat.CBOR_MAPPER.readerFor(type);
+        this.jsonReader = AuditWireFormat.JSON_MAPPER.readerFor(type);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            if (AuditWireFormat.isBinary(data)) {
+                byte version = data[1];
+                if (version != AuditWireFormat.BINARY_VERSION) {
+                    throw new SerializationException("Unsupported binary format version " + version
+                        + " of " + type.getSimpleName() + " on topic " + topic);
+                }
+                return binaryReader.readValue(data, AuditWireFormat.BINARY_HEADER_LENGTH,
+                    data.length - AuditWireFormat.BINARY_HEADER_LENGTH);
+            }
+            return jsonReader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Could not deserialize " + type.getSimpleName()
+                + " from topic " + topic, e);
+        }
+    }
+}
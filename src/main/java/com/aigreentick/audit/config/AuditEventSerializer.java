@@ -0,0 +1,50 @@
+package com.aigreentick.audit.config;
+
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+
+/**
+ * Writes audit and exception events in the configured {@link AuditWireFormat}
+ */
+public class AuditEventSerializer<T> implements Serializer<T> {
+
+    private final AuditWireFormat wireFormat;
+    private final ObjectWriter writer;
+
+    public AuditEventSerializer(AuditWireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+        this.writer = wireFormat == AuditWireFormat.BINARY
+            ? AuditWireFormat.CBOR_MAPPER.writer()
+            : AuditWireFormat.JSON_MAPPER.writer();
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (wireFormat == AuditWireFormat.JSON) {
+                return writer.writeValueAsBytes(data);
+            }
+            // Write the header and the payload into one buffer instead of copying the payload behind the header
+            try (ByteArrayBuilder out = new ByteArrayBuilder(512)) {
+                out.write(AuditWireFormat.MAGIC_BYTE);
+                out.write(AuditWireFormat.BINARY_VERSION);
+                writer.writeValue(out, data);
+                return out.toByteArray();
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Could not serialize " + data.getClass().getSimpleName()
+                + " for topic " + topic, e);
+        }
+    }
+
+    public AuditWireFormat getWireFormat() {
+        return wireFormat;
+    }
+}
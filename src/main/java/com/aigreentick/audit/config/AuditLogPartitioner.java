@@ -0,0 +1,82 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Chooses the audit log partition by {@code audit.partitioning.strategy}:
+ * <ul>
+ *     <li>{@code entity} - hash of the record key ({@code entityName-entityId}), as Kafka's default partitioner</li>
+ *     <li>{@code organization} - hash of the organization id, one partition per tenant for locality and isolation</li>
+ *     <li>{@code spread} - the organization's hash picks the first of {@code audit.partitioning.spread-partitions}
+ *     consecutive partitions and the entity's hash one of them, so a busy tenant spreads over a few partitions
+ *     without touching the others</li>
+ * </ul>
+ * Records without organization go by entity under every strategy.
+ * <p>
+ * The organization is the one of the request ({@code X-Organization-Id}), not a property of the entity, so Kafka
+ * ordering is per (organization, entity): every strategy sends the audit logs of an entity written under one
+ * organization to one partition, in order. Under {@code organization} and {@code spread} the same entity written
+ * under another organization, or without one (e.g. by a background job), may land on another partition and be
+ * consumed out of order relative to it. Only {@code entity} orders all audit logs of an entity.
+ */
+public class AuditLogPartitioner implements Partitioner {
+
+    public static final String STRATEGY_CONFIG = "audit.partitioning.strategy";
+    public static final String SPREAD_PARTITIONS_CONFIG = "audit.partitioning.spread-partitions";
+
+    public enum Strategy {
+        ENTITY, ORGANIZATION, SPREAD;
+
+        public static Strategy fromProperty(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private Strategy strategy = Strategy.ENTITY;
+    private int spreadPartitions = 4;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object configuredStrategy = configs.get(STRATEGY_CONFIG);
+        if (configuredStrategy != null) {
+            strategy = Strategy.fromProperty(configuredStrategy.toString());
+        }
+        Object configuredSpread = configs.get(SPREAD_PARTITIONS_CONFIG);
+        if (configuredSpread != null) {
+            spreadPartitions = Math.max(1, Integer.parseInt(configuredSpread.toString()));
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        String organizationId = value instanceof AuditLog auditLog ? auditLog.getOrganizationId() : null;
+        return partition(strategy, spreadPartitions, organizationId, keyBytes, cluster.partitionCountForTopic(topic));
+    }
+
+    /**
+     * Partition of a record with the given organization and serialized key
+     */
+    public static int partition(Strategy strategy, int spreadPartitions, String organizationId, byte[] keyBytes,
+                                int partitionCount) {
+        int entityHash = keyBytes != null ? Utils.toPositive(Utils.murmur2(keyBytes)) : 0;
+        if (strategy == Strategy.ENTITY || organizationId == null || organizationId.isEmpty()) {
+            return entityHash % partitionCount;
+        }
+        int organizationHash = Utils.toPositive(Utils.murmur2(organizationId.getBytes(StandardCharsets.UTF_8)));
+        if (strategy == Strategy.ORGANIZATION) {
+            return organizationHash % partitionCount;
+        }
+        return (organizationHash + entityHash % Math.min(spreadPartitions, partitionCount)) % partitionCount;
+    }
+
+    @Override
+    public void close() {
+    }
+}
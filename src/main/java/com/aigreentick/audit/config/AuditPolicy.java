@@ -0,0 +1,395 @@
+package com.aigreentick.audit.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which collections, actions and fields are audited, compiled once at startup so the capture path only does a
+ * map lookup and a bit test per event. A collection that is not audited costs no old-value read, no serialization
+ * and no Kafka send.
+ * <p>
+ * Properties, all comma-separated:
+ * <ul>
+ *     <li>{@code audit.policy.include-collections} - collections to audit, empty for all</li>
+ *     <li>{@code audit.policy.exclude-collections} - collections never audited; wins over the include list.
+ *     The audit log collection itself is always excluded</li>
+ *     <li>{@code audit.policy.actions} - audited actions ({@code CREATE}, {@code UPDATE}, {@code DELETE});
+ *     {@code collection:ACTION} entries replace them for that collection</li>
+ *     <li>{@code audit.policy.ignored-fields} - field paths left out of audited values (dotted for embedded
+ *     documents, not through arrays); {@code collection:path} entries apply to that collection only</li>
+ *     <li>{@code audit.policy.full-snapshot-collections} - collections whose UPDATE audit logs keep the full old
+ *     and new document next to the changed fields</li>
+ *     <li>{@code audit.policy.coalesce-window-ms} - window in which consecutive updates of an entity by the same
+ *     user are merged into one audit log, 0 for none; {@code collection:ms} entries set it per collection</li>
+ * </ul>
+ */
+@Component
+public class AuditPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditPolicy.class);
+
+    private static final int CREATE = 1;
+    private static final int UPDATE = 1 << 1;
+    private static final int DELETE = 1 << 2;
+
+    private static final CollectionPolicy NOT_AUDITED = new CollectionPolicy(0, null, false, 0);
+
+    private final Map<String, CollectionPolicy> policies = new HashMap<>();
+    private final CollectionPolicy defaultPolicy;
+    private final Set<String> includedCollections;
+    private final Set<String> excludedCollections;
+
+    public AuditPolicy(@Value("${audit.collection.name:audit_logs}") String auditLogsCollection,
+                       @Value("${audit.policy.include-collections:}") List<String> includeCollections,
+                       @Value("${audit.policy.exclude-collections:}") List<String> excludeCollections,
+                       @Value("${audit.policy.actions:CREATE,UPDATE,DELETE}") List<String> actions,
+                       @Value("${audit.policy.ignored-fields:}") List<String> ignoredFields,
+                       @Value("${audit.policy.full-snapshot-collections:${audit.diff.full-snapshot-collections:}}")
+                       List<String> fullSnapshotCollections,
+                       @Value("${audit.policy.coalesce-window-ms:}") List<String> coalesceWindows) {
+        this.includedCollections = Collections.unmodifiableSet(entries(includeCollections));
+        Set<String> excluded = entries(excludeCollections);
+        excluded.add(auditLogsCollection);
+        this.excludedCollections = Collections.unmodifiableSet(excluded);
+
+        int defaultActions = 0;
+        Map<String, Integer> collectionActions = new HashMap<>();
+        for (String entry : entries(actions)) {
+            int separator = entry.indexOf(':');
+            if (separator < 0) {
+                defaultActions |= actionBit(entry);
+            } else {
+                collectionActions.merge(entry.substring(0, separator).trim(),
+                    actionBit(entry.substring(separator + 1)), (a, b) -> a | b);
+            }
+        }
+
+        Set<String> ignoredEntries = entries(ignoredFields);
+        PathNode defaultIgnored = new PathNode();
+        for (String entry : ignoredEntries) {
+            if (entry.indexOf(':') < 0) {
+                defaultIgnored.add(entry);
+            }
+        }
+        Map<String, PathNode> collectionIgnored = new HashMap<>();
+        for (String entry : ignoredEntries) {
+            int separator = entry.indexOf(':');
+            if (separator >= 0) {
+                // Collection rules add to the global ones
+                collectionIgnored.computeIfAbsent(entry.substring(0, separator).trim(), name -> {
+                    PathNode node = new PathNode();
+                    defaultIgnored.copyInto(node, "");
+                    return node;
+                }).add(entry.substring(separator + 1).trim());
+            }
+        }
+
+        Set<String> fullSnapshot = entries(fullSnapshotCollections);
+
+        long defaultWindowMs = 0;
+        Map<String, Long> collectionWindowsMs = new HashMap<>();
+        for (String entry : entries(coalesceWindows)) {
+            int separator = entry.indexOf(':');
+            if (separator < 0) {
+                defaultWindowMs = Long.parseLong(entry);
+            } else {
+                collectionWindowsMs.put(entry.substring(0, separator).trim(),
+                    Long.parseLong(entry.substring(separator + 1).trim()));
+            }
+        }
+
+        this.defaultPolicy = includedCollections.isEmpty()
+            ? new CollectionPolicy(defaultActions, defaultIgnored.orNull(), false, defaultWindowMs)
+            : NOT_AUDITED;
+
+        Set<String> named = new LinkedHashSet<>(includedCollections);
+        named.addAll(collectionActions.keySet());
+        named.addAll(collectionIgnored.keySet());
+        named.addAll(fullSnapshot);
+        named.addAll(collectionWindowsMs.keySet());
+        for (String collection : named) {
+            if (!includedCollections.isEmpty() && !includedCollections.contains(collection)) {
+                continue;
+            }
+            PathNode ignored = collectionIgnored.getOrDefault(collection, defaultIgnored);
+            policies.put(collection, new CollectionPolicy(collectionActions.getOrDefault(collection, defaultActions),
+                ignored.orNull(), fullSnapshot.contains(collection),
+                collectionWindowsMs.getOrDefault(collection, defaultWindowMs)));
+        }
+        for (String collection : excludedCollections) {
+            policies.put(collection, NOT_AUDITED);
+        }
+
+        logger.info("=== Audit policy: collections {}, excluded {}, {} collection rules ===",
+            includedCollections.isEmpty() ? "all" : includedCollections, excludedCollections, policies.size());
+    }
+
+    /**
+     * Compiled policy of a collection, never null
+     */
+    public CollectionPolicy forCollection(String collectionName) {
+        if (collectionName == null) {
+            return defaultPolicy;
+        }
+        return policies.getOrDefault(collectionName, defaultPolicy);
+    }
+
+    /**
+     * Explicitly included collections, empty if all are audited
+     */
+    public Set<String> getIncludedCollections() {
+        return includedCollections;
+    }
+
+    public Set<String> getExcludedCollections() {
+        return excludedCollections;
+    }
+
+    public static final class CollectionPolicy {
+
+        private final int actions;
+        // Root of the ignored field paths, null if none
+        private final PathNode ignoredFields;
+        private final boolean fullSnapshot;
+        private final long coalesceWindowMs;
+
+        private CollectionPolicy(int actions, PathNode ignoredFields, boolean fullSnapshot, long coalesceWindowMs) {
+            this.actions = actions;
+            this.ignoredFields = ignoredFields;
+            this.fullSnapshot = fullSnapshot;
+            this.coalesceWindowMs = coalesceWindowMs;
+        }
+
+        /**
+         * False if no action of the collection is audited
+         */
+        public boolean isAudited() {
+            return actions != 0;
+        }
+
+        public boolean audits(String action) {
+            return (actions & actionBitOrZero(action)) != 0;
+        }
+
+        public boolean isFullSnapshot() {
+            return fullSnapshot;
+        }
+
+        /**
+         * Window for merging consecutive updates of an entity, 0 if they are not merged
+         */
+        public long getCoalesceWindowMs() {
+            return coalesceWindowMs;
+        }
+
+        /**
+         * The document without its ignored fields. Returns the same instance if it has none of them, otherwise a
+         * copy - the document passed in is never modified.
+         */
+        public Document filter(Document document) {
+            if (ignoredFields == null || document == null) {
+                return document;
+            }
+            return ignoredFields.filter(document);
+        }
+
+        /**
+         * A query filter or operator update spec without its ignored fields, for writes audited by their command:
+         * keys may be dotted paths and operators ({@code $set}, {@code $unset}, {@code $and}, ...) are looked into.
+         * Returns the same instance if nothing was removed.
+         */
+        public Document filterOperation(Document operation) {
+            if (ignoredFields == null || operation == null) {
+                return operation;
+            }
+            return ignoredFields.filterOperation(operation);
+        }
+
+        /**
+         * An aggregation pipeline update without the ignored fields of its stages
+         */
+        public List<?> filterPipeline(List<?> pipeline) {
+            if (ignoredFields == null || pipeline == null) {
+                return pipeline;
+            }
+            return (List<?>) ignoredFields.filterOperationValue(pipeline);
+        }
+    }
+
+    /**
+     * Trie of ignored field paths, one level per path segment
+     */
+    private static final class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<>();
+        private boolean ignored;
+
+        void add(String path) {
+            PathNode node = this;
+            for (String segment : path.split("\\.")) {
+                if (node.ignored) {
+                    // A parent is ignored as a whole already
+                    return;
+                }
+                node = node.children.computeIfAbsent(segment, key -> new PathNode());
+            }
+            node.ignored = true;
+            node.children.clear();
+        }
+
+        void copyInto(PathNode target, String prefix) {
+            for (Map.Entry<String, PathNode> child : children.entrySet()) {
+                String path = prefix + child.getKey();
+                if (child.getValue().ignored) {
+                    target.add(path);
+                } else {
+                    child.getValue().copyInto(target, path + ".");
+                }
+            }
+        }
+
+        PathNode orNull() {
+            return children.isEmpty() ? null : this;
+        }
+
+        Document filter(Document document) {
+            Document filtered = null;
+            for (Map.Entry<String, PathNode> child : children.entrySet()) {
+                Object value = document.get(child.getKey());
+                if (value == null && !document.containsKey(child.getKey())) {
+                    continue;
+                }
+                if (child.getValue().ignored) {
+                    if (filtered == null) {
+                        filtered = new Document(document);
+                    }
+                    filtered.remove(child.getKey());
+                } else if (value instanceof Document embedded) {
+                    Document filteredEmbedded = child.getValue().filter(embedded);
+                    if (filteredEmbedded != embedded) {
+                        if (filtered == null) {
+                            filtered = new Document(document);
+                        }
+                        filtered.put(child.getKey(), filteredEmbedded);
+                    }
+                }
+            }
+            return filtered != null ? filtered : document;
+        }
+
+        Document filterOperation(Document operation) {
+            Document filtered = null;
+            for (Map.Entry<String, Object> entry : operation.entrySet()) {
+                Object value = entry.getValue();
+                Object filteredValue;
+                if (entry.getKey().startsWith("$")) {
+                    // The fields under an operator are paths from this level
+                    filteredValue = filterOperationValue(value);
+                } else {
+                    PathNode node = resolve(entry.getKey());
+                    if (node == null) {
+                        continue;
+                    }
+                    if (node.ignored) {
+                        filteredValue = null;
+                    } else {
+                        // Not through arrays, like filter
+                        filteredValue = value instanceof Document document ? node.filterOperation(document) : value;
+                    }
+                }
+                if (filteredValue == value) {
+                    continue;
+                }
+                if (filtered == null) {
+                    filtered = new Document(operation);
+                }
+                if (filteredValue == null) {
+                    filtered.remove(entry.getKey());
+                } else {
+                    filtered.put(entry.getKey(), filteredValue);
+                }
+            }
+            return filtered != null ? filtered : operation;
+        }
+
+        Object filterOperationValue(Object value) {
+            if (value instanceof Document document) {
+                return filterOperation(document);
+            }
+            if (value instanceof List<?> list) {
+                // $and/$or branches, pipeline stages
+                List<Object> filtered = null;
+                for (int i = 0; i < list.size(); i++) {
+                    Object element = list.get(i);
+                    Object filteredElement = filterOperationValue(element);
+                    if (filteredElement != element) {
+                        if (filtered == null) {
+                            filtered = new ArrayList<>(list);
+                        }
+                        filtered.set(i, filteredElement);
+                    }
+                }
+                return filtered != null ? filtered : list;
+            }
+            return value;
+        }
+
+        /**
+         * Node of a dotted path, the ignored node if a parent of the path is ignored, null if nothing below it is
+         */
+        private PathNode resolve(String path) {
+            if (path.indexOf('.') < 0) {
+                return children.get(path);
+            }
+            PathNode node = this;
+            for (String segment : path.split("\\.")) {
+                node = node.children.get(segment);
+                if (node == null || node.ignored) {
+                    return node;
+                }
+            }
+            return node;
+        }
+    }
+
+    private static int actionBit(String action) {
+        int bit = actionBitOrZero(action.trim().toUpperCase(Locale.ROOT));
+        if (bit == 0) {
+            throw new IllegalArgumentException("Unknown audit action in audit.policy.actions: " + action);
+        }
+        return bit;
+    }
+
+    private static int actionBitOrZero(String action) {
+        return switch (action) {
+            case "CREATE" -> CREATE;
+            case "UPDATE" -> UPDATE;
+            case "DELETE" -> DELETE;
+            default -> 0;
+        };
+    }
+
+    private static Set<String> entries(List<String> values) {
+        Set<String> entries = new LinkedHashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.isBlank()) {
+                    entries.add(value.trim());
+                }
+            }
+        }
+        return entries;
+    }
+}
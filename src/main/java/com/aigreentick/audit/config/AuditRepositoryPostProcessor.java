@@ -0,0 +1,37 @@
+package com.aigreentick.audit.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds {@link BulkSavePreImageInterceptor} to every repository, so that {@code saveAll} on existing entities
+ * reads their old values in one query. Only used by the listener capture mode.
+ */
+@Component
+public class AuditRepositoryPostProcessor implements BeanPostProcessor {
+
+    private final BulkSavePreImageInterceptor interceptor;
+    private final boolean enabled;
+
+    public AuditRepositoryPostProcessor(ObjectProvider<MongoTemplate> mongoTemplate,
+                                        ObjectProvider<AuditPolicy> auditPolicy,
+                                        @Value("${audit.capture.mode:listener}") String captureMode) {
+        // Resolved lazily, post-processors are created before regular beans
+        this.interceptor = new BulkSavePreImageInterceptor(mongoTemplate::getObject, auditPolicy::getObject);
+        this.enabled = !ChangeStreamAuditCapture.MODE.equals(captureMode)
+            && !ReactiveMongoAuditCallbacks.MODE.equals(captureMode);
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (enabled && bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(interceptor)));
+        }
+        return bean;
+    }
+}
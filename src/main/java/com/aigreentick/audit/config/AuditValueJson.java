@@ -0,0 +1,105 @@
+package com.aigreentick.audit.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonReader;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonReader;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Jackson mapping of the BSON documents audit logs carry as old and new value.
+ * <ul>
+ *     <li>In the binary wire format the document is embedded as its BSON bytes, so BSON types (ObjectId, dates,
+ *     decimals) survive the trip to MongoDB unchanged and no JSON is produced at all</li>
+ *     <li>In JSON (the JSON wire format and the REST API) it is written as relaxed Extended JSON</li>
+ *     <li>Values written as JSON strings before they became documents are still read</li>
+ * </ul>
+ */
+public final class AuditValueJson {
+
+    private static final DocumentCodec CODEC = new DocumentCodec();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    // Serializers run on producer and publisher threads; the BSON bytes are copied out by the generator
+    private static final ThreadLocal<BasicOutputBuffer> BSON_BUFFER = ThreadLocal.withInitial(() -> new BasicOutputBuffer(512));
+
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder()
+            .outputMode(JsonMode.RELAXED)
+            .build();
+
+    private AuditValueJson() {
+    }
+
+    public static class Serializer extends JsonSerializer<Document> {
+
+        @Override
+        public void serialize(Document value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (generator instanceof CBORGenerator) {
+                BasicOutputBuffer buffer = BSON_BUFFER.get();
+                buffer.truncateToPosition(0);
+                try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+                    CODEC.encode(writer, value, ENCODER_CONTEXT);
+                }
+                generator.writeBinary(buffer.getInternalBuffer(), 0, buffer.getPosition());
+            } else {
+                generator.writeRawValue(value.toJson(JSON_SETTINGS, CODEC));
+            }
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<Document> {
+
+        @Override
+        public Document deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return CODEC.decode(reader(parser), DECODER_CONTEXT);
+        }
+    }
+
+    /**
+     * BSON reader over the value at the parser's current token: embedded BSON bytes, an Extended JSON object,
+     * or a legacy JSON string. Leaves the parser on the value's last token.
+     */
+    public static BsonReader reader(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            return new BsonBinaryReader(ByteBuffer.wrap(parser.getBinaryValue()));
+        }
+        if (token == JsonToken.START_OBJECT) {
+            return new JsonReader(parser.readValueAsTree().toString());
+        }
+        return new JsonReader(legacyValue(parser.getText()));
+    }
+
+    /**
+     * Stored and published values before they were documents: the entity as a JSON string, or plain text
+     */
+    public static Document fromLegacyValue(String value) {
+        return Document.parse(legacyValue(value));
+    }
+
+    private static String legacyValue(String value) {
+        String trimmed = value.trim();
+        if (trimmed.startsWith("{")) {
+            return trimmed;
+        }
+        return new Document("value", value).toJson();
+    }
+}
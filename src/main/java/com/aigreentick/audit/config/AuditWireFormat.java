@@ -0,0 +1,55 @@
+package com.aigreentick.audit.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.kafka.support.JacksonUtils;
+
+/**
+ * Wire formats of audit and exception events on Kafka.
+ * <p>
+ * {@code BINARY} records are framed as {@code [MAGIC_BYTE][version][CBOR payload]}. A JSON document never starts
+ * with {@code 0x00}, so readers tell both formats apart by the first byte and keep reading JSON records that
+ * are already on the topics. The version byte allows the binary layout to evolve; readers reject versions
+ * they do not know instead of misreading them.
+ */
+public enum AuditWireFormat {
+
+    /**
+     * Plain JSON, as written by Spring's JsonSerializer - for rolling upgrades while old readers are still running
+     */
+    JSON,
+
+    /**
+     * Versioned CBOR: binary numbers and timestamps, length-prefixed strings without escaping
+     */
+    BINARY;
+
+    public static final byte MAGIC_BYTE = 0x00;
+    public static final byte BINARY_VERSION = 1;
+    public static final int BINARY_HEADER_LENGTH = 2;
+
+    // Same settings as Spring's JsonSerializer/JsonDeserializer, so both formats map the models the same way
+    static final ObjectMapper JSON_MAPPER = JacksonUtils.enhancedObjectMapper();
+
+    static final ObjectMapper CBOR_MAPPER = CBORMapper.builder()
+            .disable(MapperFeature.DEFAULT_VIEW_INCLUSION)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .addModule(new Jdk8Module())
+            .addModule(new JavaTimeModule())
+            .build();
+
+    public static AuditWireFormat fromProperty(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * True if the record was written in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length >= BINARY_HEADER_LENGTH && data[0] == MAGIC_BYTE;
+    }
+}
@@ -0,0 +1,31 @@
+package com.aigreentick.audit.config;
+
+import org.bson.RawBsonDocument;
+
+/**
+ * Event consumed in raw BSON mode: the MongoDB document decoded straight from the record bytes,
+ * plus the record bytes themselves so a rejected event can be re-published unchanged
+ */
+public class BsonEvent {
+
+    private final byte[] wireBytes;
+    private final RawBsonDocument document;
+
+    public BsonEvent(byte[] wireBytes, RawBsonDocument document) {
+        this.wireBytes = wireBytes;
+        this.document = document;
+    }
+
+    public byte[] getWireBytes() {
+        return wireBytes;
+    }
+
+    public RawBsonDocument getDocument() {
+        return document;
+    }
+
+    @Override
+    public String toString() {
+        return "BsonEvent" + document.toJson();
+    }
+}
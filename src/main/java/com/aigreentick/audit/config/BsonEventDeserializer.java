@@ -0,0 +1,203 @@
+package com.aigreentick.audit.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes audit and exception events (either {@link AuditWireFormat}) straight into the BSON document MongoDB
+ * stores, without building the entity object or going through {@code MappingMongoConverter}.
+ * <p>
+ * The record is read with a streaming parser and written token by token into a BSON buffer. Field names,
+ * the {@code _id} conversion, {@code LocalDateTime} to date and the {@code _class} type hint follow the
+ * entity's mapping metadata, so the stored document is the same one the converter would produce.
+ * Fields the entity does not know are dropped and null values are omitted, as the converter does.
+ * Document-valued fields (audit old/new values) are piped into the buffer from their embedded BSON bytes.
+ */
+public class BsonEventDeserializer implements Deserializer<BsonEvent> {
+
+    private enum Kind {
+        ID, STRING, INT32, INT64, DOUBLE, BOOLEAN, DATE_TIME, DOCUMENT, DOCUMENT_LIST
+    }
+
+    private record Target(String fieldName, Kind kind) {
+    }
+
+    private final Class<?> entityType;
+    private final Map<String, Target> targets = new HashMap<>();
+    private final Document typeHint = new Document();
+
+    public BsonEventDeserializer(Class<?> entityType, MongoConverter mongoConverter) {
+        this.entityType = entityType;
+        MongoPersistentEntity<?> entity = mongoConverter.getMappingContext().getRequiredPersistentEntity(entityType);
+        entity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property ->
+            targets.put(property.getName(), new Target(property.getFieldName(), kindOf(property))));
+        mongoConverter.getTypeMapper().writeType(entityType, typeHint);
+    }
+
+    private static Kind kindOf(MongoPersistentProperty property) {
+        Class<?> type = property.getType();
+        if (property.isIdProperty() && type == String.class) {
+            return Kind.ID;
+        }
+        if (type == String.class) {
+            return Kind.STRING;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Kind.INT32;
+        }
+        if (type == Long.class || type == long.class) {
+            return Kind.INT64;
+        }
+        if (type == Double.class || type == double.class) {
+            return Kind.DOUBLE;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        if (type == LocalDateTime.class) {
+            return Kind.DATE_TIME;
+        }
+        if (type == Document.class) {
+            return Kind.DOCUMENT;
+        }
+        if (property.isCollectionLike() && property.getComponentType() == Document.class) {
+            return Kind.DOCUMENT_LIST;
+        }
+        throw new IllegalArgumentException("Raw BSON decoding does not support property " + property.getName()
+            + " of type " + type.getName() + " in " + property.getOwner().getType().getName());
+    }
+
+    @Override
+    public BsonEvent deserialize(String topic, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = createParser(data)) {
+            return new BsonEvent(data, decode(parser));
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Could not decode " + entityType.getSimpleName()
+                + " from topic " + topic + " into BSON", e);
+        }
+    }
+
+    private JsonParser createParser(byte[] data) throws IOException {
+        if (AuditWireFormat.isBinary(data)) {
+            if (data[1] != AuditWireFormat.BINARY_VERSION) {
+                throw new SerializationException("Unsupported binary format version " + data[1]);
+            }
+            return AuditWireFormat.CBOR_MAPPER.getFactory().createParser(data, AuditWireFormat.BINARY_HEADER_LENGTH,
+                data.length - AuditWireFormat.BINARY_HEADER_LENGTH);
+        }
+        return AuditWireFormat.JSON_MAPPER.getFactory().createParser(data);
+    }
+
+    private RawBsonDocument decode(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new SerializationException("Expected an object but found " + parser.currentToken());
+        }
+        BasicOutputBuffer buffer = new BasicOutputBuffer(256);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Target target = targets.get(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (target == null) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL) {
+                    writer.writeName(target.fieldName());
+                    writeValue(parser, writer, target.kind());
+                }
+            }
+            for (Map.Entry<String, Object> hint : typeHint.entrySet()) {
+                writer.writeString(hint.getKey(), String.valueOf(hint.getValue()));
+            }
+            writer.writeEndDocument();
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    private static void writeValue(JsonParser parser, BsonBinaryWriter writer, Kind kind) throws IOException {
+        switch (kind) {
+            case ID -> {
+                // String ids that look like ObjectIds are stored as ObjectIds, like the converter does
+                String id = parser.getText();
+                if (ObjectId.isValid(id)) {
+                    writer.writeObjectId(new ObjectId(id));
+                } else {
+                    writer.writeString(id);
+                }
+            }
+            case STRING -> writer.writeString(parser.getText());
+            case INT32 -> writer.writeInt32(parser.getIntValue());
+            case INT64 -> writer.writeInt64(parser.getLongValue());
+            case DOUBLE -> writer.writeDouble(parser.getDoubleValue());
+            case BOOLEAN -> writer.writeBoolean(parser.getBooleanValue());
+            case DATE_TIME -> writer.writeDateTime(toEpochMillis(readLocalDateTime(parser)));
+            // Embedded BSON bytes are copied as they are
+            case DOCUMENT -> writer.pipe(AuditValueJson.reader(parser));
+            case DOCUMENT_LIST -> {
+                if (parser.currentToken() != JsonToken.START_ARRAY) {
+                    throw new SerializationException("Expected an array but found " + parser.currentToken());
+                }
+                writer.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    writer.pipe(AuditValueJson.reader(parser));
+                }
+                writer.writeEndArray();
+            }
+        }
+    }
+
+    /**
+     * Jackson writes LocalDateTime as [year, month, day, hour, minute, second?, nanos?] or as an ISO string
+     */
+    private static LocalDateTime readLocalDateTime(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            try {
+                return LocalDateTime.parse(parser.getText());
+            } catch (DateTimeParseException e) {
+                throw new SerializationException("Invalid date-time " + parser.getText(), e);
+            }
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new SerializationException("Expected a date-time but found " + parser.currentToken());
+        }
+        int[] parts = new int[7];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (count < parts.length) {
+                parts[count] = parser.getIntValue();
+            }
+            count++;
+        }
+        if (count < 5 || count > parts.length) {
+            throw new SerializationException("Invalid date-time array of " + count + " elements");
+        }
+        return LocalDateTime.of(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+    }
+
+    /**
+     * Same zone conversion as Spring Data's LocalDateTime to Date converter
+     */
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
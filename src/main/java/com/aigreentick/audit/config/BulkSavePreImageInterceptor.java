@@ -0,0 +1,112 @@
+package com.aigreentick.audit.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Repository interceptor that fetches the old documents of a {@code saveAll} with one {@code $in} query per
+ * collection, before the entities are saved one by one. {@link MongoAuditEventListener} then takes each old value
+ * from this pre-fetch instead of issuing one {@code findById} per entity.
+ * <p>
+ * The pre-fetched documents are only visible on the calling thread and only for the duration of the call.
+ */
+public class BulkSavePreImageInterceptor implements MethodInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkSavePreImageInterceptor.class);
+
+    // collection -> entity id -> old document, while a saveAll runs on this thread
+    private static final ThreadLocal<Map<String, Map<String, Document>>> preImages = new ThreadLocal<>();
+
+    private final Supplier<MongoTemplate> mongoTemplate;
+    private final Supplier<AuditPolicy> auditPolicy;
+
+    public BulkSavePreImageInterceptor(Supplier<MongoTemplate> mongoTemplate, Supplier<AuditPolicy> auditPolicy) {
+        this.mongoTemplate = mongoTemplate;
+        this.auditPolicy = auditPolicy;
+    }
+
+    /**
+     * True if the old documents of the collection were pre-fetched for the running saveAll
+     */
+    public static boolean isPrefetched(String collectionName) {
+        Map<String, Map<String, Document>> prefetched = preImages.get();
+        return prefetched != null && prefetched.containsKey(collectionName);
+    }
+
+    /**
+     * Pre-fetched old document, or null if the entity did not exist before the saveAll
+     */
+    public static Document getPreImage(String collectionName, String entityId) {
+        Map<String, Map<String, Document>> prefetched = preImages.get();
+        if (prefetched == null || entityId == null) {
+            return null;
+        }
+        Map<String, Document> documents = prefetched.get(collectionName);
+        return documents != null ? documents.get(entityId) : null;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        if (!"saveAll".equals(invocation.getMethod().getName()) || arguments.length != 1
+                || !(arguments[0] instanceof Iterable<?> entities) || preImages.get() != null) {
+            return invocation.proceed();
+        }
+
+        preImages.set(prefetch(entities));
+        try {
+            return invocation.proceed();
+        } finally {
+            preImages.remove();
+        }
+    }
+
+    private Map<String, Map<String, Document>> prefetch(Iterable<?> entities) {
+        MongoTemplate template = mongoTemplate.get();
+        AuditPolicy policy = auditPolicy.get();
+        Map<String, List<String>> idsByCollection = new LinkedHashMap<>();
+        for (Object entity : entities) {
+            String collectionName = template.getCollectionName(entity.getClass());
+            if (!policy.forCollection(collectionName).audits("UPDATE")) {
+                continue;
+            }
+            List<String> ids = idsByCollection.computeIfAbsent(collectionName, name -> new ArrayList<>());
+            String entityId = MongoAuditEventListener.extractEntityId(entity);
+            if (entityId != null && !entityId.isEmpty()) {
+                ids.add(entityId);
+            }
+        }
+
+        Map<String, Map<String, Document>> prefetched = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : idsByCollection.entrySet()) {
+            Map<String, Document> documents = new HashMap<>();
+            if (!entry.getValue().isEmpty()) {
+                try {
+                    Query query = Query.query(Criteria.where("_id").in(entry.getValue()));
+                    for (Document document : template.find(query, Document.class, entry.getKey())) {
+                        documents.put(String.valueOf(document.get("_id")), document);
+                    }
+                } catch (Exception e) {
+                    // Fall back to the listener's own lookups for this collection
+                    logger.debug("Could not pre-fetch old documents for audit", e);
+                    continue;
+                }
+            }
+            prefetched.put(entry.getKey(), documents);
+        }
+        return prefetched;
+    }
+}
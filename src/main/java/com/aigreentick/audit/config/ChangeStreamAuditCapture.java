@@ -0,0 +1,412 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AuditLogKafkaProducer;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Audit capture engine that reads CREATE/UPDATE/DELETE events from a MongoDB change stream instead of
+ * intercepting writes in {@link MongoAuditEventListener}. The old value comes from the change event's pre-image,
+ * so writes no longer pay for a {@code findById} on the request thread.
+ * <ul>
+ *     <li>Needs MongoDB 6.0+ on a replica set, with {@code changeStreamPreAndPostImages} enabled on the audited
+ *     collections (done at startup when {@code audit.change-stream.enable-pre-and-post-images=true})</li>
+ *     <li>User context is stamped on every saved document under {@link MongoAuditContext#STAMP_FIELD} by the
+ *     listener and read back from the post-image. Writes that bypass the listener (updateFirst, deletes) carry
+ *     no stamp and are attributed to the default username.</li>
+ *     <li>The resume token is checkpointed to {@code audit.change-stream.state-collection} once every send up to it
+ *     was acknowledged by Kafka, so a restart resumes where it left off. Events after the checkpoint may be sent
+ *     again; their audit log id is derived from the event so the consumer drops the duplicates.</li>
+ * </ul>
+ */
+@Component
+@ConditionalOnProperty(name = "audit.capture.mode", havingValue = ChangeStreamAuditCapture.MODE)
+public class ChangeStreamAuditCapture {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStreamAuditCapture.class);
+
+    public static final String MODE = "change-stream";
+
+    // Server error raised when the resume token fell off the oplog
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private static final long MAX_AWAIT_MS = 1000;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    @Value("${audit.collection.name:audit_logs}")
+    private String auditLogsCollection;
+
+    @Value("${exception.collection.name:exception_logs}")
+    private String exceptionLogsCollection;
+
+    @Value("${audit.default.username:system}")
+    private String defaultUsername;
+
+    @Value("${audit.change-stream.name:default}")
+    private String streamName;
+
+    @Value("${audit.change-stream.state-collection:audit_change_stream_state}")
+    private String stateCollection;
+
+    // Collections to audit, empty means every collection of the database
+    @Value("${audit.change-stream.collections:}")
+    private List<String> collections;
+
+    @Value("${audit.change-stream.enable-pre-and-post-images:true}")
+    private boolean enablePreAndPostImages;
+
+    @Value("${audit.change-stream.checkpoint-interval-ms:1000}")
+    private long checkpointIntervalMs;
+
+    @Value("${audit.change-stream.retry-backoff-ms:5000}")
+    private long retryBackoffMs;
+
+    private final AuditLogKafkaProducer auditLogKafkaProducer;
+    private final MongoTemplate mongoTemplate;
+    private final AuditPolicy auditPolicy;
+
+    private volatile boolean running;
+    private Thread captureThread;
+
+    // Sends since the last checkpoint and the last persisted token; only used by the capture thread
+    private final List<CompletableFuture<?>> pendingSends = new ArrayList<>();
+    private BsonDocument checkpointedToken;
+
+    @Autowired
+    public ChangeStreamAuditCapture(AuditLogKafkaProducer auditLogKafkaProducer, MongoTemplate mongoTemplate,
+                                    AuditPolicy auditPolicy) {
+        this.auditLogKafkaProducer = auditLogKafkaProducer;
+        this.mongoTemplate = mongoTemplate;
+        this.auditPolicy = auditPolicy;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enablePreAndPostImages) {
+            enablePreAndPostImages();
+        }
+        running = true;
+        captureThread = new Thread(this::run, "audit-change-stream-" + streamName);
+        captureThread.setDaemon(true);
+        captureThread.start();
+        logger.info("=== Change stream audit capture started (stream {}, collections {}) ===",
+            streamName, collections.isEmpty() ? "all" : collections);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (captureThread != null) {
+            captureThread.join(MAX_AWAIT_MS + SEND_TIMEOUT_SECONDS * 1000);
+        }
+        logger.info("=== Change stream audit capture stopped ===");
+    }
+
+    private void run() {
+        checkpointedToken = loadResumeToken();
+        while (running) {
+            try {
+                capture();
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    // Nothing left to resume from - start over from now rather than stop auditing altogether
+                    logger.error("Resume token of change stream {} is no longer in the oplog, events were lost; " +
+                        "restarting from the current time", streamName, e);
+                    checkpointedToken = null;
+                    saveResumeToken(null);
+                } else {
+                    logger.error("Change stream {} failed, resuming from the last checkpoint", streamName, e);
+                    sleep(retryBackoffMs);
+                }
+            } catch (Exception e) {
+                logger.error("Change stream {} failed, resuming from the last checkpoint", streamName, e);
+                sleep(retryBackoffMs);
+            } finally {
+                // Unconfirmed sends are covered by resuming from the checkpoint
+                pendingSends.clear();
+            }
+        }
+    }
+
+    private void capture() {
+        ChangeStreamIterable<Document> changeStream = mongoTemplate.getDb().watch(pipeline())
+            .fullDocument(FullDocument.WHEN_AVAILABLE)
+            .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+            .maxAwaitTime(MAX_AWAIT_MS, TimeUnit.MILLISECONDS);
+        if (checkpointedToken != null) {
+            changeStream.resumeAfter(checkpointedToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+            long nextCheckpoint = System.currentTimeMillis() + checkpointIntervalMs;
+            while (running) {
+                ChangeStreamDocument<Document> event = cursor.tryNext();
+                if (event != null) {
+                    AuditLog auditLog = toAuditLog(event);
+                    if (auditLog != null) {
+                        pendingSends.add(auditLogKafkaProducer.sendAuditLog(auditLog));
+                    }
+                }
+                if (System.currentTimeMillis() >= nextCheckpoint) {
+                    // The cursor's token also moves past events the pipeline filtered out
+                    checkpoint(cursor.getResumeToken());
+                    nextCheckpoint = System.currentTimeMillis() + checkpointIntervalMs;
+                }
+            }
+            checkpoint(cursor.getResumeToken());
+        }
+    }
+
+    /**
+     * Wait until every send so far was acknowledged, then persist the token
+     */
+    private void checkpoint(BsonDocument resumeToken) {
+        for (CompletableFuture<?> send : pendingSends) {
+            try {
+                send.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for audit log sends", e);
+            } catch (Exception e) {
+                throw new IllegalStateException("Audit log send failed, events since the last checkpoint are re-read", e);
+            }
+        }
+        pendingSends.clear();
+        if (resumeToken != null && !resumeToken.equals(checkpointedToken)) {
+            saveResumeToken(resumeToken);
+            checkpointedToken = resumeToken;
+        }
+    }
+
+    private List<Bson> pipeline() {
+        Bson operations = Filters.in("operationType", "insert", "update", "replace", "delete");
+        // Collections the policy leaves out are filtered on the server; its action and field rules apply per event
+        List<String> excluded = new ArrayList<>(auditPolicy.getExcludedCollections());
+        excluded.addAll(List.of(auditLogsCollection, exceptionLogsCollection, stateCollection));
+        List<String> included = new ArrayList<>(collections.isEmpty() ? auditPolicy.getIncludedCollections() : collections);
+        Bson namespaces = included.isEmpty()
+            ? Filters.nin("ns.coll", excluded)
+            : Filters.and(Filters.in("ns.coll", included), Filters.nin("ns.coll", excluded));
+        return List.of(Aggregates.match(Filters.and(operations, namespaces)));
+    }
+
+    /**
+     * Audit log for a change event, or null if the operation is not audited
+     */
+    AuditLog toAuditLog(ChangeStreamDocument<Document> event) {
+        String action;
+        OperationType operationType = event.getOperationType();
+        if (operationType == OperationType.INSERT) {
+            action = "CREATE";
+        } else if (operationType == OperationType.UPDATE || operationType == OperationType.REPLACE) {
+            action = "UPDATE";
+        } else if (operationType == OperationType.DELETE) {
+            action = "DELETE";
+        } else {
+            return null;
+        }
+
+        String collectionName = event.getNamespace() != null ? event.getNamespace().getCollectionName() : null;
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collectionName);
+        if (!policy.audits(action)) {
+            return null;
+        }
+
+        Document newDocument = "DELETE".equals(action) ? null : event.getFullDocument();
+        Document oldDocument = "CREATE".equals(action) ? null : event.getFullDocumentBeforeChange();
+        Document stamp = readStamp(event, newDocument);
+        String entityName = MongoAuditEventListener.extractEntityNameFromCollection(collectionName);
+
+        String username = stamp != null ? stamp.getString("username") : null;
+        if (username == null || username.isEmpty()) {
+            username = defaultUsername;
+        }
+
+        AuditLog auditLog = new AuditLog();
+        auditLog.setId(auditLogId(event.getResumeToken()));
+        auditLog.setUsername(username);
+        if (stamp != null) {
+            auditLog.setUserId(stamp.getString("userId"));
+            auditLog.setOrganizationId(stamp.getString("organizationId"));
+            auditLog.setUrlDomain(stamp.getString("urlDomain"));
+            auditLog.setIpAddress(stamp.getString("ipAddress"));
+        }
+        auditLog.setEntityName(entityName);
+        auditLog.setEntityId(extractId(event.getDocumentKey()));
+        auditLog.setAction(action);
+        if ("UPDATE".equals(action)) {
+            if (!AuditDiff.applyUpdate(auditLog, policy.filter(withoutStamp(oldDocument)),
+                    policy.filter(withoutStamp(newDocument)), policy.isFullSnapshot())) {
+                // Only the stamp or ignored fields changed
+                return null;
+            }
+        } else {
+            auditLog.setOldValue(policy.filter(withoutStamp(oldDocument)));
+            auditLog.setNewValue(policy.filter(withoutStamp(newDocument)));
+        }
+        auditLog.setTimestamp(toTimestamp(event.getWallTime()));
+        auditLog.setDescription(String.format("Database %s operation on %s", action, entityName));
+        return auditLog;
+    }
+
+    /**
+     * User context written together with this change. An update that did not set the stamp leaves the previous
+     * writer's stamp in the document, which must not be attributed to this change.
+     */
+    static Document readStamp(ChangeStreamDocument<Document> event, Document newDocument) {
+        if (newDocument == null) {
+            return null;
+        }
+        if (event.getOperationType() == OperationType.UPDATE && !stampUpdated(event.getUpdateDescription())) {
+            return null;
+        }
+        Object stamp = newDocument.get(MongoAuditContext.STAMP_FIELD);
+        return stamp instanceof Document document ? document : null;
+    }
+
+    private static boolean stampUpdated(UpdateDescription updateDescription) {
+        if (updateDescription == null || updateDescription.getUpdatedFields() == null) {
+            return false;
+        }
+        for (String field : updateDescription.getUpdatedFields().keySet()) {
+            if (field.equals(MongoAuditContext.STAMP_FIELD) || field.startsWith(MongoAuditContext.STAMP_FIELD + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same event, same id: a redelivered event is detected as duplicate by the consumer
+     */
+    static String auditLogId(BsonDocument resumeToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(resumeToken.toJson().getBytes(StandardCharsets.UTF_8));
+            return new ObjectId(Arrays.copyOf(digest, 12)).toHexString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Document withoutStamp(Document document) {
+        if (document == null || !document.containsKey(MongoAuditContext.STAMP_FIELD)) {
+            return document;
+        }
+        Document value = new Document(document);
+        value.remove(MongoAuditContext.STAMP_FIELD);
+        return value;
+    }
+
+    private static String extractId(BsonDocument documentKey) {
+        if (documentKey == null || !documentKey.containsKey("_id")) {
+            return null;
+        }
+        BsonValue id = documentKey.get("_id");
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private static LocalDateTime toTimestamp(BsonDateTime wallTime) {
+        if (wallTime == null) {
+            return LocalDateTime.now();
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(wallTime.getValue()), ZoneId.systemDefault());
+    }
+
+    private void enablePreAndPostImages() {
+        MongoDatabase database = mongoTemplate.getDb();
+        List<String> audited = collections;
+        if (audited.isEmpty()) {
+            audited = new ArrayList<>();
+            for (String name : database.listCollectionNames()) {
+                if (!name.equals(auditLogsCollection) && !name.equals(exceptionLogsCollection)
+                        && !name.equals(stateCollection) && !name.startsWith("system.")) {
+                    audited.add(name);
+                }
+            }
+        }
+        for (String name : audited) {
+            try {
+                database.runCommand(new Document("collMod", name)
+                    .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+            } catch (Exception e) {
+                logger.warn("Could not enable pre- and post-images on {}, its old values will be missing", name, e);
+            }
+        }
+    }
+
+    private BsonDocument loadResumeToken() {
+        BsonDocument state = stateCollection().find(Filters.eq("_id", streamName)).first();
+        if (state == null || !state.isDocument("resumeToken")) {
+            logger.info("No resume token for change stream {}, starting from the current time", streamName);
+            return null;
+        }
+        logger.info("Resuming change stream {} from its checkpoint", streamName);
+        return state.getDocument("resumeToken");
+    }
+
+    private void saveResumeToken(BsonDocument resumeToken) {
+        BsonDocument state = new BsonDocument("_id", new BsonString(streamName))
+            .append("updatedAt", new BsonDateTime(System.currentTimeMillis()));
+        if (resumeToken != null) {
+            state.append("resumeToken", resumeToken);
+        }
+        stateCollection().replaceOne(Filters.eq("_id", streamName), state, new ReplaceOptions().upsert(true));
+    }
+
+    private MongoCollection<BsonDocument> stateCollection() {
+        return mongoTemplate.getDb().getCollection(stateCollection, BsonDocument.class);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.aigreentick.audit.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.annotation.Id;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Per-class audit metadata of an entity: its display name and an accessor for its id.
+ * Resolved once per class and cached in a {@link ClassValue}, so the audit listener does no reflection
+ * lookups (and no exception-driven fallbacks) on the write path.
+ * <p>
+ * The id property follows Spring Data's rules: the field annotated with {@code @Id}, else a field named
+ * {@code id} or {@code _id}, else a public {@code getId()} method.
+ */
+public final class EntityAuditMetadata {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityAuditMetadata.class);
+
+    private static final MethodType ID_GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<EntityAuditMetadata> cache = new ClassValue<>() {
+        @Override
+        protected EntityAuditMetadata computeValue(Class<?> type) {
+            return new EntityAuditMetadata(type);
+        }
+    };
+
+    private final String entityName;
+
+    // (Object)Object, null if the class has no id property
+    private final MethodHandle idGetter;
+
+    private EntityAuditMetadata(Class<?> type) {
+        this.entityName = entityName(type);
+        this.idGetter = idGetter(type);
+        if (idGetter == null) {
+            logger.warn("Could not find an id property on entity: {}", type.getName());
+        }
+    }
+
+    public static EntityAuditMetadata of(Class<?> type) {
+        return cache.get(type);
+    }
+
+    /**
+     * Class name without package and without an {@code Entity} suffix
+     */
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Id of the entity as a string, or null if it has none (yet)
+     */
+    public String getId(Object entity) {
+        if (idGetter == null) {
+            return null;
+        }
+        try {
+            Object id = (Object) idGetter.invokeExact(entity);
+            return id != null ? id.toString() : null;
+        } catch (Throwable e) {
+            logger.warn("Could not extract ID from entity: {}", entity.getClass().getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * New entities have no id until MongoDB generates one
+     */
+    public boolean isNew(Object entity) {
+        String id = getId(entity);
+        return id == null || id.isEmpty();
+    }
+
+    private static String entityName(Class<?> type) {
+        String className = type.getSimpleName();
+        if (className.endsWith("Entity")) {
+            className = className.substring(0, className.length() - 6);
+        }
+        return className;
+    }
+
+    private static MethodHandle idGetter(Class<?> type) {
+        Field idField = findIdField(type);
+        try {
+            if (idField != null) {
+                idField.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(idField).asType(ID_GETTER_TYPE);
+            }
+            Method getId = type.getMethod("getId");
+            if (!Modifier.isStatic(getId.getModifiers())) {
+                getId.setAccessible(true);
+                return MethodHandles.lookup().unreflect(getId).asType(ID_GETTER_TYPE);
+            }
+        } catch (NoSuchMethodException e) {
+            // No id property
+        } catch (Exception e) {
+            logger.debug("Could not create id accessor for {}", type.getName(), e);
+        }
+        return null;
+    }
+
+    private static Field findIdField(Class<?> type) {
+        Field namedId = null;
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (AnnotatedElementUtils.hasAnnotation(field, Id.class)) {
+                    return field;
+                }
+                if (namedId == null && (field.getName().equals("id") || field.getName().equals("_id"))) {
+                    namedId = field;
+                }
+            }
+        }
+        return namedId;
+    }
+}
@@ -2,22 +2,34 @@ package com.aigreentick.audit.config;
 
 import com.aigreentick.audit.model.AuditLog;
 import com.aigreentick.audit.model.ExceptionLog;
+import com.aigreentick.audit.service.AuditLogKafkaConsumer;
+import com.aigreentick.audit.service.BatchWriterPool;
+import com.aigreentick.audit.service.ExceptionLogKafkaConsumer;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.CommonErrorHandler;
-import org.springframework.kafka.listener.CommonLoggingErrorHandler;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.listener.ContainerProperties;
-import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.apache.kafka.common.TopicPartition;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
-import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -25,6 +37,8 @@ import java.util.Map;
 @Configuration
 public class KafkaConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConfig.class);
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
@@ -58,6 +72,32 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.buffer-memory:33554432}")
     private Long bufferMemory;
 
+    // entity, organization or spread (see AuditLogPartitioner)
+    @Value("${audit.partitioning.strategy:entity}")
+    private String partitioningStrategy;
+
+    @Value("${audit.partitioning.spread-partitions:4}")
+    private Integer spreadPartitions;
+
+    // Fail fast into the spool instead of blocking the sending thread for Kafka's default 60 seconds
+    @Value("${spring.kafka.producer.max-block-ms:2000}")
+    private Long maxBlockMs;
+
+    // binary (versioned CBOR) or json; consumers read both, so switch to binary once every consumer is upgraded
+    @Value("${audit.kafka.wire-format:binary}")
+    private String wireFormat;
+
+    // Raw BSON mode per topic: decode records straight into MongoDB documents, skipping the entity and converter
+    @Value("${audit.consumer.raw-bson.enabled:false}")
+    private Boolean auditRawBson;
+
+    @Value("${exception.consumer.raw-bson.enabled:false}")
+    private Boolean exceptionRawBson;
+
+    // How long a failing poll is redelivered before the error handler gives up on it
+    @Value("${audit.consumer.redelivery.max-elapsed-ms:300000}")
+    private Long redeliveryMaxElapsedMs;
+
     @Value("${spring.kafka.listener.concurrency:3}")
     private Integer concurrency;
 
@@ -88,19 +128,72 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.client-id-prefix:audit-consumer}")
     private String clientIdPrefix;
 
+    // How often an idle container lets the consumers commit offsets of batches written in the background
+    @Value("${audit.consumer.idle-commit-interval-ms:1000}")
+    private Long idleCommitIntervalMs;
+
+    @Value("${audit.consumer.writer.max-concurrent-writes:16}")
+    private Integer maxConcurrentWrites;
+
+    @Value("${audit.consumer.writer.virtual-threads:true}")
+    private Boolean writerVirtualThreads;
+
+    /**
+     * Writer pool shared by the audit and exception consumers, so slow MongoDB writes never block
+     * the poll loop and cannot trip max.poll.interval.ms
+     */
+    @Bean(destroyMethod = "close")
+    public BatchWriterPool consumerWriterPool() {
+        return new BatchWriterPool("consumer", maxConcurrentWrites, writerVirtualThreads);
+    }
+
+    private AuditWireFormat wireFormat() {
+        return AuditWireFormat.fromProperty(wireFormat);
+    }
+
+    /**
+     * Consumer factory of a main listener: same settings as the entity consumer factory, values either decoded
+     * into the entity or, in raw BSON mode, straight into the document stored in MongoDB ({@link BsonEvent})
+     */
+    private ConsumerFactory<String, Object> listenerConsumerFactory(ConsumerFactory<String, ?> entityConsumerFactory,
+                                                                    Class<?> entityType, boolean rawBson,
+                                                                    MongoConverter mongoConverter) {
+        Deserializer<?> valueDeserializer = rawBson
+            ? new BsonEventDeserializer(entityType, mongoConverter)
+            : new AuditEventDeserializer<>(entityType);
+        @SuppressWarnings("unchecked")
+        Deserializer<Object> deserializer = (Deserializer<Object>) valueDeserializer;
+        return new DefaultKafkaConsumerFactory<>(entityConsumerFactory.getConfigurationProperties(),
+            new StringDeserializer(), new ErrorHandlingDeserializer<>(deserializer));
+    }
+
+    /**
+     * Error handler that redelivers after an exponentially growing pause, until {@code audit.consumer.redelivery.max-elapsed-ms}
+     * passed; then every record of the poll is handed to the recoverer so a permanent error cannot block the partition
+     */
+    private CommonErrorHandler redeliveringErrorHandler(ConsumerRecordRecoverer recoverer) {
+        ExponentialBackOff backOff = new ExponentialBackOff(1000L, 2.0);
+        backOff.setMaxInterval(30_000L);
+        backOff.setMaxElapsedTime(redeliveryMaxElapsedMs);
+        return new DefaultErrorHandler(recoverer, backOff);
+    }
+
     @Bean
     public ProducerFactory<String, AuditLog> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         configProps.put(ProducerConfig.ACKS_CONFIG, acks);
         configProps.put(ProducerConfig.RETRIES_CONFIG, retries);
         configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
         configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
         configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+        configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, AuditLogPartitioner.class);
+        configProps.put(AuditLogPartitioner.STRATEGY_CONFIG, partitioningStrategy);
+        configProps.put(AuditLogPartitioner.SPREAD_PARTITIONS_CONFIG, spreadPartitions);
         
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), new AuditEventSerializer<>(wireFormat()));
     }
 
     @Bean
@@ -114,7 +207,6 @@ public class KafkaConfig {
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
         props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
         props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
@@ -146,23 +238,25 @@ public class KafkaConfig {
         props.put(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG, reconnectBackoffMs);
         props.put(ConsumerConfig.RECONNECT_BACKOFF_MAX_MS_CONFIG, reconnectBackoffMaxMs);
         
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, AuditLog.class.getName());
-        
-        return new DefaultKafkaConsumerFactory<>(props);
+        // Reads binary and JSON records alike; a payload that cannot be deserialized arrives with a null value
+        // and is dead-lettered by the listener
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(),
+            new ErrorHandlingDeserializer<>(new AuditEventDeserializer<>(AuditLog.class)));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, AuditLog> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, AuditLog> factory = 
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
+            @Lazy AuditLogKafkaConsumer auditLogKafkaConsumer, MongoConverter mongoConverter) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(listenerConsumerFactory(consumerFactory(), AuditLog.class, auditRawBson, mongoConverter));
         factory.setBatchListener(true);
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // Offsets are committed by the consumer once batches are durable in MongoDB, never by the container
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         factory.setConcurrency(concurrency);
         
-        // Disable idle events - not needed for simple consumer
-        // factory.getContainerProperties().setIdleEventInterval(5000L);
+        // Idle events give the consumer a chance to commit offsets when no new records arrive
+        factory.getContainerProperties().setIdleEventInterval(idleCommitIntervalMs);
         
         // Set sync commits to ensure offset commits happen synchronously
         factory.getContainerProperties().setSyncCommits(true);
@@ -173,20 +267,23 @@ public class KafkaConfig {
         // Force immediate start - don't wait for group rebalance delay
         factory.setAutoStartup(true);
         
-        // Add error handler to log deserialization errors
-        CommonErrorHandler errorHandler = new CommonLoggingErrorHandler();
-        factory.setCommonErrorHandler(errorHandler);
+        // Deserialization and per-record MongoDB failures are routed to the retry/dead-letter topics by the listener;
+        // anything else thrown by the listener redelivers the batch after a pause, until it is handed to the consumer
+        factory.setCommonErrorHandler(redeliveringErrorHandler(auditLogKafkaConsumer::recover));
         
         // Add listener to track partition assignment - CRITICAL for debugging
-        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerRebalanceListener() {
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
             private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(KafkaConfig.class);
             
             @Override
-            public void onPartitionsRevoked(java.util.Collection<TopicPartition> partitions) {
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, java.util.Collection<TopicPartition> partitions) {
                 logger.error("=== REBALANCE: Partitions revoked: {} ===", partitions);
                 if (partitions == null || partitions.isEmpty()) {
                     logger.warn("=== REBALANCE: No partitions to revoke (this is normal during startup) ===");
+                    return;
                 }
+                // Persist buffered records and commit their offsets before another consumer takes over
+                auditLogKafkaConsumer.onPartitionsRevoked(consumer, partitions);
             }
             
             @Override
@@ -200,6 +297,14 @@ public class KafkaConfig {
                 } else {
                     logger.error("=== REBALANCE: FAILED! No partitions assigned! This is a problem! ===");
                 }
+                // Every assigned partition gets its own buffer and writer
+                auditLogKafkaConsumer.onPartitionsAssigned(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(java.util.Collection<TopicPartition> partitions) {
+                logger.warn("=== REBALANCE: Partitions lost: {} ===", partitions);
+                auditLogKafkaConsumer.onPartitionsLost(partitions);
             }
         });
         
@@ -212,14 +317,14 @@ public class KafkaConfig {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         configProps.put(ProducerConfig.ACKS_CONFIG, acks);
         configProps.put(ProducerConfig.RETRIES_CONFIG, retries);
         configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
         configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
         configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
         
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), new AuditEventSerializer<>(wireFormat()));
     }
 
     @Bean
@@ -234,7 +339,6 @@ public class KafkaConfig {
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
         props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
         props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
@@ -263,44 +367,53 @@ public class KafkaConfig {
         props.put(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG, reconnectBackoffMs);
         props.put(ConsumerConfig.RECONNECT_BACKOFF_MAX_MS_CONFIG, reconnectBackoffMaxMs);
         
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ExceptionLog.class.getName());
-        
-        return new DefaultKafkaConsumerFactory<>(props);
+        // Reads binary and JSON records alike; a payload that cannot be deserialized arrives with a null value
+        // and is dead-lettered by the listener
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(),
+            new ErrorHandlingDeserializer<>(new AuditEventDeserializer<>(ExceptionLog.class)));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, ExceptionLog> exceptionLogKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, ExceptionLog> factory = 
+    public ConcurrentKafkaListenerContainerFactory<String, Object> exceptionLogKafkaListenerContainerFactory(
+            @Lazy ExceptionLogKafkaConsumer exceptionLogKafkaConsumer, MongoConverter mongoConverter) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(exceptionLogConsumerFactory());
+        factory.setConsumerFactory(listenerConsumerFactory(exceptionLogConsumerFactory(), ExceptionLog.class,
+            exceptionRawBson, mongoConverter));
         factory.setBatchListener(true);
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // Offsets are committed by the consumer once batches are durable in MongoDB, never by the container
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         factory.setConcurrency(concurrency);
         
         // Set sync commits to ensure offset commits happen synchronously
         factory.getContainerProperties().setSyncCommits(true);
         
+        // Idle events give the consumer a chance to commit offsets when no new records arrive
+        factory.getContainerProperties().setIdleEventInterval(idleCommitIntervalMs);
+        
         // Log container lifecycle events
         factory.getContainerProperties().setLogContainerConfig(true);
         
         // Force immediate start - don't wait for group rebalance delay
         factory.setAutoStartup(true);
         
-        // Add error handler to log deserialization errors
-        CommonErrorHandler errorHandler = new CommonLoggingErrorHandler();
-        factory.setCommonErrorHandler(errorHandler);
+        // Deserialization and per-record MongoDB failures are routed to the retry/dead-letter topics by the listener;
+        // anything else thrown by the listener redelivers the batch after a pause, until it is handed to the consumer
+        factory.setCommonErrorHandler(redeliveringErrorHandler(exceptionLogKafkaConsumer::recover));
         
         // Add listener to track partition assignment
-        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerRebalanceListener() {
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
             private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(KafkaConfig.class);
             
             @Override
-            public void onPartitionsRevoked(java.util.Collection<TopicPartition> partitions) {
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, java.util.Collection<TopicPartition> partitions) {
                 logger.info("=== EXCEPTION LOG REBALANCE: Partitions revoked: {} ===", partitions);
                 if (partitions == null || partitions.isEmpty()) {
                     logger.warn("=== EXCEPTION LOG REBALANCE: No partitions to revoke (this is normal during startup) ===");
+                    return;
                 }
+                // Persist buffered records and commit their offsets before another consumer takes over
+                exceptionLogKafkaConsumer.onPartitionsRevoked(consumer, partitions);
             }
             
             @Override
@@ -314,10 +427,86 @@ public class KafkaConfig {
                 } else {
                     logger.error("=== EXCEPTION LOG REBALANCE: FAILED! No partitions assigned! This is a problem! ===");
                 }
+                // Every assigned partition gets its own buffer and writer
+                exceptionLogKafkaConsumer.onPartitionsAssigned(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(java.util.Collection<TopicPartition> partitions) {
+                logger.warn("=== EXCEPTION LOG REBALANCE: Partitions lost: {} ===", partitions);
+                exceptionLogKafkaConsumer.onPartitionsLost(partitions);
             }
         });
         
         return factory;
     }
-}
 
+    // Retry and dead-letter topics - records are moved as raw bytes so undeserializable payloads are kept intact
+    @Bean
+    public ProducerFactory<String, byte[]> deadLetterProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        // Records are only committed away from the main topics once every replica has them
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.RETRIES_CONFIG, retries);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> deadLetterKafkaTemplate() {
+        return new KafkaTemplate<>(deadLetterProducerFactory());
+    }
+
+    /**
+     * Consumer for replaying dead-letter topics; its own group so replay progress is tracked separately
+     */
+    @Bean
+    public ConsumerFactory<String, byte[]> deadLetterConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId + "-dlt-replay");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG, requestTimeoutMs);
+        props.put(ConsumerConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, defaultApiTimeoutMs);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientIdPrefix + "-dlt-replay-" + System.currentTimeMillis());
+
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, AuditLog> auditLogRetryListenerContainerFactory() {
+        return retryListenerContainerFactory(consumerFactory());
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ExceptionLog> exceptionLogRetryListenerContainerFactory() {
+        return retryListenerContainerFactory(exceptionLogConsumerFactory());
+    }
+
+    /**
+     * Record listener for a retry topic; the listener acknowledges, or nacks records whose backoff has not expired
+     */
+    private <T> ConcurrentKafkaListenerContainerFactory<String, T> retryListenerContainerFactory(
+            ConsumerFactory<String, T> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, T> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(false);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setSyncCommits(true);
+        factory.setConcurrency(1);
+        factory.setAutoStartup(true);
+        // Only fails if the record could not be moved on to the retry/dead-letter topic
+        factory.setCommonErrorHandler(redeliveringErrorHandler((record, cause) -> logger.error(
+            "Giving up on retry record {}-{}@{}, it could not be moved on", record.topic(), record.partition(),
+            record.offset(), cause)));
+        return factory;
+    }
+}
@@ -1,66 +1,105 @@
 package com.aigreentick.audit.config;
 
+import org.springframework.core.task.TaskDecorator;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
 /**
- * Thread-local context to hold audit information (username, userId, organizationId, urlDomain, IP address)
+ * Thread-local holder of the current {@link AuditContext}
  * This allows automatic database-level auditing to capture user context
+ * <p>
+ * The context follows work handed to other threads when it goes through {@link #wrap(Runnable)},
+ * {@link #propagating(Executor)} or the {@link TaskDecorator} this component registers with Spring's task
+ * executors ({@code @Async}, virtual threads).
  */
 @Component
-public class MongoAuditContext {
-
-    private static final ThreadLocal<String> usernameContext = new ThreadLocal<>();
-    private static final ThreadLocal<String> userIdContext = new ThreadLocal<>();
-    private static final ThreadLocal<String> organizationIdContext = new ThreadLocal<>();
-    private static final ThreadLocal<String> urlDomainContext = new ThreadLocal<>();
-    private static final ThreadLocal<String> ipAddressContext = new ThreadLocal<>();
+public class MongoAuditContext implements TaskDecorator {
 
-    public static void setUsername(String username) {
-        usernameContext.set(username);
-    }
+    /**
+     * Field the context is stamped into on write when audit events are captured from the change stream
+     */
+    public static final String STAMP_FIELD = "_audit";
 
-    public static String getUsername() {
-        return usernameContext.get();
-    }
+    private static final ThreadLocal<AuditContext> context = new ThreadLocal<>();
 
-    public static void setUserId(String userId) {
-        userIdContext.set(userId);
+    /**
+     * Context of the current thread, {@link AuditContext#EMPTY} if there is none
+     */
+    public static AuditContext get() {
+        AuditContext current = context.get();
+        return current != null ? current : AuditContext.EMPTY;
     }
 
-    public static String getUserId() {
-        return userIdContext.get();
+    public static void set(AuditContext auditContext) {
+        context.set(auditContext);
     }
 
-    public static void setOrganizationId(String organizationId) {
-        organizationIdContext.set(organizationId);
+    public static void clear() {
+        context.remove();
     }
 
-    public static String getOrganizationId() {
-        return organizationIdContext.get();
+    /**
+     * Current context as a document to stamp on the written document, or null if there is no context
+     */
+    public static org.bson.Document toStamp() {
+        return get().toStamp();
     }
 
-    public static void setUrlDomain(String urlDomain) {
-        urlDomainContext.set(urlDomain);
+    /**
+     * The task, running with the caller's context on whichever thread executes it
+     */
+    public static Runnable wrap(Runnable task) {
+        AuditContext captured = context.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            AuditContext previous = context.get();
+            context.set(captured);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
     }
 
-    public static String getUrlDomain() {
-        return urlDomainContext.get();
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        AuditContext captured = context.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            AuditContext previous = context.get();
+            context.set(captured);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
     }
 
-    public static void setIpAddress(String ipAddress) {
-        ipAddressContext.set(ipAddress);
+    /**
+     * Executor that runs each task with the context of the thread submitting it, e.g. for
+     * {@code CompletableFuture.supplyAsync(supplier, MongoAuditContext.propagating(executor))}
+     */
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(wrap(task));
     }
 
-    public static String getIpAddress() {
-        return ipAddressContext.get();
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return wrap(runnable);
     }
 
-    public static void clear() {
-        usernameContext.remove();
-        userIdContext.remove();
-        organizationIdContext.remove();
-        urlDomainContext.remove();
-        ipAddressContext.remove();
+    private static void restore(AuditContext previous) {
+        if (previous != null) {
+            context.set(previous);
+        } else {
+            context.remove();
+        }
     }
 }
-
@@ -1,8 +1,9 @@
 package com.aigreentick.audit.config;
 
 import com.aigreentick.audit.model.AuditLog;
-import com.aigreentick.audit.service.AuditLogKafkaProducer;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.aigreentick.audit.service.AuditLogCoalescer;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,47 +11,91 @@ import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventLis
 import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
 import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.beans.factory.annotation.Value;
 import jakarta.annotation.PostConstruct;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Database-level audit listener that automatically captures all MongoDB operations
  * This intercepts save, delete, and other operations at the database level
+ * <p>
+ * With {@code audit.capture.mode=change-stream} the events come from {@link ChangeStreamAuditCapture} instead:
+ * this listener then only stamps the user context on the saved document and does no extra read.
+ * With {@code audit.capture.mode=reactive} saves are captured by {@link ReactiveMongoAuditCallbacks}.
  */
 @Component
 public class MongoAuditEventListener extends AbstractMongoEventListener<Object> {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoAuditEventListener.class);
     
-    @Value("${audit.collection.name:audit_logs}")
-    private String auditLogsCollection;
-    
     @Value("${audit.default.username:system}")
     private String defaultUsername;
+
+    @Value("${audit.capture.mode:listener}")
+    private String captureMode;
+
+    @Value("${audit.delete.prefetch.enabled:true}")
+    private boolean deletePrefetch = true;
+
+    // Removes by more ids than this are audited by their filter only
+    @Value("${audit.delete.max-held-documents:1000}")
+    private int maxHeldDeletes = 1000;
+
+    @Value("${audit.delete.fetch-batch-size:500}")
+    private int deleteFetchBatchSize = 500;
+
+    private boolean changeStreamCapture;
+
+    // True when audit logs come from the change stream or the reactive callbacks instead
+    private boolean listenerDisabled;
     
-    private final AuditLogKafkaProducer auditLogKafkaProducer;
-    private final ObjectMapper objectMapper;
+    private final AuditLogCoalescer auditLogCoalescer;
+    private final AuditPolicy auditPolicy;
     private MongoTemplate mongoTemplate;
     
-    private static final ThreadLocal<org.bson.Document> oldValueStorage = new ThreadLocal<>();
-    private static final ThreadLocal<Boolean> isNewEntityFlag = new ThreadLocal<>();
+    // Saves between onBeforeConvert and onAfterSave, per entity instance: insertAll converts every entity first
+    private static final ThreadLocal<Map<Object, PendingSave>> pendingSaves =
+        ThreadLocal.withInitial(java.util.IdentityHashMap::new);
+
+    // Bounds entries left behind by saves that failed before onAfterSave
+    private static final int MAX_PENDING_SAVES = 10_000;
+
+    private record PendingSave(boolean isNew, org.bson.Document oldDocument) {
+    }
+
+    // Documents a running remove is about to delete, per collection, emitted once the delete succeeded
+    private static final ThreadLocal<Map<String, List<org.bson.Document>>> pendingDeletes =
+        ThreadLocal.withInitial(HashMap::new);
 
     @Autowired
-    public MongoAuditEventListener(AuditLogKafkaProducer auditLogKafkaProducer, MongoTemplate mongoTemplate) {
-        this.auditLogKafkaProducer = auditLogKafkaProducer;
-        this.objectMapper = new ObjectMapper();
+    public MongoAuditEventListener(AuditLogCoalescer auditLogCoalescer, MongoTemplate mongoTemplate,
+                                   AuditPolicy auditPolicy) {
+        this.auditLogCoalescer = auditLogCoalescer;
+        this.auditPolicy = auditPolicy;
         this.mongoTemplate = mongoTemplate;
         logger.info("=== MongoAuditEventListener constructor called with MongoTemplate ===");
     }
     
     @PostConstruct
     public void init() {
-        logger.info("=== MongoAuditEventListener initialized and registered ===");
-        logger.info("=== Will listen for MongoDB operations on all collections except {} ===", auditLogsCollection);
+        changeStreamCapture = ChangeStreamAuditCapture.MODE.equals(captureMode);
+        listenerDisabled = changeStreamCapture || ReactiveMongoAuditCallbacks.MODE.equals(captureMode);
+        logger.info("=== MongoAuditEventListener initialized and registered (capture mode: {}) ===", captureMode);
+        logger.info("=== Will listen for MongoDB operations on {} collections except {} ===",
+            auditPolicy.getIncludedCollections().isEmpty() ? "all" : auditPolicy.getIncludedCollections(),
+            auditPolicy.getExcludedCollections());
         logger.info("=== Default username: {} ===", defaultUsername);
     }
     
@@ -60,7 +105,8 @@ public class MongoAuditEventListener extends AbstractMongoEventListener<Object>
     @Override
     public void onBeforeConvert(BeforeConvertEvent<Object> event) {
         try {
-            if (auditLogsCollection.equals(event.getCollectionName())) {
+            AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(event.getCollectionName());
+            if (listenerDisabled || !policy.isAudited()) {
                 return;
             }
 
@@ -69,84 +115,86 @@ public class MongoAuditEventListener extends AbstractMongoEventListener<Object>
             
             // Check if entity is new (ID is null before MongoDB generates it)
             boolean isNew = (entityId == null || entityId.isEmpty());
-            isNewEntityFlag.set(isNew);
-            
-            // If it's an update, fetch the old document
-            if (!isNew && mongoTemplate != null) {
+
+            // If it's an audited update, take the old document from the saveAll pre-fetch or fetch it
+            org.bson.Document oldDocument = null;
+            boolean needsOldDocument = !isNew && policy.audits("UPDATE");
+            if (needsOldDocument && BulkSavePreImageInterceptor.isPrefetched(event.getCollectionName())) {
+                oldDocument = BulkSavePreImageInterceptor.getPreImage(event.getCollectionName(), entityId);
+            } else if (needsOldDocument && mongoTemplate != null) {
                 try {
-                    org.bson.Document oldDocument = mongoTemplate.findById(entityId, org.bson.Document.class, event.getCollectionName());
-                    if (oldDocument != null) {
-                        oldValueStorage.set(oldDocument);
-                    }
+                    oldDocument = mongoTemplate.findById(entityId, org.bson.Document.class, event.getCollectionName());
                 } catch (Exception e) {
                     logger.debug("Could not fetch old document for audit", e);
                 }
             }
+
+            Map<Object, PendingSave> pending = pendingSaves.get();
+            if (pending.size() >= MAX_PENDING_SAVES) {
+                logger.warn("Dropping {} pending audit old values of saves that never completed", pending.size());
+                pending.clear();
+            }
+            pending.put(entity, new PendingSave(isNew, oldDocument));
         } catch (Exception e) {
             logger.debug("Error in before convert event", e);
         }
     }
 
+    /**
+     * Before save - in change-stream mode, stamp the user context on the document so the change event carries it
+     */
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Object> event) {
+        if (!changeStreamCapture || !auditPolicy.forCollection(event.getCollectionName()).isAudited()
+                || event.getDocument() == null) {
+            return;
+        }
+        org.bson.Document stamp = MongoAuditContext.toStamp();
+        if (stamp != null) {
+            event.getDocument().put(MongoAuditContext.STAMP_FIELD, stamp);
+        } else {
+            event.getDocument().remove(MongoAuditContext.STAMP_FIELD);
+        }
+    }
+
     /**
      * Captures CREATE and UPDATE operations (AfterSaveEvent is triggered for both)
      */
     @Override
     public void onAfterSave(AfterSaveEvent<Object> event) {
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(event.getCollectionName());
+        if (listenerDisabled || !policy.isAudited()) {
+            return;
+        }
         try {
             logger.info("=== onAfterSave CALLED for collection: {} ===", event.getCollectionName());
-            
-            if (auditLogsCollection.equals(event.getCollectionName())) {
-                logger.debug("Skipping audit log for {} collection itself", auditLogsCollection);
-                return;
-            }
 
             logger.info("onAfterSave triggered for collection: {}", event.getCollectionName());
 
             Object entity = event.getSource();
+
+            // Use the state captured in onBeforeConvert for this entity
+            PendingSave pendingSave = pendingSaves.get().remove(entity);
+            boolean isNew = pendingSave != null ? pendingSave.isNew() : isNewEntity(entity);
+            String action = isNew ? "CREATE" : "UPDATE";
+            if (!policy.audits(action)) {
+                return;
+            }
+
             String entityId = extractEntityId(entity);
             String entityName = extractEntityName(entity);
             
-            String username = MongoAuditContext.getUsername();
-            String userId = MongoAuditContext.getUserId();
-            String organizationId = MongoAuditContext.getOrganizationId();
-            String urlDomain = MongoAuditContext.getUrlDomain();
-            String ipAddress = MongoAuditContext.getIpAddress();
+            AuditContext context = MongoAuditContext.get();
+            String username = context.getUsername();
+            String userId = context.getUserId();
+            String organizationId = context.getOrganizationId();
+            String urlDomain = context.getUrlDomain();
+            String ipAddress = context.getIpAddress();
             
             if (username == null || username.isEmpty()) {
                 username = defaultUsername;
             }
 
-            // Use the flag set in onBeforeConvert
-            Boolean isNew = isNewEntityFlag.get();
-            if (isNew == null) {
-                // Fallback to checking entity ID (shouldn't happen)
-                isNew = isNewEntity(entity);
-            }
-            String action = isNew ? "CREATE" : "UPDATE";
-            
-            // Clear the flag
-            isNewEntityFlag.remove();
-            String newValueJson = null;
-            try {
-                newValueJson = objectMapper.writeValueAsString(entity);
-            } catch (Exception e) {
-                logger.warn("Failed to serialize entity to JSON for audit log", e);
-                newValueJson = entity.toString();
-            }
-
-            String oldValueJson = null;
-            if ("UPDATE".equals(action)) {
-                org.bson.Document oldDocument = oldValueStorage.get();
-                if (oldDocument != null) {
-                    try {
-                        oldValueJson = objectMapper.writeValueAsString(oldDocument);
-                    } catch (Exception e) {
-                        oldValueJson = oldDocument.toJson();
-                    }
-                    oldValueStorage.remove();
-                }
-            }
-
             AuditLog auditLog = new AuditLog();
             auditLog.setUsername(username);
             auditLog.setUserId(userId);
@@ -155,18 +203,27 @@ public class MongoAuditEventListener extends AbstractMongoEventListener<Object>
             auditLog.setEntityName(entityName);
             auditLog.setEntityId(entityId);
             auditLog.setAction(action);
-            auditLog.setOldValue(oldValueJson);
-            auditLog.setNewValue(newValueJson);
+            // The document Spring Data just wrote, no second serialization of the entity
+            org.bson.Document newDocument = policy.filter(event.getDocument());
+            if ("UPDATE".equals(action)) {
+                org.bson.Document oldDocument = pendingSave != null ? policy.filter(pendingSave.oldDocument()) : null;
+                if (!AuditDiff.applyUpdate(auditLog, oldDocument, newDocument, policy.isFullSnapshot())) {
+                    logger.debug("No audited field changed on {} {}, no audit log", entityName, entityId);
+                    return;
+                }
+            } else {
+                auditLog.setNewValue(newDocument);
+            }
             auditLog.setIpAddress(ipAddress);
             auditLog.setTimestamp(LocalDateTime.now());
             auditLog.setDescription(String.format("Database %s operation on %s", action, entityName));
 
-            logger.info("Sending audit log to Kafka: action={}, entity={}, entityId={}, username={}", 
+            logger.info("Queueing audit log for Kafka: action={}, entity={}, entityId={}, username={}", 
                 action, entityName, entityId, username);
             
-            auditLogKafkaProducer.sendAuditLog(auditLog);
+            auditLogCoalescer.emit(auditLog, policy.getCoalesceWindowMs());
 
-            logger.info("Audit log sent to Kafka for {} operation on {}", action, entityName);
+            logger.info("Audit log queued for Kafka for {} operation on {}", action, entityName);
 
         } catch (Exception e) {
             logger.error("Error creating audit log for save operation", e);
@@ -174,98 +231,187 @@ public class MongoAuditEventListener extends AbstractMongoEventListener<Object>
     }
 
     /**
-     * Captures DELETE operations
+     * Before delete - read the documents a remove by id is about to delete, so each gets its own DELETE audit log
+     * with the deleted state. The event only carries the filter, not the remove's limit, skip or collation, so any
+     * other remove is audited by its filter. Nothing is written here. The delete command itself is audited here, not
+     * by {@link MongoCommandAuditListener}.
      */
     @Override
-    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+    public void onBeforeDelete(BeforeDeleteEvent<Object> event) {
+        if (listenerDisabled) {
+            return;
+        }
+        String collectionName = event.getCollectionName();
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collectionName);
+        pendingDeletes.get().remove(collectionName);
         try {
-            if (auditLogsCollection.equals(event.getCollectionName())) {
-                return;
+            List<Object> ids = deletePrefetch && policy.audits("DELETE") && mongoTemplate != null
+                ? idLookup(event.getDocument()) : null;
+            if (ids != null) {
+                prefetchDeletes(collectionName, ids);
             }
+        } finally {
+            // Last, the read above is a command of its own
+            MongoCommandAuditListener.expectMappedDelete(collectionName);
+        }
+    }
 
-            String entityId = extractIdFromDocument(event.getDocument());
-            String entityName = extractEntityNameFromCollection(event.getCollectionName());
+    /**
+     * The ids a delete filter is limited to - {@code {_id: id}} or {@code {_id: {$in: [...]}}} with at most
+     * {@code maxHeldDeletes} ids - or null
+     */
+    private List<Object> idLookup(org.bson.Document query) {
+        if (query == null || query.size() != 1 || !query.containsKey("_id")) {
+            return null;
+        }
+        Object id = query.get("_id");
+        if (!(id instanceof Map<?, ?> operator)) {
+            return id != null ? List.of(id) : null;
+        }
+        if (operator.size() == 1 && operator.get("$in") instanceof Collection<?> in && in.size() <= maxHeldDeletes) {
+            return new ArrayList<>(in);
+        }
+        return null;
+    }
 
-            String username = MongoAuditContext.getUsername();
-            String userId = MongoAuditContext.getUserId();
-            String organizationId = MongoAuditContext.getOrganizationId();
-            String urlDomain = MongoAuditContext.getUrlDomain();
-            String ipAddress = MongoAuditContext.getIpAddress();
+    /**
+     * Holds the documents with the given ids until the remove completed
+     */
+    private void prefetchDeletes(String collectionName, List<Object> ids) {
+        List<org.bson.Document> held = new ArrayList<>();
+        try {
+            MongoCollection<org.bson.Document> collection = mongoTemplate.getCollection(collectionName);
+            try (MongoCursor<org.bson.Document> cursor = collection.find(byIds(ids))
+                    .batchSize(deleteFetchBatchSize).cursor()) {
+                while (cursor.hasNext()) {
+                    held.add(cursor.next());
+                }
+            }
+            pendingDeletes.get().put(collectionName, held);
+        } catch (Exception e) {
+            // The delete is then audited by its query only
+            logger.debug("Could not fetch documents to be deleted for audit", e);
+        }
+    }
 
-            if (username == null || username.isEmpty()) {
-                username = "system";
+    /**
+     * Captures DELETE operations
+     */
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        int deletedCount = MongoCommandAuditListener.takeMappedDeleted();
+        MongoCommandAuditListener.clearMappedDelete();
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(event.getCollectionName());
+        if (listenerDisabled || !policy.audits("DELETE")) {
+            return;
+        }
+        try {
+            List<org.bson.Document> held = pendingDeletes.get().remove(event.getCollectionName());
+            List<org.bson.Document> deleted = held != null ? deleted(event.getCollectionName(), held, deletedCount) : null;
+            if (deleted != null) {
+                for (org.bson.Document document : deleted) {
+                    emitDelete(event.getCollectionName(), document, policy);
+                }
+                logger.debug("{} audit logs queued for Kafka for DELETE operation on {}",
+                    deleted.size(), event.getCollectionName());
+                return;
             }
+            // Documents could not be read beforehand: record the delete query, there is no deleted state
+            emitDeleteByQuery(event.getCollectionName(), event.getDocument(), policy);
+        } catch (Exception e) {
+            logger.error("Error creating audit log for delete operation", e);
+        }
+    }
 
-            String oldValueJson = null;
-            try {
-                oldValueJson = objectMapper.writeValueAsString(event.getDocument());
-            } catch (Exception e) {
-                logger.warn("Failed to serialize deleted document to JSON", e);
-                oldValueJson = event.getDocument().toJson();
+    /**
+     * The held documents the remove deleted. Unless the delete's reply says all or none were, a remove with a limit
+     * or a single-document remove may have left some: those still in the collection are not deleted.
+     *
+     * @return null if that could not be checked
+     */
+    private List<org.bson.Document> deleted(String collectionName, List<org.bson.Document> held, int deletedCount) {
+        if (deletedCount == held.size() || held.isEmpty()) {
+            return held;
+        }
+        if (deletedCount == 0) {
+            return List.of();
+        }
+        Set<Object> remaining = new HashSet<>();
+        try {
+            List<Object> ids = held.stream().map(document -> document.get("_id")).toList();
+            try (MongoCursor<org.bson.Document> cursor = mongoTemplate.getCollection(collectionName).find(byIds(ids))
+                    .projection(new org.bson.Document("_id", 1)).cursor()) {
+                while (cursor.hasNext()) {
+                    remaining.add(cursor.next().get("_id"));
+                }
             }
+        } catch (Exception e) {
+            logger.debug("Could not check which documents were deleted for audit", e);
+            return null;
+        }
+        return held.stream().filter(document -> !remaining.contains(document.get("_id"))).toList();
+    }
 
-            // Create audit log
-            AuditLog auditLog = new AuditLog();
-            auditLog.setUsername(username);
-            auditLog.setUserId(userId);
-            auditLog.setOrganizationId(organizationId);
-            auditLog.setUrlDomain(urlDomain);
-            auditLog.setEntityName(entityName);
-            auditLog.setEntityId(entityId);
-            auditLog.setAction("DELETE");
-            auditLog.setOldValue(oldValueJson);
-            auditLog.setIpAddress(ipAddress);
-            auditLog.setTimestamp(LocalDateTime.now());
-            auditLog.setDescription(String.format("Database DELETE operation on %s", entityName));
+    private static org.bson.Document byIds(List<Object> ids) {
+        return new org.bson.Document("_id", new org.bson.Document("$in", ids));
+    }
 
-            auditLogKafkaProducer.sendAuditLog(auditLog);
+    private void emitDelete(String collectionName, org.bson.Document document, AuditPolicy.CollectionPolicy policy) {
+        AuditLog auditLog = deleteAuditLog(collectionName, extractIdFromDocument(document));
+        auditLog.setOldValue(policy.filter(document));
+        auditLogCoalescer.emit(auditLog, policy.getCoalesceWindowMs());
+    }
 
-            logger.debug("Audit log sent to Kafka for DELETE operation on {}", entityName);
+    private void emitDeleteByQuery(String collectionName, org.bson.Document query, AuditPolicy.CollectionPolicy policy) {
+        Object id = query != null ? query.get("_id") : null;
+        AuditLog auditLog = deleteAuditLog(collectionName, id == null || id instanceof Map ? null : id.toString());
+        org.bson.Document filter = policy.filterOperation(query);
+        auditLog.setDescription(String.format("Database DELETE operation on %s matching %s", auditLog.getEntityName(),
+            filter != null ? filter.toJson() : "{}"));
+        auditLogCoalescer.emit(auditLog, policy.getCoalesceWindowMs());
+    }
 
-        } catch (Exception e) {
-            logger.error("Error creating audit log for delete operation", e);
+    private AuditLog deleteAuditLog(String collectionName, String entityId) {
+        String entityName = extractEntityNameFromCollection(collectionName);
+
+        AuditContext context = MongoAuditContext.get();
+        String username = context.getUsername();
+        if (username == null || username.isEmpty()) {
+            username = defaultUsername;
         }
+
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUsername(username);
+        auditLog.setUserId(context.getUserId());
+        auditLog.setOrganizationId(context.getOrganizationId());
+        auditLog.setUrlDomain(context.getUrlDomain());
+        auditLog.setEntityName(entityName);
+        auditLog.setEntityId(entityId);
+        auditLog.setAction("DELETE");
+        auditLog.setIpAddress(context.getIpAddress());
+        auditLog.setTimestamp(LocalDateTime.now());
+        auditLog.setDescription(String.format("Database DELETE operation on %s", entityName));
+        return auditLog;
     }
 
     /**
      * Extract entity ID from the entity object
      */
-    private String extractEntityId(Object entity) {
-        try {
-            // Try reflection to get id field
-            java.lang.reflect.Field idField = entity.getClass().getDeclaredField("id");
-            idField.setAccessible(true);
-            Object idValue = idField.get(entity);
-            return idValue != null ? idValue.toString() : null;
-        } catch (Exception e) {
-            // If entity has @Id annotation or uses getId() method
-            try {
-                java.lang.reflect.Method getIdMethod = entity.getClass().getMethod("getId");
-                Object idValue = getIdMethod.invoke(entity);
-                return idValue != null ? idValue.toString() : null;
-            } catch (Exception ex) {
-                logger.warn("Could not extract ID from entity: {}", entity.getClass().getName());
-                return null;
-            }
-        }
+    static String extractEntityId(Object entity) {
+        return EntityAuditMetadata.of(entity.getClass()).getId(entity);
     }
 
     /**
      * Extract entity name from the entity object (class name without package)
      */
     private String extractEntityName(Object entity) {
-        String className = entity.getClass().getSimpleName();
-        // Remove common suffixes
-        if (className.endsWith("Entity")) {
-            className = className.substring(0, className.length() - 6);
-        }
-        return className;
+        return EntityAuditMetadata.of(entity.getClass()).getEntityName();
     }
 
     /**
      * Extract entity name from collection name
      */
-    private String extractEntityNameFromCollection(String collectionName) {
+    static String extractEntityNameFromCollection(String collectionName) {
         // Convert collection name to entity name (e.g., "users" -> "User")
         if (collectionName == null || collectionName.isEmpty()) {
             return "Unknown";
@@ -292,18 +438,9 @@ public class MongoAuditEventListener extends AbstractMongoEventListener<Object>
 
     /**
      * Check if entity is new (just created)
-     * This is a simple heuristic - you might want to enhance this
      */
     private boolean isNewEntity(Object entity) {
-        try {
-            java.lang.reflect.Method getIdMethod = entity.getClass().getMethod("getId");
-            Object id = getIdMethod.invoke(entity);
-            // If ID is null or empty, it's likely a new entity
-            return id == null || id.toString().isEmpty();
-        } catch (Exception e) {
-            // Default to UPDATE if we can't determine
-            return false;
-        }
+        return EntityAuditMetadata.of(entity.getClass()).isNew(entity);
     }
 }
 
@@ -24,30 +24,8 @@ public class MongoAuditWebFilter extends OncePerRequestFilter {
                                    FilterChain filterChain) 
             throws ServletException, IOException {
         try {
-            // Extract username from header or use "anonymous"
-            String username = request.getHeader("X-Username");
-            if (username == null || username.isEmpty()) {
-                username = "anonymous";
-            }
-
-            // Extract user ID from header
-            String userId = request.getHeader("X-User-Id");
-
-            // Extract organization ID from header
-            String organizationId = request.getHeader("X-Organization-Id");
-
-            // Extract URL domain from request
-            String urlDomain = extractUrlDomain(request);
-
-            // Extract IP address
-            String ipAddress = getClientIpAddress(request);
-
-            // Set context for database-level auditing
-            MongoAuditContext.setUsername(username);
-            MongoAuditContext.setUserId(userId);
-            MongoAuditContext.setOrganizationId(organizationId);
-            MongoAuditContext.setUrlDomain(urlDomain);
-            MongoAuditContext.setIpAddress(ipAddress);
+            // Set context for database-level auditing; derived values are resolved when first used
+            MongoAuditContext.set(AuditContext.fromRequest(request));
 
             // Continue with the request
             filterChain.doFilter(request, response);
@@ -57,36 +35,4 @@ public class MongoAuditWebFilter extends OncePerRequestFilter {
             MongoAuditContext.clear();
         }
     }
-
-    /**
-     * Extract URL domain from request
-     */
-    private String extractUrlDomain(HttpServletRequest request) {
-        String requestUrl = request.getRequestURL().toString();
-        try {
-            java.net.URL url = new java.net.URL(requestUrl);
-            return url.getHost();
-        } catch (Exception e) {
-            // Fallback to server name if URL parsing fails
-            return request.getServerName();
-        }
-    }
-
-    /**
-     * Extract client IP address from request
-     */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-
-        return request.getRemoteAddr();
-    }
 }
-
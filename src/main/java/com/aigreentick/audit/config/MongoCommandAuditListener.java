@@ -0,0 +1,374 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Driver-level capture of the writes that bypass Spring Data's mapping events: {@code updateFirst},
+ * {@code updateMulti}, {@code upsert}, {@code findAndModify}, {@code findAndRemove} and {@code bulkOps} updates
+ * and removes. One audit log is written per command, not per document, carrying the filters and update specs of
+ * its statements and the number of documents the server reported as matched or deleted.
+ * <p>
+ * Writes that {@link MongoAuditEventListener} already audits are skipped: replacements (saves, {@code replace},
+ * {@code findAndReplace}) and {@code MongoTemplate.remove}, whose delete events mark the command on the calling
+ * thread. Commands that matched nothing are not audited.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.capture.mode", havingValue = "listener", matchIfMissing = true)
+public class MongoCommandAuditListener implements CommandListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoCommandAuditListener.class);
+
+    private static final Set<String> SYSTEM_DATABASES = Set.of("admin", "config", "local");
+
+    private static final BsonInt32 ZERO = new BsonInt32(0);
+
+    // Projection of the id lookup MongoTemplate.remove runs first when the query has a limit or skip
+    private static final BsonDocument ID_ONLY = new BsonDocument("_id", new BsonInt32(1));
+
+    private static final DocumentCodec CODEC = new DocumentCodec();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    // Collection of the MongoTemplate.remove on this thread whose delete events are audited already
+    private static final ThreadLocal<String> mappedDelete = new ThreadLocal<>();
+
+    // Request id of that delete once sent, then the number of documents it deleted
+    private static final ThreadLocal<Integer> mappedDeleteRequest = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> mappedDeleted = new ThreadLocal<>();
+
+    @Value("${audit.command-capture.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${audit.command-capture.max-statements:100}")
+    private int maxStatements = 100;
+
+    @Value("${audit.default.username:system}")
+    private String defaultUsername = "system";
+
+    private final ObjectProvider<AuditLogEmitter> auditLogEmitter;
+    private final AuditPolicy auditPolicy;
+
+    // Driver request id -> audit log waiting for the command's reply
+    private final Map<Integer, AuditLog> pending = new ConcurrentHashMap<>();
+
+    public MongoCommandAuditListener(ObjectProvider<AuditLogEmitter> auditLogEmitter, AuditPolicy auditPolicy) {
+        // The emitter is resolved lazily, this listener is created together with the MongoClient
+        this.auditLogEmitter = auditLogEmitter;
+        this.auditPolicy = auditPolicy;
+    }
+
+    /**
+     * The next command on this thread is the delete of a remove that raised delete events on the collection.
+     * The expectation is dropped by whatever command comes next, so a remove that failed before sending its delete
+     * does not hide a later one.
+     */
+    static void expectMappedDelete(String collectionName) {
+        mappedDelete.set(collectionName);
+        mappedDeleteRequest.remove();
+        mappedDeleted.remove();
+    }
+
+    /**
+     * Documents the expected mapped delete on this thread deleted, -1 if its reply was not seen. Reading clears it.
+     */
+    static int takeMappedDeleted() {
+        Integer deleted = mappedDeleted.get();
+        mappedDeleteRequest.remove();
+        mappedDeleted.remove();
+        return deleted != null ? deleted : -1;
+    }
+
+    static void clearMappedDelete() {
+        mappedDelete.remove();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (SYSTEM_DATABASES.contains(event.getDatabaseName())) {
+            return;
+        }
+        boolean mapped = isMappedDelete(event);
+        if (mapped) {
+            mappedDeleteRequest.set(event.getRequestId());
+        }
+        if (!enabled) {
+            return;
+        }
+        try {
+            AuditLog auditLog = switch (event.getCommandName()) {
+                case "update" -> updateAuditLog(event.getCommand());
+                case "delete" -> mapped ? null : deleteAuditLog(event.getCommand());
+                case "findAndModify" -> findAndModifyAuditLog(event.getCommand());
+                default -> null;
+            };
+            if (auditLog != null) {
+                pending.put(event.getRequestId(), auditLog);
+            }
+        } catch (Exception e) {
+            logger.error("Error creating audit log for {} command", event.getCommandName(), e);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Integer mappedRequest = mappedDeleteRequest.get();
+        if (mappedRequest != null && mappedRequest == event.getRequestId()) {
+            mappedDeleteRequest.remove();
+            mappedDeleted.set(event.getResponse().getNumber("n", ZERO).intValue());
+        }
+        AuditLog auditLog = pending.isEmpty() ? null : pending.remove(event.getRequestId());
+        if (auditLog == null) {
+            return;
+        }
+        try {
+            BsonDocument response = event.getResponse();
+            Document operation = "DELETE".equals(auditLog.getAction()) ? auditLog.getOldValue() : auditLog.getNewValue();
+            int affected;
+            if ("findAndModify".equals(event.getCommandName())) {
+                BsonDocument lastError = response.getDocument("lastErrorObject", new BsonDocument());
+                affected = lastError.getNumber("n", ZERO).intValue();
+                operation.append("matched", affected);
+            } else if ("DELETE".equals(auditLog.getAction())) {
+                affected = response.getNumber("n", ZERO).intValue();
+                operation.append("deleted", affected);
+            } else {
+                affected = response.getNumber("n", ZERO).intValue();
+                operation.append("matched", affected)
+                    .append("modified", response.getNumber("nModified", ZERO).intValue())
+                    .append("upserted", response.getArray("upserted", new BsonArray()).size());
+            }
+            if (affected == 0) {
+                return;
+            }
+            auditLogEmitter.getObject().emit(auditLog);
+            logger.debug("Audit log queued for Kafka for {} command on {}", event.getCommandName(), auditLog.getEntityName());
+        } catch (Exception e) {
+            logger.error("Error completing audit log for {} command", event.getCommandName(), e);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        if (!pending.isEmpty()) {
+            pending.remove(event.getRequestId());
+        }
+    }
+
+    /**
+     * Consumes the expected mapped delete: true when this command is it. Only the id lookup of a remove with a limit
+     * may run in between.
+     */
+    private static boolean isMappedDelete(CommandStartedEvent event) {
+        String expected = mappedDelete.get();
+        if (expected == null) {
+            return false;
+        }
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get(event.getCommandName());
+        boolean sameCollection = collection != null && collection.isString()
+            && expected.equals(collection.asString().getValue());
+        if (sameCollection && "find".equals(event.getCommandName()) && ID_ONLY.equals(command.get("projection"))) {
+            return false;
+        }
+        mappedDelete.remove();
+        return sameCollection && "delete".equals(event.getCommandName());
+    }
+
+    private AuditLog updateAuditLog(BsonDocument command) {
+        String collectionName = command.getString("update").getValue();
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collectionName);
+        if (!policy.audits("UPDATE")) {
+            return null;
+        }
+        List<Document> statements = new ArrayList<>();
+        BsonDocument only = null;
+        int count = 0;
+        for (BsonValue value : command.getArray("updates", new BsonArray())) {
+            BsonDocument statement = value.asDocument();
+            if (isReplacement(statement.get("u"))) {
+                // A save or replace, audited with its document by the mapping listener
+                continue;
+            }
+            count++;
+            only = count == 1 ? statement : null;
+            if (statements.size() < maxStatements) {
+                statements.add(new Document("filter", filter(policy, statement.getDocument("q", new BsonDocument())))
+                    .append("update", update(policy, statement.get("u")))
+                    .append("multi", statement.getBoolean("multi", BsonBoolean.FALSE).getValue())
+                    .append("upsert", statement.getBoolean("upsert", BsonBoolean.FALSE).getValue()));
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        AuditLog auditLog = auditLog(collectionName, "UPDATE", only != null ? only.getDocument("q", null) : null, count);
+        auditLog.setNewValue(operation("update", statements, count));
+        return auditLog;
+    }
+
+    private AuditLog deleteAuditLog(BsonDocument command) {
+        String collectionName = command.getString("delete").getValue();
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collectionName);
+        if (!policy.audits("DELETE")) {
+            return null;
+        }
+        BsonArray deletes = command.getArray("deletes", new BsonArray());
+        if (deletes.isEmpty()) {
+            return null;
+        }
+        List<Document> statements = new ArrayList<>();
+        for (BsonValue value : deletes) {
+            if (statements.size() == maxStatements) {
+                break;
+            }
+            BsonDocument statement = value.asDocument();
+            statements.add(new Document("filter", filter(policy, statement.getDocument("q", new BsonDocument())))
+                .append("limit", statement.getNumber("limit", ZERO).intValue()));
+        }
+        BsonDocument only = deletes.size() == 1 ? deletes.get(0).asDocument().getDocument("q", null) : null;
+        AuditLog auditLog = auditLog(collectionName, "DELETE", only, deletes.size());
+        auditLog.setOldValue(operation("delete", statements, deletes.size()));
+        return auditLog;
+    }
+
+    private AuditLog findAndModifyAuditLog(BsonDocument command) {
+        String collectionName = command.getString("findAndModify").getValue();
+        boolean remove = command.getBoolean("remove", BsonBoolean.FALSE).getValue();
+        if (!remove && isReplacement(command.get("update"))) {
+            // findAndReplace, audited by the mapping listener
+            return null;
+        }
+        String action = remove ? "DELETE" : "UPDATE";
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collectionName);
+        if (!policy.audits(action)) {
+            return null;
+        }
+        BsonDocument query = command.getDocument("query", new BsonDocument());
+        Document statement = new Document("filter", filter(policy, query));
+        if (!remove) {
+            statement.append("update", update(policy, command.get("update")))
+                .append("upsert", command.getBoolean("upsert", BsonBoolean.FALSE).getValue());
+        }
+        AuditLog auditLog = auditLog(collectionName, action, query, 1);
+        Document operation = operation("findAndModify", List.of(statement), 1);
+        if (remove) {
+            auditLog.setOldValue(operation);
+        } else {
+            auditLog.setNewValue(operation);
+        }
+        return auditLog;
+    }
+
+    private AuditLog auditLog(String collectionName, String action, BsonDocument filter, int statementCount) {
+        String entityName = MongoAuditEventListener.extractEntityNameFromCollection(collectionName);
+        AuditContext context = MongoAuditContext.get();
+        String username = context.getUsername();
+        if (username == null || username.isEmpty()) {
+            username = defaultUsername;
+        }
+
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUsername(username);
+        auditLog.setUserId(context.getUserId());
+        auditLog.setOrganizationId(context.getOrganizationId());
+        auditLog.setUrlDomain(context.getUrlDomain());
+        auditLog.setIpAddress(context.getIpAddress());
+        auditLog.setEntityName(entityName);
+        auditLog.setEntityId(entityId(filter));
+        auditLog.setAction(action);
+        auditLog.setTimestamp(LocalDateTime.now());
+        auditLog.setDescription(statementCount == 1
+            ? String.format("Database %s operation on %s", action, entityName)
+            : String.format("Database bulk %s operation on %s (%d statements)", action, entityName, statementCount));
+        return auditLog;
+    }
+
+    private static Document operation(String command, List<Document> statements, int statementCount) {
+        return new Document("command", command)
+            .append("statements", statements)
+            .append("statementCount", statementCount);
+    }
+
+    /**
+     * Id of the single document a filter selects by {@code _id} equality, else null
+     */
+    private static String entityId(BsonDocument filter) {
+        if (filter == null) {
+            return null;
+        }
+        BsonValue id = filter.get("_id");
+        if (id == null || id.isDocument() || id.isArray()) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return toValue(id).toString();
+    }
+
+    private static boolean isReplacement(BsonValue update) {
+        if (update == null || !update.isDocument()) {
+            // Aggregation pipeline updates are operator updates
+            return false;
+        }
+        BsonDocument document = update.asDocument();
+        return document.isEmpty() || !document.getFirstKey().startsWith("$");
+    }
+
+    // Ignored fields are left out of filters and update specs like out of audited documents
+    private static Document filter(AuditPolicy.CollectionPolicy policy, BsonDocument filter) {
+        return policy.filterOperation(toDocument(filter));
+    }
+
+    private static Object update(AuditPolicy.CollectionPolicy policy, BsonValue update) {
+        Object value = toValue(update);
+        if (value instanceof Document document) {
+            return policy.filterOperation(document);
+        }
+        if (value instanceof List<?> pipeline) {
+            return policy.filterPipeline(pipeline);
+        }
+        return value;
+    }
+
+    // The command documents are only valid during the callback, everything kept is copied out
+    private static Document toDocument(BsonDocument document) {
+        return CODEC.decode(new BsonDocumentReader(document), DECODER_CONTEXT);
+    }
+
+    private static Object toValue(BsonValue value) {
+        if (value == null) {
+            return null;
+        }
+        return toDocument(new BsonDocument("v", value)).get("v");
+    }
+}
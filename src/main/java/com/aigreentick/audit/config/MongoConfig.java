@@ -0,0 +1,45 @@
+package com.aigreentick.audit.config;
+
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.List;
+
+/**
+ * MongoDB mapping customizations
+ */
+@Configuration
+public class MongoConfig {
+
+    /**
+     * Registers {@link MongoCommandAuditListener} with the MongoClient when command capture is active
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer auditCommandListenerCustomizer(
+            ObjectProvider<MongoCommandAuditListener> commandAuditListener) {
+        return builder -> commandAuditListener.ifAvailable(builder::addCommandListener);
+    }
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(new LegacyAuditValueConverter()));
+    }
+
+    /**
+     * Audit logs stored before old/new values became embedded documents hold them as JSON strings
+     */
+    @ReadingConverter
+    static class LegacyAuditValueConverter implements Converter<String, Document> {
+
+        @Override
+        public Document convert(String source) {
+            return AuditValueJson.fromLegacyValue(source);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.aigreentick.audit.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of {@link MongoAuditWebFilter}: puts the request's {@link AuditContext} into the Reactor
+ * {@code Context} under {@code AuditContext.class}, where {@link ReactiveMongoAuditCallbacks} reads it. Nothing is
+ * bound to a thread, so the context follows the request across event loop and scheduler threads.
+ * <p>
+ * Only registered in a WebFlux application; this service itself runs on servlets.
+ */
+@Component
+@Order(1)
+@ConditionalOnProperty(name = "audit.capture.mode", havingValue = ReactiveMongoAuditCallbacks.MODE)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuditWebFilter implements WebFilter {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange)
+            .contextWrite(context -> context.put(AuditContext.class, AuditContext.fromRequest(exchange.getRequest())));
+    }
+}
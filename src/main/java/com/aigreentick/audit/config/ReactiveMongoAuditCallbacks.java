@@ -0,0 +1,180 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveAfterSaveCallback;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Audit capture for services writing through {@code ReactiveMongoTemplate} and reactive repositories
+ * ({@code audit.capture.mode=reactive}). Does what {@link MongoAuditEventListener} does for saves, without blocking:
+ * the old document of an update is read reactively, the user context comes from the Reactor {@code Context}
+ * (put there by {@link ReactiveAuditWebFilter} under {@code AuditContext.class}) and the audit log is handed to
+ * {@link AuditLogEmitter#tryEmit(AuditLog)}, which never waits.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.capture.mode", havingValue = ReactiveMongoAuditCallbacks.MODE)
+public class ReactiveMongoAuditCallbacks implements ReactiveBeforeConvertCallback<Object>,
+        ReactiveAfterSaveCallback<Object> {
+
+    public static final String MODE = "reactive";
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveMongoAuditCallbacks.class);
+
+    private static final String REACTIVE_DRIVER = "com.mongodb.reactivestreams.client.MongoClient";
+
+    // Bounds entries left behind by saves that failed before onAfterSave
+    private static final int MAX_PENDING_SAVES = 10_000;
+
+    @Value("${audit.default.username:system}")
+    private String defaultUsername = "system";
+
+    private final ObjectProvider<ReactiveMongoOperations> mongoOperations;
+    private final AuditLogEmitter auditLogEmitter;
+    private final AuditPolicy auditPolicy;
+
+    // Saves between onBeforeConvert and onAfterSave, per entity instance; saves of one request may run on any thread
+    private final Map<Object, PendingSave> pendingSaves = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private record PendingSave(boolean isNew, Document oldDocument) {
+    }
+
+    public ReactiveMongoAuditCallbacks(ObjectProvider<ReactiveMongoOperations> mongoOperations,
+                                       AuditLogEmitter auditLogEmitter, AuditPolicy auditPolicy) {
+        // The template is resolved lazily, it looks up these callbacks itself
+        this.mongoOperations = mongoOperations;
+        this.auditLogEmitter = auditLogEmitter;
+        this.auditPolicy = auditPolicy;
+        logger.info("=== ReactiveMongoAuditCallbacks registered for reactive MongoDB capture ===");
+    }
+
+    @PostConstruct
+    public void checkDriver() {
+        if (!ClassUtils.isPresent(REACTIVE_DRIVER, getClass().getClassLoader())) {
+            // Saves would go unaudited: the blocking listener is off in this mode
+            throw new IllegalStateException("audit.capture.mode=reactive needs the reactive MongoDB driver "
+                + "(spring-boot-starter-data-mongodb-reactive, or the reactive-capture build profile)");
+        }
+    }
+
+    /**
+     * Before convert - read the old document of an audited update, without blocking the save
+     */
+    @Override
+    public Publisher<Object> onBeforeConvert(Object entity, String collection) {
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collection);
+        if (!policy.isAudited()) {
+            return Mono.just(entity);
+        }
+        String entityId = MongoAuditEventListener.extractEntityId(entity);
+        boolean isNew = entityId == null || entityId.isEmpty();
+        ReactiveMongoOperations operations = mongoOperations.getIfAvailable();
+        if (isNew || !policy.audits("UPDATE") || operations == null) {
+            remember(entity, new PendingSave(isNew, null));
+            return Mono.just(entity);
+        }
+        return operations.findById(entityId, Document.class, collection)
+            .onErrorResume(e -> {
+                logger.debug("Could not fetch old document for audit", e);
+                return Mono.empty();
+            })
+            .map(oldDocument -> new PendingSave(false, oldDocument))
+            .defaultIfEmpty(new PendingSave(false, null))
+            .map(pendingSave -> {
+                remember(entity, pendingSave);
+                return entity;
+            });
+    }
+
+    /**
+     * Captures CREATE and UPDATE operations with the user context of the subscriber
+     */
+    @Override
+    public Publisher<Object> onAfterSave(Object entity, Document document, String collection) {
+        PendingSave pendingSave = pendingSaves.remove(entity);
+        AuditPolicy.CollectionPolicy policy = auditPolicy.forCollection(collection);
+        if (!policy.isAudited()) {
+            return Mono.just(entity);
+        }
+        return Mono.deferContextual(contextView -> {
+            try {
+                AuditLog auditLog = auditLog(entity, document, pendingSave, policy,
+                    contextView.getOrDefault(AuditContext.class, AuditContext.EMPTY));
+                if (auditLog != null) {
+                    auditLogEmitter.tryEmit(auditLog);
+                    logger.debug("Audit log queued for Kafka for {} operation on {}",
+                        auditLog.getAction(), auditLog.getEntityName());
+                }
+            } catch (Exception e) {
+                logger.error("Error creating audit log for reactive save operation", e);
+            }
+            return Mono.just(entity);
+        });
+    }
+
+    private AuditLog auditLog(Object entity, Document document, PendingSave pendingSave,
+                              AuditPolicy.CollectionPolicy policy, AuditContext context) {
+        boolean isNew = pendingSave != null
+            ? pendingSave.isNew()
+            : EntityAuditMetadata.of(entity.getClass()).isNew(entity);
+        String action = isNew ? "CREATE" : "UPDATE";
+        if (!policy.audits(action)) {
+            return null;
+        }
+
+        String entityId = MongoAuditEventListener.extractEntityId(entity);
+        String entityName = EntityAuditMetadata.of(entity.getClass()).getEntityName();
+        String username = context.getUsername();
+        if (username == null || username.isEmpty()) {
+            username = defaultUsername;
+        }
+
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUsername(username);
+        auditLog.setUserId(context.getUserId());
+        auditLog.setOrganizationId(context.getOrganizationId());
+        auditLog.setUrlDomain(context.getUrlDomain());
+        auditLog.setEntityName(entityName);
+        auditLog.setEntityId(entityId);
+        auditLog.setAction(action);
+        Document newDocument = policy.filter(document);
+        if ("UPDATE".equals(action)) {
+            Document oldDocument = pendingSave != null ? policy.filter(pendingSave.oldDocument()) : null;
+            if (!AuditDiff.applyUpdate(auditLog, oldDocument, newDocument, policy.isFullSnapshot())) {
+                logger.debug("No audited field changed on {} {}, no audit log", entityName, entityId);
+                return null;
+            }
+        } else {
+            auditLog.setNewValue(newDocument);
+        }
+        auditLog.setIpAddress(context.getIpAddress());
+        auditLog.setTimestamp(LocalDateTime.now());
+        auditLog.setDescription(String.format("Database %s operation on %s", action, entityName));
+        return auditLog;
+    }
+
+    private void remember(Object entity, PendingSave pendingSave) {
+        if (pendingSaves.size() >= MAX_PENDING_SAVES) {
+            logger.warn("Dropping {} pending audit old values of saves that never completed", pendingSaves.size());
+            pendingSaves.clear();
+        }
+        pendingSaves.put(entity, pendingSave);
+    }
+}
@@ -0,0 +1,53 @@
+package com.aigreentick.audit.controller;
+
+import com.aigreentick.audit.service.DeadLetterReplayService;
+import com.aigreentick.audit.service.RetryTopicPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Operations on the dead-letter topics of the audit and exception log pipelines
+ */
+@RestController
+@RequestMapping("/api/dead-letters")
+public class DeadLetterController {
+
+    private final DeadLetterReplayService deadLetterReplayService;
+
+    @Value("${spring.kafka.topic.audit-logs}")
+    private String auditLogsTopic;
+
+    @Value("${spring.kafka.topic.exception-logs}")
+    private String exceptionLogsTopic;
+
+    @Autowired
+    public DeadLetterController(DeadLetterReplayService deadLetterReplayService) {
+        this.deadLetterReplayService = deadLetterReplayService;
+    }
+
+    /**
+     * Re-inject dead-lettered records of a topic (audit-logs or exception-logs) into that topic, in bulk
+     */
+    @PostMapping("/{topic}/replay")
+    public ResponseEntity<Map<String, Object>> replay(@PathVariable String topic,
+                                                      @RequestParam(defaultValue = "1000") int maxRecords) {
+        if (!topic.equals(auditLogsTopic) && !topic.equals(exceptionLogsTopic)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (maxRecords <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        int replayed = deadLetterReplayService.replay(topic, maxRecords);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("topic", topic);
+        response.put("deadLetterTopic", RetryTopicPublisher.deadLetterTopic(topic));
+        response.put("replayed", replayed);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -119,9 +119,9 @@ public class GlobalExceptionHandler {
         exceptionLog.setDescription("RuntimeException occurred during request processing");
 
         try {
-            exceptionLogService.createExceptionLog(exceptionLog);
+            exceptionLogKafkaProducer.sendExceptionLog(exceptionLog);
         } catch (Exception e) {
-            logger.error("Failed to save exception log: {}", e.getMessage(), e);
+            logger.error("Failed to send exception log to Kafka: {}", e.getMessage(), e);
         }
 
         Map<String, Object> response = new HashMap<>();
@@ -168,9 +168,9 @@ public class GlobalExceptionHandler {
         exceptionLog.setDescription("IllegalArgumentException occurred - invalid argument provided");
 
         try {
-            exceptionLogService.createExceptionLog(exceptionLog);
+            exceptionLogKafkaProducer.sendExceptionLog(exceptionLog);
         } catch (Exception e) {
-            logger.error("Failed to save exception log: {}", e.getMessage(), e);
+            logger.error("Failed to send exception log to Kafka: {}", e.getMessage(), e);
         }
 
         Map<String, Object> response = new HashMap<>();
@@ -217,9 +217,9 @@ public class GlobalExceptionHandler {
         exceptionLog.setDescription("NullPointerException occurred - null reference accessed");
 
         try {
-            exceptionLogService.createExceptionLog(exceptionLog);
+            exceptionLogKafkaProducer.sendExceptionLog(exceptionLog);
         } catch (Exception e) {
-            logger.error("Failed to save exception log: {}", e.getMessage(), e);
+            logger.error("Failed to send exception log to Kafka: {}", e.getMessage(), e);
         }
 
         Map<String, Object> response = new HashMap<>();
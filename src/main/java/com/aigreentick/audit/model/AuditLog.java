@@ -1,10 +1,14 @@
 package com.aigreentick.audit.model;
 
+import com.aigreentick.audit.config.AuditValueJson;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Document(collection = "audit_logs")
 public class AuditLog {
@@ -37,12 +41,22 @@ public class AuditLog {
     @Field(name = "action")
     private String action;
 
-    // Optional JSON or text field for before-after values
+    // Optional before-after values, embedded as the stored BSON documents
     @Field(name = "old_value")
-    private String oldValue;
+    @JsonSerialize(using = AuditValueJson.Serializer.class)
+    @JsonDeserialize(using = AuditValueJson.Deserializer.class)
+    private org.bson.Document oldValue;
 
     @Field(name = "new_value")
-    private String newValue;
+    @JsonSerialize(using = AuditValueJson.Serializer.class)
+    @JsonDeserialize(using = AuditValueJson.Deserializer.class)
+    private org.bson.Document newValue;
+
+    // Changed fields of an UPDATE as {path, old, new}; old/new are left out when the field was added/removed
+    @Field(name = "changes")
+    @JsonSerialize(contentUsing = AuditValueJson.Serializer.class)
+    @JsonDeserialize(contentUsing = AuditValueJson.Deserializer.class)
+    private List<org.bson.Document> changes;
 
     // Description (optional for extra info)
     @Field(name = "description")
@@ -110,22 +124,30 @@ public class AuditLog {
         this.action = action;
     }
 
-    public String getOldValue() {
+    public org.bson.Document getOldValue() {
         return oldValue;
     }
 
-    public void setOldValue(String oldValue) {
+    public void setOldValue(org.bson.Document oldValue) {
         this.oldValue = oldValue;
     }
 
-    public String getNewValue() {
+    public org.bson.Document getNewValue() {
         return newValue;
     }
 
-    public void setNewValue(String newValue) {
+    public void setNewValue(org.bson.Document newValue) {
         this.newValue = newValue;
     }
 
+    public List<org.bson.Document> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<org.bson.Document> changes) {
+        this.changes = changes;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -0,0 +1,153 @@
+package com.aigreentick.audit.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the consumer batch size between configured bounds from observed MongoDB write latency.
+ * Every {@code WINDOW} completed writes the controller looks at the window (128 writes, so its p99 is the second
+ * slowest write and a single outlier does not shrink the batch):
+ * <ul>
+ *     <li>p99 write latency above the target - shrink the batch (multiplicative decrease)</li>
+ *     <li>per-document latency improved compared to the previous window - keep moving in the same direction</li>
+ *     <li>per-document latency got worse - reverse direction</li>
+ *     <li>otherwise - hold the current size</li>
+ * </ul>
+ * Current batch size and write latency percentiles are published to Micrometer as
+ * {@code audit.consumer.batch.size} and {@code audit.consumer.batch.write} (tagged with the consumer name).
+ */
+public class AdaptiveBatchSizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+
+    static final int WINDOW = 128;
+    private static final double GROW_FACTOR = 1.25;
+    private static final double SHRINK_FACTOR = 0.7;
+    // Per-document latency has to change by more than this to count as better or worse
+    private static final double SIGNIFICANT_CHANGE = 0.05;
+
+    private final String name;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetP99Nanos;
+    private final Timer writeTimer;
+
+    private volatile int batchSize;
+
+    // Guarded by this
+    private final long[] windowLatencies = new long[WINDOW];
+    private long windowDocuments;
+    private long windowTotalNanos;
+    private int windowCount;
+    private double previousNanosPerDocument = Double.NaN;
+    private boolean growing = true;
+
+    public AdaptiveBatchSizer(String name, int initialBatchSize, int minBatchSize, int maxBatchSize,
+                              Duration targetP99, MeterRegistry meterRegistry) {
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException("Invalid batch size bounds: " + minBatchSize + ".." + maxBatchSize);
+        }
+        this.name = name;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetP99Nanos = targetP99.toNanos();
+        this.batchSize = clamp(initialBatchSize);
+
+        if (meterRegistry != null) {
+            Gauge.builder("audit.consumer.batch.size", this, AdaptiveBatchSizer::getBatchSize)
+                    .description("Current target batch size of the consumer")
+                    .tag("consumer", name)
+                    .register(meterRegistry);
+            this.writeTimer = Timer.builder("audit.consumer.batch.write")
+                    .description("MongoDB write latency per batch")
+                    .tag("consumer", name)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+        } else {
+            this.writeTimer = null;
+        }
+    }
+
+    /**
+     * Batch size the buffers should flush at right now
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Record a completed write and adjust the batch size once a window is full.
+     * Only full batches - flushed at the batch size or at the byte limit, which grows with it - say something about
+     * the size; batches cut early by linger are only recorded in the metrics.
+     */
+    public void recordWrite(int documents, long latencyNanos, boolean fullBatch) {
+        if (writeTimer != null) {
+            writeTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+        if (!fullBatch || documents <= 0) {
+            return;
+        }
+        synchronized (this) {
+            windowLatencies[windowCount++] = latencyNanos;
+            windowDocuments += documents;
+            windowTotalNanos += latencyNanos;
+            if (windowCount == WINDOW) {
+                adjust();
+                windowCount = 0;
+                windowDocuments = 0;
+                windowTotalNanos = 0;
+            }
+        }
+    }
+
+    private void adjust() {
+        long[] sorted = windowLatencies.clone();
+        Arrays.sort(sorted);
+        long p99 = sorted[(int) Math.ceil(0.99 * WINDOW) - 1];
+        double nanosPerDocument = (double) windowTotalNanos / windowDocuments;
+
+        int previousSize = batchSize;
+        if (p99 > targetP99Nanos) {
+            // Latency target missed - back off quickly regardless of throughput
+            growing = false;
+            batchSize = clamp((int) (batchSize * SHRINK_FACTOR));
+        } else {
+            boolean firstWindow = Double.isNaN(previousNanosPerDocument);
+            boolean improved = firstWindow || nanosPerDocument < previousNanosPerDocument * (1 - SIGNIFICANT_CHANGE);
+            boolean worse = !firstWindow && nanosPerDocument > previousNanosPerDocument * (1 + SIGNIFICANT_CHANGE);
+            if (worse) {
+                // The last move made each document more expensive - go the other way
+                growing = !growing;
+            }
+            if (improved || worse) {
+                batchSize = growing
+                        ? clamp(Math.max(batchSize + 1, (int) (batchSize * GROW_FACTOR)))
+                        : clamp(Math.min(batchSize - 1, (int) (batchSize * SHRINK_FACTOR)));
+            }
+        }
+        previousNanosPerDocument = nanosPerDocument;
+
+        if (batchSize != previousSize) {
+            logger.info("{} batch size {} -> {} (p99 {} ms, {} µs/document)", name, previousSize, batchSize,
+                TimeUnit.NANOSECONDS.toMillis(p99), String.format("%.1f", nanosPerDocument / 1000));
+        }
+    }
+
+    private int clamp(int size) {
+        return Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+
+    /**
+     * Fixed-size sizer used when adaptive sizing is disabled; still publishes the metrics
+     */
+    public static AdaptiveBatchSizer fixed(String name, int batchSize, MeterRegistry meterRegistry) {
+        return new AdaptiveBatchSizer(name, batchSize, batchSize, batchSize, Duration.ofDays(1), meterRegistry);
+    }
+}
@@ -0,0 +1,95 @@
+package com.aigreentick.audit.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer for many producer threads and a single consumer thread.
+ * Slots are allocated up front; each carries a sequence number that tells producers whether it is free and the
+ * consumer whether it is published, so neither side takes a lock and a full buffer is detected without blocking.
+ */
+public class AuditEventRingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+
+    // Next position to claim (producers) and to read (consumer)
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public AuditEventRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Ring buffer capacity must be in [1, 2^30]: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new Object[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish an event, from any thread
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(T event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = event;
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds an event from one lap ago
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take the oldest event, from the single consumer thread only
+     *
+     * @return null if the buffer is empty (or the next event is claimed but not yet written)
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.getAcquire(index) != position + 1) {
+            return null;
+        }
+        T event = (T) slots[index];
+        slots[index] = null;
+        sequences.setRelease(index, position + capacity);
+        head.lazySet(position + 1);
+        return event;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,157 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.AuditDiff;
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges consecutive UPDATE audit logs of the same entity by the same user within a window into one, carrying the
+ * first old value and the last new value, before handing it to {@link AuditLogEmitter}.
+ * <p>
+ * The window starts with the first update and is not extended by later ones, so a constantly updated entity is
+ * still audited every window. Any other event of the entity (another user, a DELETE, an update that cannot be
+ * merged) first emits the pending update, so the order per entity is kept.
+ */
+@Service
+public class AuditLogCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogCoalescer.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final AuditLogEmitter auditLogEmitter;
+    private final Counter mergedCounter;
+
+    // entityName:entityId -> update waiting for its window to close
+    private final ConcurrentHashMap<String, AuditLog> pending = new ConcurrentHashMap<>();
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public AuditLogCoalescer(AuditLogEmitter auditLogEmitter, MeterRegistry meterRegistry) {
+        this.auditLogEmitter = auditLogEmitter;
+        this.mergedCounter = Counter.builder("audit.coalescer.merged")
+                .description("Audit logs merged into an earlier update of the same entity")
+                .register(meterRegistry);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Emit an audit log, holding back updates for up to {@code windowMs} to merge them
+     */
+    public void emit(AuditLog auditLog, long windowMs) {
+        if (auditLog.getEntityId() == null || (windowMs <= 0 && pending.isEmpty())) {
+            auditLogEmitter.emit(auditLog);
+            return;
+        }
+
+        String key = key(auditLog);
+        List<AuditLog> due = new ArrayList<>(2);
+        synchronized (lock(key)) {
+            // Decided inside compute, emitted after it returned: the emitter may wait or write to disk
+            AuditLog held = pending.compute(key, (k, current) -> {
+                due.clear();
+                if (windowMs > 0 && current != null && canMerge(current, auditLog)) {
+                    merge(current, auditLog);
+                    mergedCounter.increment();
+                    return current;
+                }
+                if (current != null) {
+                    due.add(current);
+                }
+                if (windowMs <= 0 || !"UPDATE".equals(auditLog.getAction())) {
+                    due.add(auditLog);
+                    return null;
+                }
+                return auditLog;
+            });
+            due.forEach(auditLogEmitter::emit);
+            if (held == auditLog) {
+                scheduler.schedule(() -> flush(key, auditLog), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        pending.keySet().forEach(this::flush);
+        logger.info("=== AuditLogCoalescer stopped ===");
+    }
+
+    private void flush(String key) {
+        synchronized (lock(key)) {
+            AuditLog held = pending.remove(key);
+            if (held != null) {
+                auditLogEmitter.emit(held);
+            }
+        }
+    }
+
+    private void flush(String key, AuditLog expected) {
+        synchronized (lock(key)) {
+            // Otherwise already emitted, and a later update may have started its own window
+            if (pending.remove(key, expected)) {
+                auditLogEmitter.emit(expected);
+            }
+        }
+    }
+
+    /**
+     * Keeps the events of an entity in emit order, including against the scheduled flush, without holding a map
+     * bin lock while emitting
+     */
+    private Object lock(String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    private static boolean canMerge(AuditLog current, AuditLog next) {
+        return "UPDATE".equals(next.getAction())
+            && Objects.equals(current.getUsername(), next.getUsername())
+            && Objects.equals(current.getUserId(), next.getUserId())
+            && Objects.equals(current.getOrganizationId(), next.getOrganizationId())
+            // Either both carry field changes or neither had an old value to diff against
+            && (current.getChanges() == null) == (next.getChanges() == null);
+    }
+
+    private static void merge(AuditLog current, AuditLog next) {
+        if (current.getChanges() != null) {
+            current.setChanges(AuditDiff.merge(current.getChanges(), next.getChanges()));
+        }
+        if (next.getNewValue() != null) {
+            current.setNewValue(next.getNewValue());
+        }
+        current.setIpAddress(next.getIpAddress());
+        current.setTimestamp(next.getTimestamp());
+    }
+
+    private static String key(AuditLog auditLog) {
+        return auditLog.getEntityName() + ":" + auditLog.getEntityId();
+    }
+}
@@ -0,0 +1,288 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands audit logs from request threads to Kafka without ever waiting for the producer.
+ * {@link #emit(AuditLog)} only publishes into an {@link AuditEventRingBuffer}; a dedicated publisher thread
+ * drains it into {@link AuditLogKafkaProducer}, so a full producer buffer ({@code max.block.ms}) or a Kafka outage
+ * stalls that thread instead of HTTP requests.
+ * <p>
+ * When the ring is full, {@code audit.emitter.overflow-policy} decides:
+ * <ul>
+ *     <li>{@code drop} - the event is dropped and counted in {@code audit.emitter.dropped}</li>
+ *     <li>{@code spill} - the event is appended to a {@link MappedSegmentSpool} under {@code audit.emitter.spill-directory}
+ *     (required, it must survive restarts) and sent once the ring has drained; later events follow it through the
+ *     spool so the order is kept. Events that do not fit in {@code audit.emitter.spill-max-bytes} are dropped</li>
+ *     <li>{@code block} - the caller waits up to {@code audit.emitter.block-timeout-ms} for a free slot, then drops</li>
+ * </ul>
+ */
+@Service
+public class AuditLogEmitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogEmitter.class);
+
+    public enum OverflowPolicy {
+        DROP, SPILL, BLOCK;
+
+        public static OverflowPolicy fromProperty(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int SPILL_READ_BATCH = 500;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    @Value("${audit.emitter.ring-size:8192}")
+    private int ringSize;
+
+    @Value("${audit.emitter.overflow-policy:drop}")
+    private String overflowPolicyProperty;
+
+    @Value("${audit.emitter.block-timeout-ms:50}")
+    private long blockTimeoutMs;
+
+    @Value("${audit.emitter.spill-directory:}")
+    private String spillDirectory;
+
+    @Value("${audit.emitter.spill-max-bytes:268435456}")
+    private long spillMaxBytes;
+
+    @Value("${audit.emitter.spill-segment-size-bytes:16777216}")
+    private int spillSegmentSize;
+
+    @Value("${audit.emitter.drain-timeout-ms:10000}")
+    private long drainTimeoutMs;
+
+    private final AuditLogKafkaProducer auditLogKafkaProducer;
+    private final MeterRegistry meterRegistry;
+
+    private OverflowPolicy overflowPolicy;
+    private AuditEventRingBuffer<AuditLog> ring;
+    private MappedSegmentSpool spillFile;
+    private AuditEventSerializer<AuditLog> spillSerializer;
+    private AuditEventDeserializer<AuditLog> spillDeserializer;
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+
+    private volatile boolean running;
+    private volatile boolean publisherParked;
+    private Thread publisherThread;
+
+    @Autowired
+    public AuditLogEmitter(AuditLogKafkaProducer auditLogKafkaProducer, MeterRegistry meterRegistry) {
+        this.auditLogKafkaProducer = auditLogKafkaProducer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        overflowPolicy = OverflowPolicy.fromProperty(overflowPolicyProperty);
+        ring = new AuditEventRingBuffer<>(ringSize);
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            if (spillDirectory == null || spillDirectory.isBlank()) {
+                throw new IllegalStateException("audit.emitter.overflow-policy=spill requires audit.emitter.spill-directory, "
+                    + "a directory that is kept across restarts");
+            }
+            spillFile = new MappedSegmentSpool(Path.of(spillDirectory), spillSegmentSize, spillMaxBytes);
+            spillSerializer = new AuditEventSerializer<>(AuditWireFormat.BINARY);
+            spillDeserializer = new AuditEventDeserializer<>(AuditLog.class);
+        }
+
+        droppedCounter = Counter.builder("audit.emitter.dropped")
+                .description("Audit logs dropped because the emitter ring buffer was full")
+                .register(meterRegistry);
+        spilledCounter = Counter.builder("audit.emitter.spilled")
+                .description("Audit logs written to the spill file because the emitter ring buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("audit.emitter.queue.size", ring, AuditEventRingBuffer::size)
+                .description("Audit logs waiting in the emitter ring buffer")
+                .register(meterRegistry);
+
+        running = true;
+        publisherThread = new Thread(this::publish, "audit-emitter-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+        logger.info("=== AuditLogEmitter started: ring size {}, overflow policy {} ===",
+            ring.getCapacity(), overflowPolicy);
+    }
+
+    /**
+     * Queue an audit log for Kafka. Never blocks, except under the {@code block} policy for at most its timeout.
+     *
+     * @return false if the event was dropped
+     */
+    public boolean emit(AuditLog auditLog) {
+        return emit(auditLog, true);
+    }
+
+    /**
+     * Like {@link #emit(AuditLog)} but never waits and does no IO - for callers on an event loop. A full ring drops
+     * the event under every policy: {@code block} does not wait and {@code spill} does not write the file. While
+     * spilled events are waiting the event is dropped as well, it would overtake them.
+     *
+     * @return false if the event was dropped
+     */
+    public boolean tryEmit(AuditLog auditLog) {
+        return emit(auditLog, false);
+    }
+
+    private boolean emit(AuditLog auditLog, boolean mayBlock) {
+        if (overflowPolicy == OverflowPolicy.SPILL && !spillFile.isEmpty()) {
+            // Older events are waiting in the file - queue behind them
+            return mayBlock ? spill(auditLog) : drop(auditLog);
+        }
+        if (ring.offer(auditLog)) {
+            wakePublisher();
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case SPILL -> {
+                return mayBlock ? spill(auditLog) : drop(auditLog);
+            }
+            case BLOCK -> {
+                if (!mayBlock) {
+                    return drop(auditLog);
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    if (ring.offer(auditLog)) {
+                        wakePublisher();
+                        return true;
+                    }
+                }
+                return drop(auditLog);
+            }
+            default -> {
+                return drop(auditLog);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        running = false;
+        LockSupport.unpark(publisherThread);
+        publisherThread.join(drainTimeoutMs);
+        if (!ring.isEmpty()) {
+            logger.warn("=== AuditLogEmitter stopped with {} audit logs not sent ===", ring.size());
+        }
+        if (spillFile != null) {
+            spillFile.close();
+        }
+        logger.info("=== AuditLogEmitter stopped ===");
+    }
+
+    private void publish() {
+        long drainDeadline = Long.MAX_VALUE;
+        while (running || System.nanoTime() < drainDeadline) {
+            if (!running && drainDeadline == Long.MAX_VALUE) {
+                drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+            }
+            if (!running && spillFile != null) {
+                // Keep what is queued for the next start rather than racing the shutdown with Kafka sends
+                for (AuditLog queued = ring.poll(); queued != null; queued = ring.poll()) {
+                    spill(queued);
+                }
+                return;
+            }
+            AuditLog auditLog = ring.poll();
+            if (auditLog != null) {
+                send(auditLog);
+                continue;
+            }
+            if (spillFile != null && !spillFile.isEmpty()) {
+                try {
+                    List<byte[]> spilled = spillFile.peek(SPILL_READ_BATCH);
+                    List<AuditLog> auditLogs = new ArrayList<>(spilled.size());
+                    for (byte[] record : spilled) {
+                        try {
+                            auditLogs.add(spillDeserializer.deserialize(null, record));
+                        } catch (RuntimeException e) {
+                            // Would block the spill file forever
+                            logger.error("Dropping unreadable spilled audit log", e);
+                        }
+                    }
+                    // The producer spools what Kafka does not accept, so the records are safe once handed over
+                    auditLogKafkaProducer.sendAuditLogs(auditLogs);
+                    spillFile.commit();
+                } catch (Exception e) {
+                    logger.error("Could not send spilled audit logs", e);
+                }
+                continue;
+            }
+            if (!running) {
+                // Drained before the deadline
+                return;
+            }
+            publisherParked = true;
+            if (ring.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            publisherParked = false;
+        }
+    }
+
+    private void send(AuditLog auditLog) {
+        try {
+            auditLogKafkaProducer.sendAuditLog(auditLog);
+        } catch (Exception e) {
+            logger.error("Error sending audit log to Kafka", e);
+        }
+    }
+
+    private boolean spill(AuditLog auditLog) {
+        try {
+            // Same id on every replay of the file, so a crash while replaying cannot store the audit log twice
+            if (auditLog.getId() == null) {
+                auditLog.setId(new ObjectId().toHexString());
+            }
+            if (!spillFile.append(spillSerializer.serialize(null, auditLog))) {
+                logger.debug("Audit spill file full");
+                return drop(auditLog);
+            }
+            spilledCounter.increment();
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not spill audit log to disk, dropping it", e);
+            return drop(auditLog);
+        }
+    }
+
+    private boolean drop(AuditLog auditLog) {
+        droppedCounter.increment();
+        logger.debug("Audit ring buffer full, dropped {} on {} {}",
+            auditLog.getAction(), auditLog.getEntityName(), auditLog.getEntityId());
+        return false;
+    }
+
+    private void wakePublisher() {
+        if (publisherParked) {
+            LockSupport.unpark(publisherThread);
+        }
+    }
+}
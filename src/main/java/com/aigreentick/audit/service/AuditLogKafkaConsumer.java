@@ -1,62 +1,146 @@
 package com.aigreentick.audit.service;
 
-import com.aigreentick.audit.model.AuditLog;
-import com.aigreentick.audit.repository.AuditLogRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class AuditLogKafkaConsumer {
 
     private static final Logger logger = LoggerFactory.getLogger(AuditLogKafkaConsumer.class);
     
-    @Value("${audit.consumer.batch-size:10}")
+    // Initial batch size; adjusted at runtime between the adaptive bounds
+    @Value("${audit.consumer.batch-size:500}")
     private int batchSize;
 
+    @Value("${audit.consumer.adaptive.enabled:true}")
+    private boolean adaptiveBatchSize;
+
+    @Value("${audit.consumer.adaptive.min-batch-size:50}")
+    private int minBatchSize;
+
+    @Value("${audit.consumer.adaptive.max-batch-size:5000}")
+    private int maxBatchSize;
+
+    @Value("${audit.consumer.adaptive.target-p99-ms:250}")
+    private long targetP99Ms;
+
+    @Value("${audit.consumer.max-linger-ms:1000}")
+    private long maxLingerMs;
+
+    @Value("${audit.consumer.max-buffered-bytes:1048576}")
+    private long maxBufferedBytes;
+
+    @Value("${audit.consumer.max-in-flight-batches:4}")
+    private int maxInFlightBatches;
+
+    // Records and bytes consumed but not yet written before the partitions are paused
+    @Value("${audit.consumer.backlog.max-records:20000}")
+    private long maxBacklogRecords;
+
+    @Value("${audit.consumer.backlog.max-bytes:67108864}")
+    private long maxBacklogBytes;
+
+    // Paused partitions are resumed once the backlog drained below this fraction of the limits
+    @Value("${audit.consumer.backlog.resume-ratio:0.5}")
+    private double backlogResumeRatio;
+
+    @Value("${audit.consumer.drain-timeout-ms:10000}")
+    private long drainTimeoutMs;
+
+    @Value("${spring.kafka.topic.audit-logs}")
+    private String topic;
+
+    @Value("${audit.collection.name:audit_logs}")
+    private String collectionName;
+
+    @Value("${audit.consumer.insert-attempts:3}")
+    private int insertAttempts;
+
+    @Value("${audit.consumer.raw-bson.enabled:false}")
+    private boolean rawBson;
+
+    // Split each batch by organization so every bulk insert holds one tenant's records
+    @Value("${audit.consumer.tenant-batching.enabled:false}")
+    private boolean tenantBatching;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    // Moves documents MongoDB rejects and undeserializable records off the main topic
     @Autowired
-    private AuditLogRepository auditLogRepository;
+    private RetryTopicPublisher retryTopicPublisher;
+
+    // Shared pool that runs MongoDB writes off the Kafka poll threads
+    @Autowired
+    private BatchWriterPool consumerWriterPool;
     
-    // In-memory buffer to accumulate records
-    private final List<AuditLog> buffer = new ArrayList<>();
-    private final Lock bufferLock = new ReentrantLock();
+    // Buffers records and writes them on size, linger time or buffered bytes
+    // Values are AuditLogs, or BsonEvents in raw BSON mode
+    private BufferedBatchProcessor<Object> batchProcessor;
     
     @PostConstruct
     public void init() {
+        BatchFlushPolicy flushPolicy = new BatchFlushPolicy(batchSize, Duration.ofMillis(maxLingerMs), maxBufferedBytes);
+        AdaptiveBatchSizer batchSizer = adaptiveBatchSize
+            ? new AdaptiveBatchSizer("audit-logs", batchSize, minBatchSize, maxBatchSize, Duration.ofMillis(targetP99Ms), meterRegistry)
+            : AdaptiveBatchSizer.fixed("audit-logs", batchSize, meterRegistry);
+        // Rejected documents go to the retry topic so one bad record never holds back the partition
+        MongoBulkInsertWriter<Object> writer = new MongoBulkInsertWriter<>(mongoTemplate, collectionName, insertAttempts);
+        WriteBacklog backlog = new WriteBacklog("audit-logs", maxBacklogRecords, maxBacklogBytes, backlogResumeRatio,
+            new ListenerPartitionPauser(), meterRegistry);
+        java.util.function.Consumer<List<ConsumerRecord<String, Object>>> batchWriter =
+            batch -> retryTopicPublisher.publishRejected(topic, batch, writer.insert(BufferedBatchProcessor.values(batch)));
+        batchProcessor = new BufferedBatchProcessor<>("audit-logs", flushPolicy, batchSizer, backlog,
+            tenantBatching ? TenantBatches.routing(batchWriter) : batchWriter,
+            consumerWriterPool, maxInFlightBatches, Duration.ofMillis(drainTimeoutMs));
+        batchProcessor.start();
         logger.info("=== AuditLogKafkaConsumer initialized with BATCH SAVING ({} records) ===", batchSize);
         logger.info("=== Ready to consume messages from topic: audit-logs ===");
-        logger.info("=== Will save exactly {} records in each batch ===", batchSize);
-        logger.info("=== Buffer size: {} records ===", batchSize);
+        logger.info("=== Batches are saved at {} records, {} bytes or after {} ms, whichever comes first ===",
+            batchSize, maxBufferedBytes, maxLingerMs);
+        if (rawBson) {
+            logger.info("=== Raw BSON mode: records are decoded straight into MongoDB documents ===");
+        }
+        if (adaptiveBatchSize) {
+            logger.info("=== Adaptive batch size between {} and {} records, target p99 write latency {} ms ===",
+                minBatchSize, maxBatchSize, targetP99Ms);
+        }
+        if (tenantBatching) {
+            logger.info("=== Tenant batching: each batch is saved per organization ===");
+        }
+        logger.info("=== Partitions are paused when {} records or {} bytes are waiting to be saved ===",
+            maxBacklogRecords, maxBacklogBytes);
     }
     
     @PreDestroy
     public void cleanup() {
         // Save any remaining records in buffer when application shuts down
-        bufferLock.lock();
-        try {
-            if (!buffer.isEmpty()) {
-                logger.info("Application shutting down, saving {} remaining audit logs...", buffer.size());
-                auditLogRepository.saveAll(buffer);
-                buffer.clear();
-                logger.info("Saved remaining audit logs successfully");
-            }
-        } finally {
-            bufferLock.unlock();
-        }
+        batchProcessor.stop();
     }
 
     @KafkaListener(topics = "${spring.kafka.topic.audit-logs}", 
@@ -65,61 +149,105 @@ public class AuditLogKafkaConsumer {
                    autoStartup = "true",
                    id = "auditLogKafkaListener")
     public void consumeBatchAuditLogs(
-            @Payload List<AuditLog> auditLogs,
-            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-            Acknowledgment acknowledgment) {
+            List<ConsumerRecord<String, Object>> records,
+            Consumer<?, ?> consumer) {
         
         try {
-            logger.info("=== CONSUMER CALLED ===");
-            logger.info("Received {} audit logs from topic {}", auditLogs.size(), topic);
-
-            if (auditLogs == null || auditLogs.isEmpty()) {
+            if (records == null || records.isEmpty()) {
                 logger.warn("Received empty or null batch of audit logs");
-                acknowledgment.acknowledge();
                 return;
             }
 
-            bufferLock.lock();
-            try {
-                // Add received records to buffer
-                buffer.addAll(auditLogs);
-                logger.info("Added {} records to buffer. Total in buffer: {}", 
-                    auditLogs.size(), buffer.size());
-
-                // Process batches of exactly batchSize records
-                while (buffer.size() >= batchSize) {
-                    // Extract exactly batchSize records from buffer
-                    List<AuditLog> batchToSave = new ArrayList<>(buffer.subList(0, batchSize));
-                    // Remove first batchSize records from buffer
-                    buffer.subList(0, batchSize).clear();
-                    
-                    logger.info("=== SAVING BATCH OF EXACTLY {} RECORDS ===", batchSize);
-                    logger.info("Buffer now has {} records remaining", buffer.size());
-                    
-                    // Save exactly batchSize records to database
-                    auditLogRepository.saveAll(batchToSave);
-                    logger.info("✅ Successfully saved exactly {} audit logs to database", batchSize);
-                }
-                
-                // Log if buffer has records but less than batchSize
-                if (buffer.size() > 0 && buffer.size() < batchSize) {
-                    logger.info("Buffer has {} records (waiting for {} more to reach batch size of {})", 
-                        buffer.size(), batchSize - buffer.size(), batchSize);
-                }
-                
-            } finally {
-                bufferLock.unlock();
-            }
+            logger.info("Received {} audit logs from topic {}", records.size(), records.get(0).topic());
 
-            // Acknowledge all received records
-            acknowledgment.acknowledge();
-            logger.info("Acknowledged {} audit logs", auditLogs.size());
+            // Undeserializable records go to the dead-letter topic; their offsets still advance with the rest.
+            // Nothing is buffered yet if this fails, so the redelivered poll is buffered exactly once
+            retryTopicPublisher.deadLetterDeserializationFailures(records);
 
         } catch (Exception e) {
             logger.error("Error processing batch of audit logs", e);
-            logger.error("Exception details: {}", e.getMessage(), e);
-            // Don't acknowledge on error - let Kafka retry
+            // Let the container's error handler redeliver the poll after a pause
+            throw e;
+        }
+
+        // Add received records to buffer, full batches are saved immediately. Never throws once records are
+        // buffered: a failed write is retried by the writers, not by redelivering the poll
+        batchProcessor.add(records);
+
+        // Commit offsets of batches that are already durable in MongoDB
+        try {
+            batchProcessor.commitDurableOffsets(consumer);
+        } catch (Exception e) {
+            logger.warn("Failed to commit durable offsets for audit logs, retrying with the next poll", e);
         }
     }
-}
 
+    /**
+     * Recoverer of the container's error handler, called for every record of a poll it gave up redelivering.
+     * The record is buffered like any other; one that could not even be moved to the dead-letter topic is lost,
+     * and logged with its coordinates so it can be re-read from Kafka.
+     */
+    @SuppressWarnings("unchecked")
+    public void recover(ConsumerRecord<?, ?> record, Exception cause) {
+        if (retryTopicPublisher.getDeserializationFailure(record) != null) {
+            logger.error("Giving up on undeserializable record {}-{}@{}, it was not moved to the dead-letter topic",
+                record.topic(), record.partition(), record.offset(), cause);
+        }
+        batchProcessor.add(List.of((ConsumerRecord<String, Object>) record));
+    }
+
+    /**
+     * Commit durable offsets while no new records arrive (published on the consumer thread)
+     */
+    @EventListener(condition = "event.listenerId.startsWith('auditLogKafkaListener')")
+    public void onListenerIdle(ListenerContainerIdleEvent event) {
+        try {
+            batchProcessor.commitDurableOffsets(event.getConsumer());
+        } catch (Exception e) {
+            logger.warn("Failed to commit durable offsets for audit logs while idle", e);
+        }
+    }
+
+    /**
+     * Called by the container's rebalance listener - every assigned partition gets its own buffer and writer
+     */
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        batchProcessor.onPartitionsAssigned(partitions);
+    }
+
+    /**
+     * Called by the container's rebalance listener before partitions move to another consumer
+     */
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        batchProcessor.onPartitionsRevoked(consumer, partitions);
+    }
+
+    /**
+     * Called by the container's rebalance listener when partitions were lost without a chance to commit
+     */
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        batchProcessor.onPartitionsLost(partitions);
+    }
+
+    /**
+     * Pauses partitions through the listener container, which applies it on the consumer thread at the next poll
+     */
+    private class ListenerPartitionPauser implements WriteBacklog.PartitionPauser {
+
+        @Override
+        public void pause(TopicPartition partition) {
+            MessageListenerContainer container = kafkaListenerEndpointRegistry.getListenerContainer("auditLogKafkaListener");
+            if (container != null) {
+                container.pausePartition(partition);
+            }
+        }
+
+        @Override
+        public void resume(TopicPartition partition) {
+            MessageListenerContainer container = kafkaListenerEndpointRegistry.getListenerContainer("auditLogKafkaListener");
+            if (container != null) {
+                container.resumePartition(partition);
+            }
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package com.aigreentick.audit.service;
 
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
 import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,8 +17,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class AuditLogKafkaProducer {
@@ -19,31 +39,228 @@ public class AuditLogKafkaProducer {
     @Value("${spring.kafka.topic.audit-logs}")
     private String auditLogsTopic;
 
+    // Sends waiting for Kafka's acknowledgement at most; further sends wait for a free slot
+    @Value("${audit.producer.max-in-flight:1000}")
+    private int maxInFlight = 1000;
+
+    @Value("${audit.spool.enabled:true}")
+    private boolean spoolEnabled;
+
+    // Required when the spool is enabled; must survive reboots, so not under java.io.tmpdir
+    @Value("${audit.spool.directory:}")
+    private String spoolDirectory;
+
+    @Value("${audit.spool.segment-size-bytes:16777216}")
+    private int spoolSegmentSize;
+
+    @Value("${audit.spool.max-size-bytes:1073741824}")
+    private long spoolMaxSize;
+
+    @Value("${audit.spool.replay-rate-per-second:2000}")
+    private int spoolReplayRate;
+
+    @Value("${audit.spool.retry-backoff-ms:5000}")
+    private long spoolRetryBackoffMs;
+
     @Autowired
     private KafkaTemplate<String, AuditLog> kafkaTemplate;
 
-    public void sendAuditLog(AuditLog auditLog) {
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private KafkaSendSpool<AuditLog> sendSpool;
+    private Semaphore inFlight;
+    private Timer sendTimer;
+    private Counter failedCounter;
+    // Logged once when sends start failing and once when they recover, audit.producer.failed counts every record
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    @PostConstruct
+    public void start() {
+        inFlight = new Semaphore(maxInFlight);
+        sendTimer = Timer.builder("audit.producer.send")
+                .description("Audit log sends until Kafka acknowledged them")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("audit.producer.failed")
+                .description("Audit log sends Kafka did not accept, spooled or lost")
+                .register(meterRegistry);
+        Gauge.builder("audit.producer.in-flight", inFlight, permits -> maxInFlight - permits.availablePermits())
+                .description("Audit log sends waiting for Kafka's acknowledgement")
+                .register(meterRegistry);
+        if (!spoolEnabled) {
+            return;
+        }
+        if (spoolDirectory == null || spoolDirectory.isBlank()) {
+            throw new IllegalStateException("audit.spool.enabled=true requires audit.spool.directory, "
+                + "a directory that is kept across restarts");
+        }
+        sendSpool = new KafkaSendSpool<>(auditLogsTopic,
+            new MappedSegmentSpool(Path.of(spoolDirectory, auditLogsTopic), spoolSegmentSize, spoolMaxSize),
+            kafkaTemplate, AuditLogKafkaProducer::key, new AuditEventSerializer<>(AuditWireFormat.BINARY),
+            new AuditEventDeserializer<>(AuditLog.class), spoolReplayRate, spoolRetryBackoffMs, meterRegistry);
+        sendSpool.start();
+    }
+
+    @PreDestroy
+    public void stopSpool() {
+        if (sendSpool != null) {
+            sendSpool.close();
+        }
+    }
+
+    /**
+     * Send asynchronously, waiting first if {@code audit.producer.max-in-flight} sends are unacknowledged. A record
+     * Kafka does not accept is written to the local spool and replayed later; the returned future completes once
+     * the record is in Kafka (with its result) or in the spool (with null), and fails only if it was lost.
+     */
+    public CompletableFuture<SendResult<String, AuditLog>> sendAuditLog(AuditLog auditLog) {
         try {
-            String key = auditLog.getEntityName() + "-" + auditLog.getEntityId();
-            
-            CompletableFuture<SendResult<String, AuditLog>> future = 
-                kafkaTemplate.send(auditLogsTopic, key, auditLog);
+            // Assign the id up front so a redelivered record is detected as duplicate instead of stored twice
+            if (auditLog.getId() == null) {
+                auditLog.setId(new ObjectId().toHexString());
+            }
+
+            if (sendSpool != null && sendSpool.isBrokerDown()) {
+                // Don't wait for a full producer buffer while Kafka is known to be unreachable
+                return spool(auditLog)
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.failedFuture(new IllegalStateException("Kafka spool for audit logs is full"));
+            }
+
+            inFlight.acquire();
+            long started = System.nanoTime();
+            CompletableFuture<SendResult<String, AuditLog>> future;
+            try {
+                future = kafkaTemplate.send(auditLogsTopic, key(auditLog), auditLog);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
             
-            future.whenComplete((result, ex) -> {
-                if (ex == null) {
-                    logger.info("Audit log successfully sent to Kafka topic: {}, partition: {}, offset: {}", 
-                        result.getRecordMetadata().topic(),
-                        result.getRecordMetadata().partition(),
-                        result.getRecordMetadata().offset());
-                } else {
-                    logger.error("Failed to send audit log to Kafka: {} on {}", 
-                        auditLog.getAction(), auditLog.getEntityName(), ex);
+            return future.handle((result, ex) -> {
+                if (completed(auditLog, started, ex)) {
+                    return result;
                 }
+                throw ex instanceof CompletionException completion ? completion : new CompletionException(ex);
             });
-            
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return spool(auditLog) ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(e);
         } catch (Exception e) {
-            logger.error("Error sending audit log to Kafka", e);
+            failed(e);
+            return spool(auditLog) ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(e);
         }
     }
-}
 
+    /**
+     * Send many audit logs with one callback per record and no future per record, at most
+     * {@code audit.producer.max-in-flight} unacknowledged at a time - the caller waits for free slots. The returned
+     * future completes once every record is in Kafka or in the spool, and fails with the first failure of a record
+     * that was lost.
+     */
+    public CompletableFuture<Void> sendAuditLogs(Collection<AuditLog> auditLogs) {
+        if (auditLogs.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        BatchSend batch = new BatchSend(auditLogs.size());
+        Iterator<AuditLog> remaining = auditLogs.iterator();
+        try {
+            kafkaTemplate.execute(producer -> {
+                while (remaining.hasNext()) {
+                    AuditLog auditLog = remaining.next();
+                    if (auditLog.getId() == null) {
+                        auditLog.setId(new ObjectId().toHexString());
+                    }
+                    if (sendSpool != null && sendSpool.isBrokerDown()) {
+                        batch.done(spool(auditLog), null);
+                        continue;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    long started = System.nanoTime();
+                    try {
+                        producer.send(new ProducerRecord<>(auditLogsTopic, key(auditLog), auditLog),
+                            (metadata, ex) -> batch.done(completed(auditLog, started, ex), ex));
+                    } catch (RuntimeException e) {
+                        // Serialization or producer buffer timeout, the callback is not called
+                        batch.done(completed(auditLog, started, e), e);
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            while (remaining.hasNext()) {
+                failed(e);
+                batch.done(spool(remaining.next()), e);
+            }
+        }
+        return batch.result;
+    }
+
+    /**
+     * Record a finished send and spool the audit log if Kafka did not accept it
+     *
+     * @return false if the audit log was lost
+     */
+    private boolean completed(AuditLog auditLog, long started, Throwable ex) {
+        inFlight.release();
+        if (ex == null) {
+            sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            if (failing.compareAndSet(true, false)) {
+                logger.info("Audit log sends to Kafka recovered");
+            }
+            return true;
+        }
+        failed(ex);
+        return spool(auditLog);
+    }
+
+    private void failed(Throwable ex) {
+        failedCounter.increment();
+        if (failing.compareAndSet(false, true)) {
+            logger.error("Audit log sends to Kafka are failing, spooling until they recover "
+                + "(see audit.producer.failed)", ex);
+        }
+    }
+
+    public boolean isFailing() {
+        return failing.get();
+    }
+
+    private boolean spool(AuditLog auditLog) {
+        return sendSpool != null && sendSpool.spool(auditLog);
+    }
+
+    /**
+     * Outstanding records of one {@link #sendAuditLogs(Collection)} call
+     */
+    private static final class BatchSend {
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final AtomicInteger pending;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        BatchSend(int size) {
+            this.pending = new AtomicInteger(size);
+        }
+
+        void done(boolean delivered, Throwable ex) {
+            if (!delivered) {
+                failure.compareAndSet(null, ex != null ? ex
+                    : new IllegalStateException("Kafka spool for audit logs is full"));
+            }
+            if (pending.decrementAndGet() == 0) {
+                Throwable first = failure.get();
+                if (first == null) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(first);
+                }
+            }
+        }
+    }
+
+    private static String key(AuditLog auditLog) {
+        return auditLog.getEntityName() + "-" + auditLog.getEntityId();
+    }
+}
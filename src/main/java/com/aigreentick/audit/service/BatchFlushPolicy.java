@@ -0,0 +1,103 @@
+package com.aigreentick.audit.service;
+
+import java.time.Duration;
+
+/**
+ * Decides when a consumer buffer must be written to MongoDB.
+ * A flush fires on record count, maximum linger time or buffered bytes - whichever comes first.
+ * The byte limit is set for a batch of {@code maxRecords} records and grows with a larger runtime batch size.
+ */
+public class BatchFlushPolicy {
+
+    /**
+     * Why a buffer was flushed (used for logging)
+     */
+    public enum FlushReason {
+        SIZE, LINGER, BYTES, SHUTDOWN
+    }
+
+    private final int maxRecords;
+    private final long maxLingerNanos;
+    private final long maxBytes;
+
+    public BatchFlushPolicy(int maxRecords, Duration maxLinger, long maxBytes) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("maxRecords must be positive: " + maxRecords);
+        }
+        if (maxLinger.isNegative() || maxLinger.isZero()) {
+            throw new IllegalArgumentException("maxLinger must be positive: " + maxLinger);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxRecords = maxRecords;
+        this.maxLingerNanos = maxLinger.toNanos();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the reason a buffer in the given state must be flushed, or null if it can keep filling
+     */
+    public FlushReason evaluate(int bufferedRecords, long bufferedBytes, long oldestRecordAgeNanos) {
+        return evaluate(bufferedRecords, maxRecords, bufferedBytes, oldestRecordAgeNanos);
+    }
+
+    /**
+     * Same as {@link #evaluate(int, long, long)} with a batch size chosen at runtime (see {@link AdaptiveBatchSizer})
+     */
+    public FlushReason evaluate(int bufferedRecords, int batchSize, long bufferedBytes, long oldestRecordAgeNanos) {
+        if (bufferedRecords == 0) {
+            return null;
+        }
+        if (bufferedRecords >= batchSize) {
+            return FlushReason.SIZE;
+        }
+        if (bufferedBytes >= maxBytesFor(batchSize)) {
+            return FlushReason.BYTES;
+        }
+        if (oldestRecordAgeNanos >= maxLingerNanos) {
+            return FlushReason.LINGER;
+        }
+        return null;
+    }
+
+    /**
+     * Byte limit of a batch of the given size: never below the configured one, scaled up for batches larger than
+     * {@code maxRecords}, so a grown adaptive batch is not cut short by bytes before it reaches its size
+     */
+    public long maxBytesFor(int batchSize) {
+        if (batchSize <= maxRecords) {
+            return maxBytes;
+        }
+        return (long) Math.min((double) Long.MAX_VALUE, (double) maxBytes * batchSize / maxRecords);
+    }
+
+    /**
+     * How often the scheduler should re-check buffers so linger is honoured with reasonable precision
+     */
+    public Duration checkInterval() {
+        long intervalMillis = Math.max(1, Duration.ofNanos(maxLingerNanos).toMillis() / 4);
+        return Duration.ofMillis(Math.min(intervalMillis, 250));
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public Duration getMaxLinger() {
+        return Duration.ofNanos(maxLingerNanos);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFlushPolicy{" +
+                "maxRecords=" + maxRecords +
+                ", maxLinger=" + getMaxLinger() +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+}
@@ -0,0 +1,117 @@
+package com.aigreentick.audit.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor that runs MongoDB batch writes off the Kafka poll threads.
+ * Uses one virtual thread per write when the runtime supports them (Java 21+) and falls back
+ * to a pool of daemon platform threads otherwise. At most {@code maxConcurrentWrites} batches are
+ * written at the same time; submitting beyond that is rejected with a {@link RejectedExecutionException}
+ * instead of blocking, so callers on the Kafka poll thread keep their records buffered and keep polling.
+ */
+public class BatchWriterPool implements Executor, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchWriterPool.class);
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final Semaphore writeSlots;
+    private final int maxConcurrentWrites;
+    private final boolean virtualThreads;
+
+    public BatchWriterPool(String name, int maxConcurrentWrites, boolean preferVirtualThreads) {
+        this.name = name;
+        this.maxConcurrentWrites = maxConcurrentWrites;
+        this.writeSlots = new Semaphore(maxConcurrentWrites);
+        ExecutorService virtualExecutor = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualExecutor != null;
+        this.delegate = virtualExecutor != null ? virtualExecutor : newPlatformThreadExecutor(name, maxConcurrentWrites);
+        logger.info("=== {} writer pool started: {} concurrent writes on {} threads ===",
+            name, maxConcurrentWrites, virtualThreads ? "virtual" : "platform");
+    }
+
+    /**
+     * Run the write on a free writer
+     *
+     * @throws RejectedExecutionException if all {@code maxConcurrentWrites} writers are busy
+     */
+    @Override
+    public void execute(Runnable write) {
+        if (!writeSlots.tryAcquire()) {
+            throw new RejectedExecutionException(name + " writer pool is saturated (" + maxConcurrentWrites + " writes running)");
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    write.run();
+                } finally {
+                    writeSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            writeSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of batch writes currently running
+     */
+    public int getActiveWrites() {
+        return maxConcurrentWrites - writeSlots.availablePermits();
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @Override
+    public void close() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("{} writer pool did not finish in time, interrupting {} writes", name, getActiveWrites());
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() looked up reflectively so the service still runs on Java 17
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            logger.warn("Virtual threads are not available, using platform threads for batch writes", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+}
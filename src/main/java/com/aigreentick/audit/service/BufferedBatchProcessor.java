@@ -0,0 +1,476 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers consumed Kafka records and writes them in batches according to a {@link BatchFlushPolicy},
+ * with the batch size itself tuned at runtime by an {@link AdaptiveBatchSizer}.
+ * Size and byte limits are checked as records arrive, linger is checked by a background scheduler,
+ * so a quiet topic never leaves records sitting in memory longer than the configured linger time.
+ * <p>
+ * Every assigned partition gets its own buffer, created when the partition is assigned and drained
+ * when it is revoked. Listener threads therefore never contend with each other and a batch only ever
+ * contains records of one partition. Full batches are handed to a shared {@link BatchWriterPool} so the
+ * poll thread keeps fetching and deserializing while MongoDB I/O happens; each partition may have up to
+ * {@code maxInFlightBatches} batches being written at once. Offsets are committed from the poll thread,
+ * and only up to the last offset whose batch is durable in MongoDB (see {@link PartitionOffsetTracker}),
+ * so batches of a partition may complete in any order.
+ * <p>
+ * Records count against a bounded {@link WriteBacklog} until their batch is written. When the backlog is full
+ * the partitions are paused rather than blocking the poll thread, and resumed once it drained; a partition
+ * whose writers are all busy, or that finds the shared pool saturated, keeps its records buffered until a writer frees up.
+ * Shared by the audit log and exception log consumers.
+ */
+public class BufferedBatchProcessor<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferedBatchProcessor.class);
+
+    private static final long INITIAL_RETRY_BACKOFF_MS = 100;
+    private static final long MAX_RETRY_BACKOFF_MS = 5000;
+    // How often a draining buffer checks the writer pool for a free writer
+    private static final long POOL_RETRY_MS = 10;
+
+    private final String name;
+    private final BatchFlushPolicy flushPolicy;
+    private final AdaptiveBatchSizer batchSizer;
+    private final WriteBacklog backlog;
+    // Receives the records of a batch, not just their values, so rejected ones keep their keys
+    private final java.util.function.Consumer<List<ConsumerRecord<String, T>>> batchWriter;
+    private final Executor writerPool;
+    private final int maxInFlightBatches;
+    private final Duration drainTimeout;
+
+    private final Map<TopicPartition, PartitionBuffer> partitionBuffers = new ConcurrentHashMap<>();
+    private final PartitionOffsetTracker offsetTracker = new PartitionOffsetTracker();
+
+    private ScheduledExecutorService flushScheduler;
+    private volatile boolean running;
+
+    public BufferedBatchProcessor(String name, BatchFlushPolicy flushPolicy, AdaptiveBatchSizer batchSizer,
+                                  WriteBacklog backlog, java.util.function.Consumer<List<ConsumerRecord<String, T>>> batchWriter,
+                                  Executor writerPool, int maxInFlightBatches, Duration drainTimeout) {
+        this.name = name;
+        this.flushPolicy = flushPolicy;
+        this.batchSizer = batchSizer;
+        this.backlog = backlog;
+        this.batchWriter = batchWriter;
+        this.writerPool = writerPool;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Start the background linger check
+     */
+    public void start() {
+        running = true;
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-flush-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushPolicy.checkInterval().toMillis();
+        flushScheduler.scheduleWithFixedDelay(this::flushIfDue, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("=== {} batching started with {} (check every {} ms) ===", name, flushPolicy, intervalMillis);
+    }
+
+    /**
+     * Stop the scheduler and write whatever is still buffered, giving up after the drain timeout.
+     * Failed writes are no longer retried once stopping; offsets of the batches written in time are committed
+     * by the rebalance listener when the container stops, anything not committed is redelivered on the next start.
+     */
+    public void stop() {
+        // Before flushing, so writers stuck retrying against an unavailable MongoDB give up and free their permits
+        running = false;
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+        }
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        partitionBuffers.values().forEach(partitionBuffer -> partitionBuffer.flushBefore(deadline));
+        partitionBuffers.values().forEach(partitionBuffer -> partitionBuffer.awaitInFlightWrites(deadline));
+        partitionBuffers.values().forEach(PartitionBuffer::close);
+        backlog.forget(partitionBuffers.keySet());
+        partitionBuffers.clear();
+    }
+
+    /**
+     * Create a buffer for every newly assigned partition
+     */
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            partitionBuffers.computeIfAbsent(partition, PartitionBuffer::new);
+        }
+        logger.info("{} now buffering {} partition(s)", name, partitionBuffers.size());
+    }
+
+    /**
+     * Write everything buffered for the revoked partitions, wait for their in-flight batches and commit
+     * before the partitions move to another consumer, so the new owner starts right after the last persisted record.
+     * Gives up after the drain timeout; whatever is not written by then stays uncommitted and is redelivered.
+     */
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<PartitionBuffer> revoked = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            PartitionBuffer partitionBuffer = partitionBuffers.remove(partition);
+            if (partitionBuffer != null) {
+                partitionBuffer.closed = true;
+                revoked.add(partitionBuffer);
+            }
+        }
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        // Flush first, then wait, so the revoked partitions are written in parallel
+        revoked.forEach(partitionBuffer -> partitionBuffer.flushBefore(deadline));
+        revoked.forEach(partitionBuffer -> partitionBuffer.awaitInFlightWrites(deadline));
+        try {
+            commitDurableOffsets(consumer);
+        } catch (Exception e) {
+            logger.warn("{} could not commit offsets for revoked partitions {}", name, partitions, e);
+        }
+        revoked.forEach(PartitionBuffer::close);
+        backlog.forget(partitions);
+        offsetTracker.forget(partitions);
+    }
+
+    /**
+     * Partitions were taken away without a chance to commit - drop their state, the new owner re-reads them
+     */
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            PartitionBuffer partitionBuffer = partitionBuffers.remove(partition);
+            if (partitionBuffer != null) {
+                partitionBuffer.close();
+            }
+        }
+        backlog.forget(partitions);
+        offsetTracker.forget(partitions);
+    }
+
+    /**
+     * Add a polled batch to the partition buffers and hand every batch that became due to the writers.
+     * Pauses the partitions if this poll filled the write backlog. Called on the consumer thread.
+     * Does not fail once records are buffered, so a poll is never buffered twice by redelivering it.
+     */
+    public void add(List<ConsumerRecord<String, T>> records) {
+        long polledBytes = 0;
+        for (ConsumerRecord<String, T> record : records) {
+            polledBytes += recordBytes(record);
+        }
+        // Count the poll before buffering it, a batch may already be written before this method returns
+        backlog.add(records.size(), polledBytes);
+
+        PartitionBuffer current = null;
+        for (ConsumerRecord<String, T> record : records) {
+            // Poll results are grouped by partition, so the lookup rarely changes within a batch
+            if (current == null || current.partition.partition() != record.partition()
+                    || !current.partition.topic().equals(record.topic())) {
+                current = partitionBuffers.computeIfAbsent(
+                    new TopicPartition(record.topic(), record.partition()), PartitionBuffer::new);
+            }
+            current.add(record);
+        }
+        backlog.pauseIfFull(partitionBuffers.keySet());
+    }
+
+    /**
+     * Commit offsets whose batches are durable in MongoDB. Must be called on the consumer thread.
+     */
+    public void commitDurableOffsets(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committableOffsets(consumer.assignment());
+        if (offsets.isEmpty()) {
+            return;
+        }
+        consumer.commitSync(offsets);
+        offsetTracker.markCommitted(offsets);
+        logger.debug("{} committed durable offsets {}", name, offsets);
+    }
+
+    /**
+     * Scheduler callback - writes every buffer whose oldest record has lingered long enough
+     * or that waited for a free writer, and resumes paused partitions once the backlog drained
+     */
+    private void flushIfDue() {
+        for (PartitionBuffer partitionBuffer : partitionBuffers.values()) {
+            try {
+                partitionBuffer.flushIfDue();
+            } catch (Exception e) {
+                // Keep the records buffered, the next tick will try again
+                logger.error("{} scheduled flush of {} failed", name, partitionBuffer.partition, e);
+            }
+        }
+        backlog.resumeIfDrained();
+    }
+
+    /**
+     * Values of a batch handed to the writer, in order
+     */
+    static <T> List<T> values(List<? extends ConsumerRecord<?, T>> batch) {
+        List<T> values = new ArrayList<>(batch.size());
+        for (ConsumerRecord<?, T> record : batch) {
+            values.add(record.value());
+        }
+        return values;
+    }
+
+    /**
+     * Retry until the batch is stored, or until the processor stops or the partition is revoked;
+     * the offsets stay uncommitted meanwhile so nothing is lost
+     */
+    private void writeWithRetry(PartitionBuffer owner, List<ConsumerRecord<String, T>> batch,
+                                BatchFlushPolicy.FlushReason reason) {
+        TopicPartition partition = owner.partition;
+        long backoffMs = INITIAL_RETRY_BACKOFF_MS;
+        while (true) {
+            try {
+                if (!batch.isEmpty()) {
+                    long started = System.nanoTime();
+                    batchWriter.accept(batch);
+                    batchSizer.recordWrite(batch.size(), System.nanoTime() - started,
+                        reason == BatchFlushPolicy.FlushReason.SIZE || reason == BatchFlushPolicy.FlushReason.BYTES);
+                }
+                logger.info("✅ {} successfully saved {} records of {} to database", name, batch.size(), partition);
+                return;
+            } catch (Exception e) {
+                if (!running || owner.closed) {
+                    logger.error("{} stopping or partition revoked, {} records of {} were not saved and will be redelivered",
+                        name, batch.size(), partition);
+                    throw e;
+                }
+                logger.error("{} failed to save batch of {} records of {}, retrying in {} ms",
+                    name, batch.size(), partition, backoffMs, e);
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    public int getBufferedRecords() {
+        return partitionBuffers.values().stream().mapToInt(PartitionBuffer::size).sum();
+    }
+
+    public int getAssignedPartitions() {
+        return partitionBuffers.size();
+    }
+
+    private static long recordBytes(ConsumerRecord<?, ?> record) {
+        return Math.max(0, record.serializedValueSize());
+    }
+
+    /**
+     * Buffer of a single partition. Only the owning consumer thread and the flush scheduler add to it,
+     * its batches are written on the shared writer pool.
+     */
+    private final class PartitionBuffer {
+
+        private final TopicPartition partition;
+        private final List<ConsumerRecord<String, T>> buffer = new ArrayList<>();
+        private final Lock bufferLock = new ReentrantLock();
+        private final Semaphore inFlightBatches = new Semaphore(maxInFlightBatches);
+        private long bufferedBytes;
+        private long oldestRecordNanos;
+        // Set when the partition is revoked or lost; its batches are no longer retried
+        private volatile boolean closed;
+
+        PartitionBuffer(TopicPartition partition) {
+            this.partition = partition;
+        }
+
+        void add(ConsumerRecord<String, T> record) {
+            bufferLock.lock();
+            try {
+                if (buffer.isEmpty()) {
+                    oldestRecordNanos = System.nanoTime();
+                }
+                // Records without value are kept so their offsets are committed in order with the rest
+                buffer.add(record);
+                bufferedBytes += recordBytes(record);
+
+                // Write as soon as a full batch is available so the buffer never exceeds the limits
+                BatchFlushPolicy.FlushReason reason = currentFlushReason();
+                if (reason == BatchFlushPolicy.FlushReason.SIZE || reason == BatchFlushPolicy.FlushReason.BYTES) {
+                    submitBuffered(reason);
+                }
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+
+        void flushIfDue() {
+            bufferLock.lock();
+            try {
+                BatchFlushPolicy.FlushReason reason = currentFlushReason();
+                if (reason != null) {
+                    submitBuffered(reason);
+                }
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+
+        /**
+         * Write what is buffered, waiting until the deadline for a free writer.
+         * If none frees up in time the records are dropped by {@link #close()} and redelivered.
+         */
+        void flushBefore(long deadlineNanos) {
+            bufferLock.lock();
+            try {
+                if (!buffer.isEmpty() && !submitBuffered(BatchFlushPolicy.FlushReason.SHUTDOWN, deadlineNanos)) {
+                    logger.warn("{} no writer for the {} buffered records of {} within {}, their offsets stay uncommitted",
+                        name, buffer.size(), partition, drainTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+
+        int size() {
+            bufferLock.lock();
+            try {
+                return buffer.size();
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+
+        private BatchFlushPolicy.FlushReason currentFlushReason() {
+            long age = buffer.isEmpty() ? 0 : System.nanoTime() - oldestRecordNanos;
+            return flushPolicy.evaluate(buffer.size(), batchSizer.getBatchSize(), bufferedBytes, age);
+        }
+
+        /**
+         * Cut the buffer into a batch and hand it to the writer pool. The records stay buffered while all
+         * of this partition's writers, or all writers of the pool, are busy; the backlog limit pauses the
+         * partition if that goes on for long. Never blocks, so the poll thread keeps polling.
+         * Must be called while holding the buffer lock so batches register their offsets in order.
+         */
+        private void submitBuffered(BatchFlushPolicy.FlushReason reason) {
+            if (inFlightBatches.tryAcquire() && !submitAcquired(reason)) {
+                inFlightBatches.release();
+            }
+        }
+
+        /**
+         * Same as {@link #submitBuffered(BatchFlushPolicy.FlushReason)}, waiting until the deadline for a free writer
+         */
+        private boolean submitBuffered(BatchFlushPolicy.FlushReason reason, long deadlineNanos) throws InterruptedException {
+            if (!inFlightBatches.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            while (!submitAcquired(reason)) {
+                if (System.nanoTime() - deadlineNanos >= 0) {
+                    inFlightBatches.release();
+                    return false;
+                }
+                Thread.sleep(POOL_RETRY_MS);
+            }
+            return true;
+        }
+
+        /**
+         * Hand the buffer to the writer pool once this partition's in-flight permit is held.
+         * Returns false and keeps the records buffered if the pool has no free writer.
+         */
+        private boolean submitAcquired(BatchFlushPolicy.FlushReason reason) {
+            int recordCount = buffer.size();
+            long byteCount = bufferedBytes;
+            List<ConsumerRecord<String, T>> batch = new ArrayList<>(buffer.size());
+            long lastOffset = -1;
+            for (ConsumerRecord<String, T> record : buffer) {
+                if (record.value() != null) {
+                    batch.add(record);
+                }
+                lastOffset = Math.max(lastOffset, record.offset());
+            }
+
+            List<PartitionOffsetTracker.Segment> segments = offsetTracker.register(Map.of(partition, lastOffset));
+            try {
+                writerPool.execute(() -> {
+                    try {
+                        writeWithRetry(this, batch, reason);
+                        offsetTracker.markDurable(segments);
+                    } finally {
+                        inFlightBatches.release();
+                        backlog.remove(recordCount, byteCount);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Keep the records buffered, the next add or scheduler tick tries again
+                offsetTracker.cancel(segments);
+                if (!(e instanceof RejectedExecutionException)) {
+                    logger.error("{} could not hand a batch of {} to the writers", name, partition, e);
+                }
+                return false;
+            }
+
+            if (batch.size() < recordCount) {
+                logger.warn("{} skipping {} records with null value of {}", name, recordCount - batch.size(), partition);
+            }
+            buffer.clear();
+            bufferedBytes = 0;
+            oldestRecordNanos = System.nanoTime();
+            logger.info("=== {} SAVING BATCH OF {} RECORDS FROM {} (reason: {}) ===", name, batch.size(), partition, reason);
+            return true;
+        }
+
+        /**
+         * Wait until batches submitted so far are written - holding every in-flight permit means none is running
+         */
+        void awaitInFlightWrites(long deadlineNanos) {
+            try {
+                long remainingNanos = Math.max(0, deadlineNanos - System.nanoTime());
+                if (inFlightBatches.tryAcquire(maxInFlightBatches, remainingNanos, TimeUnit.NANOSECONDS)) {
+                    inFlightBatches.release(maxInFlightBatches);
+                } else {
+                    logger.warn("{} in-flight batches of {} not written within {}, their offsets stay uncommitted",
+                        name, partition, drainTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Stop retrying this partition's batches and drop what is still buffered,
+         * its records are redelivered to the new owner
+         */
+        void close() {
+            closed = true;
+            bufferLock.lock();
+            try {
+                if (!buffer.isEmpty()) {
+                    backlog.remove(buffer.size(), bufferedBytes);
+                    buffer.clear();
+                    bufferedBytes = 0;
+                }
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-injects dead-lettered records into their main topic in bulk, e.g. after the bug that made them fail was fixed.
+ * Records are read from {@code <topic>.DLT} with a dedicated consumer group, so every record is replayed once:
+ * the group's offsets are committed after the replayed records were acknowledged by the main topic.
+ * The original payload bytes and headers are kept; retry and dead-letter bookkeeping headers are dropped,
+ * so a record that fails again starts over with a fresh set of retries.
+ */
+@Service
+public class DeadLetterReplayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayService.class);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long REPLAY_TIMEOUT_MS = 60_000;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final ConsumerFactory<String, byte[]> deadLetterConsumerFactory;
+    private final KafkaTemplate<String, byte[]> deadLetterKafkaTemplate;
+
+    @Autowired
+    public DeadLetterReplayService(ConsumerFactory<String, byte[]> deadLetterConsumerFactory,
+                                   KafkaTemplate<String, byte[]> deadLetterKafkaTemplate) {
+        this.deadLetterConsumerFactory = deadLetterConsumerFactory;
+        this.deadLetterKafkaTemplate = deadLetterKafkaTemplate;
+    }
+
+    /**
+     * Replay up to {@code maxRecords} dead-lettered records of the given main topic.
+     * Only records that were in the dead-letter topic when the replay started are replayed.
+     *
+     * @return number of records re-published to the main topic
+     */
+    public synchronized int replay(String topic, int maxRecords) {
+        String deadLetterTopic = RetryTopicPublisher.deadLetterTopic(topic);
+        try (Consumer<String, byte[]> consumer = deadLetterConsumerFactory.createConsumer()) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            List<PartitionInfo> partitionInfos = consumer.partitionsFor(deadLetterTopic);
+            if (partitionInfos == null || partitionInfos.isEmpty()) {
+                logger.info("Dead-letter topic {} does not exist, nothing to replay", deadLetterTopic);
+                return 0;
+            }
+            for (PartitionInfo partitionInfo : partitionInfos) {
+                partitions.add(new TopicPartition(deadLetterTopic, partitionInfo.partition()));
+            }
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+            logger.info("=== Replaying up to {} records from {} to {} ===", maxRecords, deadLetterTopic, topic);
+            int replayed = 0;
+            long deadline = System.currentTimeMillis() + REPLAY_TIMEOUT_MS;
+            while (replayed < maxRecords && !caughtUp(consumer, partitions, endOffsets)
+                    && System.currentTimeMillis() < deadline) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                Map<TopicPartition, OffsetAndMetadata> replayedOffsets = new HashMap<>();
+                List<CompletableFuture<?>> sends = new ArrayList<>();
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (replayed >= maxRecords || record.offset() >= endOffsets.get(partition)) {
+                        continue;
+                    }
+                    sends.add(deadLetterKafkaTemplate.send(
+                        new ProducerRecord<>(topic, null, record.key(), record.value(), replayHeaders(record))));
+                    replayedOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                    replayed++;
+                }
+                for (CompletableFuture<?> send : sends) {
+                    send.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                if (!replayedOffsets.isEmpty()) {
+                    consumer.commitSync(replayedOffsets);
+                }
+            }
+            logger.info("=== Replayed {} records from {} to {} ===", replayed, deadLetterTopic, topic);
+            return replayed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying " + deadLetterTopic, e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Replay of " + deadLetterTopic + " failed", e);
+        }
+    }
+
+    private static boolean caughtUp(Consumer<?, ?> consumer, List<TopicPartition> partitions,
+                                    Map<TopicPartition, Long> endOffsets) {
+        for (TopicPartition partition : partitions) {
+            if (consumer.position(partition) < endOffsets.get(partition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Headers replayHeaders(ConsumerRecord<?, ?> record) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            String key = header.key();
+            if (!key.startsWith(KafkaHeaders.PREFIX + "dlt-")
+                    && !key.equals(RetryTopicPublisher.ATTEMPT_HEADER)
+                    && !key.equals(RetryTopicPublisher.NOT_BEFORE_HEADER)) {
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+}
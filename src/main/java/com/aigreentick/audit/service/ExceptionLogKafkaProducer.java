@@ -1,6 +1,11 @@
 package com.aigreentick.audit.service;
 
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
 import com.aigreentick.audit.model.ExceptionLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,7 +13,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 
 @Service
@@ -19,17 +27,75 @@ public class ExceptionLogKafkaProducer {
     @Value("${spring.kafka.topic.exception-logs}")
     private String exceptionLogsTopic;
 
+    @Value("${audit.spool.enabled:true}")
+    private boolean spoolEnabled;
+
+    // Required when the spool is enabled; must survive reboots, so not under java.io.tmpdir
+    @Value("${audit.spool.directory:}")
+    private String spoolDirectory;
+
+    @Value("${audit.spool.segment-size-bytes:16777216}")
+    private int spoolSegmentSize;
+
+    @Value("${audit.spool.max-size-bytes:1073741824}")
+    private long spoolMaxSize;
+
+    @Value("${audit.spool.replay-rate-per-second:2000}")
+    private int spoolReplayRate;
+
+    @Value("${audit.spool.retry-backoff-ms:5000}")
+    private long spoolRetryBackoffMs;
+
     @Autowired
     private KafkaTemplate<String, ExceptionLog> exceptionLogKafkaTemplate;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private KafkaSendSpool<ExceptionLog> sendSpool;
+
+    @PostConstruct
+    public void startSpool() {
+        if (!spoolEnabled) {
+            return;
+        }
+        if (spoolDirectory == null || spoolDirectory.isBlank()) {
+            throw new IllegalStateException("audit.spool.enabled=true requires audit.spool.directory, "
+                + "a directory that is kept across restarts");
+        }
+        sendSpool = new KafkaSendSpool<>(exceptionLogsTopic,
+            new MappedSegmentSpool(Path.of(spoolDirectory, exceptionLogsTopic), spoolSegmentSize, spoolMaxSize),
+            exceptionLogKafkaTemplate, ExceptionLogKafkaProducer::key,
+            new AuditEventSerializer<>(AuditWireFormat.BINARY), new AuditEventDeserializer<>(ExceptionLog.class),
+            spoolReplayRate, spoolRetryBackoffMs, meterRegistry);
+        sendSpool.start();
+    }
+
+    @PreDestroy
+    public void stopSpool() {
+        if (sendSpool != null) {
+            sendSpool.close();
+        }
+    }
+
+    /**
+     * Send asynchronously; a record Kafka does not accept is written to the local spool and replayed later
+     */
     public void sendExceptionLog(ExceptionLog exceptionLog) {
         try {
-            // Use exception type and class name as key for partitioning
-            String key = exceptionLog.getExceptionType() + "-" + 
-                        (exceptionLog.getClassName() != null ? exceptionLog.getClassName() : "unknown");
-            
+            // Assign the id up front so a redelivered record is detected as duplicate instead of stored twice
+            if (exceptionLog.getId() == null) {
+                exceptionLog.setId(new ObjectId().toHexString());
+            }
+
+            if (sendSpool != null && sendSpool.isBrokerDown()) {
+                // Don't wait for a full producer buffer while Kafka is known to be unreachable
+                spool(exceptionLog);
+                return;
+            }
+
             CompletableFuture<SendResult<String, ExceptionLog>> future = 
-                exceptionLogKafkaTemplate.send(exceptionLogsTopic, key, exceptionLog);
+                exceptionLogKafkaTemplate.send(exceptionLogsTopic, key(exceptionLog), exceptionLog);
             
             future.whenComplete((result, ex) -> {
                 if (ex == null) {
@@ -40,12 +106,25 @@ public class ExceptionLogKafkaProducer {
                 } else {
                     logger.error("Failed to send exception log to Kafka: {} in {}", 
                         exceptionLog.getExceptionType(), exceptionLog.getClassName(), ex);
+                    spool(exceptionLog);
                 }
             });
             
         } catch (Exception e) {
             logger.error("Error sending exception log to Kafka", e);
+            spool(exceptionLog);
+        }
+    }
+
+    private void spool(ExceptionLog exceptionLog) {
+        if (sendSpool != null) {
+            sendSpool.spool(exceptionLog);
         }
     }
-}
 
+    // Use exception type and class name as key for partitioning
+    private static String key(ExceptionLog exceptionLog) {
+        return exceptionLog.getExceptionType() + "-" +
+            (exceptionLog.getClassName() != null ? exceptionLog.getClassName() : "unknown");
+    }
+}
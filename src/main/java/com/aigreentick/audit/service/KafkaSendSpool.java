@@ -0,0 +1,212 @@
+package com.aigreentick.audit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Local fallback for a Kafka topic: records whose send failed are written to a {@link MappedSegmentSpool}, and
+ * a drainer thread replays them to the topic in spool order once the broker accepts them again, at most
+ * {@code replayRatePerSecond}. A replayed batch is only dropped from the spool after Kafka acknowledged all of
+ * it; a failed batch is sent again after the backoff, duplicates are detected by the consumers through the record
+ * id.
+ * <p>
+ * From the first failure until a replay succeeds the broker is considered down: new records then go straight to
+ * the spool instead of waiting for a full producer buffer.
+ */
+public class KafkaSendSpool<T> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaSendSpool.class);
+
+    private static final long TICK_MS = 100;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final String topic;
+    private final MappedSegmentSpool spool;
+    private final KafkaTemplate<String, T> kafkaTemplate;
+    private final Function<T, String> keyFunction;
+    private final Serializer<T> serializer;
+    private final Deserializer<T> deserializer;
+    private final int recordsPerTick;
+    private final long retryBackoffMs;
+
+    private final Counter spooledCounter;
+    private final Counter drainedCounter;
+    private final Counter droppedCounter;
+
+    private volatile boolean brokerDown;
+    private volatile boolean running;
+    private Thread drainerThread;
+
+    public KafkaSendSpool(String topic, MappedSegmentSpool spool, KafkaTemplate<String, T> kafkaTemplate,
+                          Function<T, String> keyFunction, Serializer<T> serializer, Deserializer<T> deserializer,
+                          int replayRatePerSecond, long retryBackoffMs, MeterRegistry meterRegistry) {
+        this.topic = topic;
+        this.spool = spool;
+        this.kafkaTemplate = kafkaTemplate;
+        this.keyFunction = keyFunction;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.recordsPerTick = (int) Math.max(1, replayRatePerSecond * TICK_MS / 1000);
+        this.retryBackoffMs = retryBackoffMs;
+
+        this.spooledCounter = Counter.builder("audit.spool.spooled")
+                .description("Records written to the local spool because Kafka did not accept them")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        this.drainedCounter = Counter.builder("audit.spool.drained")
+                .description("Spooled records replayed to Kafka")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("audit.spool.dropped")
+                .description("Records lost because the local spool was full")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        Gauge.builder("audit.spool.pending.bytes", spool, MappedSegmentSpool::getPendingBytes)
+                .description("Bytes waiting in the local spool")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        this.brokerDown = !spool.isEmpty();
+    }
+
+    public void start() {
+        running = true;
+        drainerThread = new Thread(this::drain, "kafka-spool-drainer-" + topic);
+        drainerThread.setDaemon(true);
+        drainerThread.start();
+        logger.info("=== Kafka spool for {} started with {} records pending ===", topic, spool.getPendingRecords());
+    }
+
+    /**
+     * True from a failed send until the spool has replayed to Kafka again
+     */
+    public boolean isBrokerDown() {
+        return brokerDown;
+    }
+
+    /**
+     * Write a record to the spool
+     *
+     * @return false if the spool was full and the record was lost
+     */
+    public boolean spool(T record) {
+        boolean spooled;
+        try {
+            byte[] bytes = serializer.serialize(topic, record);
+            // Under the spool's lock, so the drainer cannot clear the flag between it and the append
+            synchronized (spool) {
+                brokerDown = true;
+                spooled = spool.append(bytes);
+            }
+        } catch (Exception e) {
+            logger.error("Could not write record for {} to the spool", topic, e);
+            spooled = false;
+        }
+        if (!spooled) {
+            droppedCounter.increment();
+            return false;
+        }
+        spooledCounter.increment();
+        if (drainerThread != null) {
+            LockSupport.unpark(drainerThread);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (drainerThread != null) {
+            LockSupport.unpark(drainerThread);
+            try {
+                drainerThread.join(TimeUnit.SECONDS.toMillis(SEND_TIMEOUT_SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        spool.close();
+        logger.info("=== Kafka spool for {} stopped with {} records pending ===", topic, spool.getPendingRecords());
+    }
+
+    private void drain() {
+        while (running) {
+            long tickStarted = System.nanoTime();
+            if (clearBrokerDownIfEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(TICK_MS));
+                continue;
+            }
+            if (!replayBatch()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryBackoffMs));
+                continue;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(TICK_MS) - (System.nanoTime() - tickStarted);
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    /**
+     * Consider the broker up again once everything was replayed. Checked and cleared under the spool's lock,
+     * so a record spooled concurrently keeps the flag set and later records queue behind it instead of overtaking it.
+     *
+     * @return true if the spool is empty
+     */
+    boolean clearBrokerDownIfEmpty() {
+        synchronized (spool) {
+            if (!spool.isEmpty()) {
+                return false;
+            }
+            brokerDown = false;
+            return true;
+        }
+    }
+
+    /**
+     * Send the oldest spooled records and drop them from the spool once Kafka acknowledged them all
+     */
+    boolean replayBatch() {
+        List<byte[]> records = spool.peek(recordsPerTick);
+        List<CompletableFuture<?>> sends = new ArrayList<>(records.size());
+        try {
+            for (byte[] bytes : records) {
+                T record;
+                try {
+                    record = deserializer.deserialize(topic, bytes);
+                } catch (RuntimeException e) {
+                    // Would block the spool forever
+                    logger.error("Dropping unreadable spooled record for {}", topic, e);
+                    droppedCounter.increment();
+                    continue;
+                }
+                sends.add(kafkaTemplate.send(topic, keyFunction.apply(record), record));
+            }
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.warn("Replaying {} spooled records to {} failed, retrying in {} ms: {}",
+                records.size(), topic, retryBackoffMs, e.getMessage());
+            return false;
+        }
+        spool.commit();
+        spool.force();
+        drainedCounter.increment(sends.size());
+        logger.debug("Replayed {} spooled records to {}", sends.size(), topic);
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package com.aigreentick.audit.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only spool of length-prefixed records in memory-mapped segment files of a fixed size. Appends are plain
+ * memory writes into the current segment; a new segment is started when a record does not fit, and a segment is
+ * deleted once all of its records were committed.
+ * <p>
+ * Records are read with {@link #peek(int)} and only leave the spool on {@link #commit()}, so a reader that fails
+ * to deliver them reads the same records again. The committed read offset is kept in the header of the oldest
+ * segment, and records left in the spool at shutdown are read back on the next start.
+ */
+public class MappedSegmentSpool implements AutoCloseable {
+
+    private static final String SUFFIX = ".seg";
+
+    // Header: committed read offset of the segment
+    private static final int HEADER = Long.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // Guarded by this; oldest first, the last one is written to
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private int readOffset = HEADER;
+    private long pendingBytes;
+    // Written under the lock, read without it so callers can check for pending records on every event
+    private volatile long pendingRecords;
+
+    // End of the last peek, applied by commit()
+    private int peekedSegments = -1;
+    private int peekedOffset;
+    private long peekedBytes;
+    private int peekedRecords;
+
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writeOffset = HEADER;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    public MappedSegmentSpool(Path directory, int segmentSize, long maxBytes) {
+        if (segmentSize <= HEADER + Integer.BYTES) {
+            throw new IllegalArgumentException("Spool segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxBytes / segmentSize);
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open spool directory " + directory, e);
+        }
+    }
+
+    /**
+     * Append a record
+     *
+     * @return false if the spool is full or the record is larger than a segment
+     */
+    public synchronized boolean append(byte[] record) {
+        int length = Integer.BYTES + record.length;
+        if (record.length == 0 || HEADER + length > segmentSize) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writeOffset + length > segmentSize) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            if (segment != null) {
+                segment.buffer.force();
+            }
+            segment = newSegment();
+        }
+        // Payload before length: a record whose length is not written yet reads as the end of the segment
+        segment.buffer.put(segment.writeOffset + Integer.BYTES, record);
+        segment.buffer.putInt(segment.writeOffset, record.length);
+        segment.writeOffset += length;
+        pendingBytes += length;
+        pendingRecords++;
+        return true;
+    }
+
+    /**
+     * Up to {@code maxRecords} of the oldest records not committed yet. Calling it again without
+     * {@link #commit()} returns the same records.
+     */
+    public synchronized List<byte[]> peek(int maxRecords) {
+        List<byte[]> records = new ArrayList<>();
+        peekedSegments = 0;
+        peekedBytes = 0;
+        Iterator<Segment> iterator = segments.iterator();
+        if (!iterator.hasNext()) {
+            peekedOffset = readOffset;
+            peekedRecords = 0;
+            return records;
+        }
+        Segment segment = iterator.next();
+        int offset = readOffset;
+        while (records.size() < maxRecords) {
+            int length = offset < segment.writeOffset ? segment.buffer.getInt(offset) : 0;
+            if (length > 0) {
+                byte[] record = new byte[length];
+                segment.buffer.get(offset + Integer.BYTES, record);
+                records.add(record);
+                offset += Integer.BYTES + length;
+                peekedBytes += Integer.BYTES + length;
+                continue;
+            }
+            if (!iterator.hasNext()) {
+                break;
+            }
+            segment = iterator.next();
+            peekedSegments++;
+            offset = HEADER;
+        }
+        peekedOffset = offset;
+        peekedRecords = records.size();
+        return records;
+    }
+
+    /**
+     * Drop the records returned by the last {@link #peek(int)}
+     */
+    public synchronized void commit() {
+        if (peekedSegments < 0) {
+            return;
+        }
+        for (int i = 0; i < peekedSegments; i++) {
+            delete(segments.pollFirst());
+        }
+        readOffset = peekedOffset;
+        Segment head = segments.peekFirst();
+        if (head != null) {
+            head.buffer.putLong(0, readOffset);
+        }
+        pendingBytes -= peekedBytes;
+        pendingRecords -= peekedRecords;
+        peekedSegments = -1;
+    }
+
+    /**
+     * Lock-free, safe to call on every emitted event
+     */
+    public boolean isEmpty() {
+        return pendingRecords == 0;
+    }
+
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Write the mapped segments to disk
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            nextSequence = Math.max(nextSequence, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1);
+            Segment segment = new Segment(path, map(path, false));
+            int offset = segments.isEmpty() ? (int) segment.buffer.getLong(0) : HEADER;
+            if (offset < HEADER || offset > segmentSize) {
+                offset = HEADER;
+            }
+            int start = offset;
+            while (offset + Integer.BYTES <= segmentSize) {
+                int length = segment.buffer.getInt(offset);
+                if (length <= 0 || offset + Integer.BYTES + length > segmentSize) {
+                    // End of the written records, or a torn one from a crash
+                    break;
+                }
+                offset += Integer.BYTES + length;
+                pendingRecords++;
+            }
+            segment.writeOffset = offset;
+            pendingBytes += offset - start;
+            if (segments.isEmpty() && offset == start && !path.equals(paths.get(paths.size() - 1))) {
+                // Fully read already
+                delete(segment);
+                continue;
+            }
+            if (segments.isEmpty()) {
+                readOffset = start;
+            }
+            segments.addLast(segment);
+        }
+    }
+
+    private Segment newSegment() {
+        Path path = directory.resolve(String.format("%020d%s", nextSequence++, SUFFIX));
+        try {
+            Segment segment = new Segment(path, map(path, true));
+            segment.buffer.putLong(0, HEADER);
+            if (segments.isEmpty()) {
+                readOffset = HEADER;
+            }
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create spool segment " + path, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path path, boolean create) throws IOException {
+        StandardOpenOption open = create ? StandardOpenOption.CREATE_NEW : StandardOpenOption.READ;
+        try (FileChannel channel = FileChannel.open(path, open, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file; the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete spool segment " + segment.path, e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.BsonEvent;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Insert-only writer for the append-only audit and exception collections.
+ * Entities are converted once with the template's converter and written with a single unordered bulk insert,
+ * skipping Spring Data's per-entity save path (mapping events, entity callbacks, id checks, upserts).
+ * Batches of {@link BsonEvent}s (raw BSON consumer mode) are inserted as they are, without any conversion.
+ * <p>
+ * Duplicate key errors mean the record is already stored (ids are assigned by the producer, so a
+ * redelivered record collides with its first copy) and are reported, not failed. Any other failed
+ * document is retried on its own; documents that still fail are returned by {@link #insert(List)} as rejected
+ * (so the caller can move them to the retry topic) or, through {@link #accept(List)}, reported via {@link MongoBulkInsertException}.
+ */
+public class MongoBulkInsertWriter<T> implements Consumer<List<T>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoBulkInsertWriter.class);
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+    private static final long RETRY_BACKOFF_MS = 50;
+
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final int maxAttempts;
+
+    public MongoBulkInsertWriter(MongoTemplate mongoTemplate, String collectionName, int maxAttempts) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Outcome of one bulk insert including retries
+     */
+    public static class BulkInsertResult<T> {
+        private final int inserted;
+        private final int duplicates;
+        private final List<BulkWriteError> failures;
+        private final List<T> rejected;
+        private final List<Integer> rejectedPositions;
+
+        BulkInsertResult(int inserted, int duplicates, List<BulkWriteError> failures, List<T> rejected,
+                         List<Integer> rejectedPositions) {
+            this.inserted = inserted;
+            this.duplicates = duplicates;
+            this.failures = failures;
+            this.rejected = rejected;
+            this.rejectedPositions = rejectedPositions;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public List<BulkWriteError> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Entities that could not be stored, in the same order as {@link #getFailures()}
+         */
+        public List<T> getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Position of every {@link #getRejected()} entity in the inserted list, e.g. to find its Kafka record
+         */
+        public List<Integer> getRejectedPositions() {
+            return rejectedPositions;
+        }
+    }
+
+    /**
+     * Insert the batch and fail only if some documents could not be stored after all attempts
+     */
+    @Override
+    public void accept(List<T> entities) {
+        BulkInsertResult<T> result = insert(entities);
+        if (!result.getFailures().isEmpty()) {
+            throw new MongoBulkInsertException(collectionName, result);
+        }
+    }
+
+    public BulkInsertResult<T> insert(List<T> entities) {
+        if (!entities.isEmpty() && entities.get(0) instanceof BsonEvent) {
+            // Raw BSON mode - the documents were decoded straight from the records, insert their bytes as they are
+            List<RawBsonDocument> documents = new ArrayList<>(entities.size());
+            for (T entity : entities) {
+                documents.add(((BsonEvent) entity).getDocument());
+            }
+            return insert(entities, documents,
+                mongoTemplate.getCollection(collectionName).withDocumentClass(RawBsonDocument.class));
+        }
+        List<Document> documents = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(entity, document);
+            documents.add(document);
+        }
+        return insert(entities, documents, mongoTemplate.getCollection(collectionName));
+    }
+
+    private <D> BulkInsertResult<T> insert(List<T> entities, List<D> documents, MongoCollection<D> collection) {
+        List<D> pending = documents;
+        // Entities of the pending documents and their positions in the batch, index-aligned
+        List<T> pendingEntities = entities;
+        List<Integer> pendingPositions = null;
+
+        int inserted = 0;
+        int duplicates = 0;
+        List<BulkWriteError> failures = List.of();
+
+        for (int attempt = 1; attempt <= maxAttempts && !pending.isEmpty(); attempt++) {
+            List<InsertOneModel<D>> models = new ArrayList<>(pending.size());
+            for (D document : pending) {
+                models.add(new InsertOneModel<>(document));
+            }
+            try {
+                inserted += collection.bulkWrite(models, UNORDERED).getInsertedCount();
+                pending = List.of();
+                pendingEntities = List.of();
+                pendingPositions = List.of();
+                failures = List.of();
+            } catch (MongoBulkWriteException e) {
+                inserted += e.getWriteResult().getInsertedCount();
+                List<D> retry = new ArrayList<>();
+                List<T> retryEntities = new ArrayList<>();
+                List<Integer> retryPositions = new ArrayList<>();
+                List<BulkWriteError> retryErrors = new ArrayList<>();
+                for (BulkWriteError error : e.getWriteErrors()) {
+                    if (error.getCode() == DUPLICATE_KEY_ERROR) {
+                        duplicates++;
+                    } else {
+                        retry.add(pending.get(error.getIndex()));
+                        retryEntities.add(pendingEntities.get(error.getIndex()));
+                        retryPositions.add(pendingPositions != null ? pendingPositions.get(error.getIndex()) : error.getIndex());
+                        retryErrors.add(error);
+                    }
+                }
+                pending = retry;
+                pendingEntities = retryEntities;
+                pendingPositions = retryPositions;
+                failures = retryErrors;
+                if (!pending.isEmpty() && attempt < maxAttempts) {
+                    logger.warn("Bulk insert into {}: {} documents failed (attempt {}/{}), retrying only those",
+                        collectionName, pending.size(), attempt, maxAttempts);
+                    sleepBeforeRetry();
+                }
+            }
+        }
+
+        if (duplicates > 0) {
+            logger.info("Bulk insert into {}: {} documents were already stored (duplicate key), skipped",
+                collectionName, duplicates);
+        }
+        if (!failures.isEmpty()) {
+            logger.error("Bulk insert into {}: {} documents failed after {} attempts, first error: {}",
+                collectionName, failures.size(), maxAttempts, failures.get(0).getMessage());
+        }
+        return failures.isEmpty()
+            ? new BulkInsertResult<>(inserted, duplicates, failures, List.of(), List.of())
+            : new BulkInsertResult<>(inserted, duplicates, failures, pendingEntities, pendingPositions);
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thrown when documents of a batch could not be inserted even after retrying them individually
+     */
+    public static class MongoBulkInsertException extends RuntimeException {
+
+        private final transient BulkInsertResult<?> result;
+
+        public MongoBulkInsertException(String collectionName, BulkInsertResult<?> result) {
+            super(String.format("%d documents could not be inserted into %s", result.getFailures().size(), collectionName));
+            this.result = result;
+        }
+
+        public BulkInsertResult<?> getResult() {
+            return result;
+        }
+    }
+}
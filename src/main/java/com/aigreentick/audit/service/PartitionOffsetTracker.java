@@ -0,0 +1,160 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-partition offset watermark for batches that are written to MongoDB asynchronously.
+ * Each written batch registers one segment per partition it contains (in offset order);
+ * the committable offset only advances past a segment once it and every segment before it is durable.
+ */
+public class PartitionOffsetTracker {
+
+    private final Map<TopicPartition, PartitionWatermark> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Offsets of one partition covered by one batch
+     */
+    public static final class Segment {
+        private final TopicPartition partition;
+        private final long lastOffset;
+        private boolean durable;
+
+        private Segment(TopicPartition partition, long lastOffset) {
+            this.partition = partition;
+            this.lastOffset = lastOffset;
+        }
+
+        public TopicPartition getPartition() {
+            return partition;
+        }
+
+        public long getLastOffset() {
+            return lastOffset;
+        }
+    }
+
+    /**
+     * Register the highest offset per partition of a batch that is about to be written.
+     * Must be called in the same order the batches were cut from the buffer.
+     */
+    public List<Segment> register(Map<TopicPartition, Long> lastOffsets) {
+        List<Segment> segments = new ArrayList<>(lastOffsets.size());
+        lastOffsets.forEach((partition, lastOffset) -> {
+            Segment segment = new Segment(partition, lastOffset);
+            partitions.computeIfAbsent(partition, p -> new PartitionWatermark()).append(segment);
+            segments.add(segment);
+        });
+        return segments;
+    }
+
+    /**
+     * Withdraw the segments of a batch that could not be handed to a writer after all.
+     * Only valid for the most recently registered segments of their partitions.
+     */
+    public void cancel(Collection<Segment> segments) {
+        for (Segment segment : segments) {
+            PartitionWatermark watermark = partitions.get(segment.partition);
+            if (watermark != null) {
+                watermark.remove(segment);
+            }
+        }
+    }
+
+    /**
+     * Mark the segments of a batch as written to MongoDB
+     */
+    public void markDurable(Collection<Segment> segments) {
+        for (Segment segment : segments) {
+            PartitionWatermark watermark = partitions.get(segment.partition);
+            if (watermark != null) {
+                watermark.markDurable(segment);
+            }
+        }
+    }
+
+    /**
+     * Offsets of the given partitions that advanced since the last commit, ready for {@code Consumer.commitSync}
+     */
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets(Collection<TopicPartition> assigned) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : assigned) {
+            PartitionWatermark watermark = partitions.get(partition);
+            long nextOffset = watermark == null ? -1 : watermark.uncommittedOffset();
+            if (nextOffset >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(nextOffset));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Record offsets that were successfully committed to Kafka
+     */
+    public void markCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            PartitionWatermark watermark = partitions.get(partition);
+            if (watermark != null) {
+                watermark.markCommitted(offset.offset());
+            }
+        });
+    }
+
+    /**
+     * Number of registered segments that are not yet durable for a partition
+     */
+    public int pendingSegments(TopicPartition partition) {
+        PartitionWatermark watermark = partitions.get(partition);
+        return watermark == null ? 0 : watermark.pendingSegments();
+    }
+
+    /**
+     * Drop the state of partitions that are no longer assigned to this consumer
+     */
+    public void forget(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    private static final class PartitionWatermark {
+        private final Deque<Segment> pending = new ArrayDeque<>();
+        // Next offset to consume, i.e. the value Kafka expects as committed offset
+        private long committableOffset = -1;
+        private long committedOffset = -1;
+
+        synchronized void append(Segment segment) {
+            pending.addLast(segment);
+        }
+
+        synchronized void remove(Segment segment) {
+            pending.removeLastOccurrence(segment);
+        }
+
+        synchronized void markDurable(Segment segment) {
+            segment.durable = true;
+            while (!pending.isEmpty() && pending.peekFirst().durable) {
+                committableOffset = pending.pollFirst().lastOffset + 1;
+            }
+        }
+
+        synchronized long uncommittedOffset() {
+            return committableOffset > committedOffset ? committableOffset : -1;
+        }
+
+        synchronized void markCommitted(long offset) {
+            committedOffset = Math.max(committedOffset, offset);
+        }
+
+        synchronized int pendingSegments() {
+            return pending.size();
+        }
+    }
+}
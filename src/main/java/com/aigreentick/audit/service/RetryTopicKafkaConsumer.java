@@ -0,0 +1,99 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.ExceptionLog;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Retries records that MongoDB rejected, one at a time and off the main topics.
+ * A record whose backoff has not expired yet is nacked, which pauses the retry partition until it is due
+ * without blocking the main listeners. A record that fails again is re-published with the next attempt
+ * number or moved to the dead-letter topic by {@link RetryTopicPublisher}.
+ */
+@Service
+public class RetryTopicKafkaConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryTopicKafkaConsumer.class);
+
+    // Longer waits are split up so the consumer keeps polling well within max.poll.interval.ms
+    private static final long MAX_NACK_SLEEP_MS = 30_000;
+
+    @Value("${audit.collection.name:audit_logs}")
+    private String auditCollectionName;
+
+    @Value("${exception.collection.name:exception_logs}")
+    private String exceptionCollectionName;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RetryTopicPublisher retryTopicPublisher;
+
+    private MongoBulkInsertWriter<AuditLog> auditLogWriter;
+    private MongoBulkInsertWriter<ExceptionLog> exceptionLogWriter;
+
+    @PostConstruct
+    public void init() {
+        // Single attempt per delivery - the retry topic provides the backoff between attempts
+        auditLogWriter = new MongoBulkInsertWriter<>(mongoTemplate, auditCollectionName, 1);
+        exceptionLogWriter = new MongoBulkInsertWriter<>(mongoTemplate, exceptionCollectionName, 1);
+    }
+
+    @KafkaListener(topics = "${spring.kafka.topic.audit-logs}" + RetryTopicPublisher.RETRY_SUFFIX,
+                   containerFactory = "auditLogRetryListenerContainerFactory",
+                   groupId = "${spring.kafka.consumer.group-id}",
+                   id = "auditLogRetryKafkaListener")
+    public void retryAuditLog(ConsumerRecord<String, AuditLog> record, Acknowledgment acknowledgment) {
+        retry(record, acknowledgment, auditLogWriter);
+    }
+
+    @KafkaListener(topics = "${spring.kafka.topic.exception-logs}" + RetryTopicPublisher.RETRY_SUFFIX,
+                   containerFactory = "exceptionLogRetryListenerContainerFactory",
+                   groupId = "${spring.kafka.consumer.group-id}",
+                   id = "exceptionLogRetryKafkaListener")
+    public void retryExceptionLog(ConsumerRecord<String, ExceptionLog> record, Acknowledgment acknowledgment) {
+        retry(record, acknowledgment, exceptionLogWriter);
+    }
+
+    private <T> void retry(ConsumerRecord<String, T> record, Acknowledgment acknowledgment,
+                           MongoBulkInsertWriter<T> writer) {
+        long remainingBackoff = retryTopicPublisher.remainingBackoff(record);
+        if (remainingBackoff > 0) {
+            // Redelivered once the backoff expired, the partition is paused meanwhile
+            acknowledgment.nack(Duration.ofMillis(Math.min(remainingBackoff, MAX_NACK_SLEEP_MS)));
+            return;
+        }
+
+        if (record.value() == null) {
+            DeserializationException failure = retryTopicPublisher.getDeserializationFailure(record);
+            if (failure != null) {
+                retryTopicPublisher.deadLetter(record, failure);
+            }
+            acknowledgment.acknowledge();
+            return;
+        }
+
+        int attempt = retryTopicPublisher.getAttempt(record);
+        try {
+            writer.accept(List.of(record.value()));
+            logger.info("✅ Retry attempt {} saved record {}-{}@{}", attempt, record.topic(), record.partition(), record.offset());
+        } catch (Exception e) {
+            retryTopicPublisher.retryOrDeadLetter(record, e);
+        }
+        acknowledgment.acknowledge();
+    }
+}
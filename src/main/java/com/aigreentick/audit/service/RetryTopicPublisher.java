@@ -0,0 +1,306 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.config.BsonEvent;
+import com.mongodb.bulk.BulkWriteError;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves records that cannot be stored out of the main topics so they never block the partition behind them.
+ * <ul>
+ *     <li>Documents MongoDB rejects go to {@code <topic>-retry} and are retried there with exponential backoff
+ *     by {@link RetryTopicKafkaConsumer}</li>
+ *     <li>Records that exhausted their attempts, and records that cannot be deserialized at all, go to
+ *     {@code <topic>.DLT}, from where they can be replayed after a fix (see {@link DeadLetterReplayService})</li>
+ * </ul>
+ * Every send is waited for, so the offsets of the original records are only committed once the record
+ * is safely on the retry or dead-letter topic.
+ */
+@Service
+public class RetryTopicPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryTopicPublisher.class);
+    private static final LogAccessor logAccessor = new LogAccessor(RetryTopicPublisher.class);
+
+    public static final String RETRY_SUFFIX = "-retry";
+    public static final String DLT_SUFFIX = ".DLT";
+
+    // Number of the next attempt, and the earliest time (epoch millis) it may run
+    public static final String ATTEMPT_HEADER = "audit-retry-attempt";
+    public static final String NOT_BEFORE_HEADER = "audit-retry-not-before";
+
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    @Value("${audit.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${audit.retry.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${audit.retry.backoff-multiplier:4.0}")
+    private double backoffMultiplier;
+
+    @Value("${audit.retry.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${audit.kafka.wire-format:binary}")
+    private String wireFormat;
+
+    @Autowired
+    private KafkaTemplate<String, byte[]> deadLetterKafkaTemplate;
+
+    // Same wire format as the producers, so retried records look like the originals
+    private AuditEventSerializer<Object> serializer;
+
+    // Deserialization failures already on the dead-letter topic while the rest of their poll failed;
+    // the redelivered poll skips them instead of dead-lettering them again
+    private final Set<String> deadLettered = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        serializer = new AuditEventSerializer<>(AuditWireFormat.fromProperty(wireFormat));
+    }
+
+    public static String retryTopic(String topic) {
+        return baseTopic(topic) + RETRY_SUFFIX;
+    }
+
+    public static String deadLetterTopic(String topic) {
+        return baseTopic(topic) + DLT_SUFFIX;
+    }
+
+    /**
+     * Main topic a retry or dead-letter topic belongs to
+     */
+    public static String baseTopic(String topic) {
+        if (topic.endsWith(RETRY_SUFFIX)) {
+            return topic.substring(0, topic.length() - RETRY_SUFFIX.length());
+        }
+        if (topic.endsWith(DLT_SUFFIX)) {
+            return topic.substring(0, topic.length() - DLT_SUFFIX.length());
+        }
+        return topic;
+    }
+
+    /**
+     * Send the documents a bulk insert of {@code batch} rejected to the retry topic for their first retry, under
+     * the keys of their original records so they keep their partitioning
+     */
+    public <T> void publishRejected(String topic, List<? extends ConsumerRecord<String, ?>> batch,
+                                    MongoBulkInsertWriter.BulkInsertResult<T> result) {
+        List<T> rejected = result.getRejected();
+        if (rejected.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>(rejected.size());
+        for (int i = 0; i < rejected.size(); i++) {
+            BulkWriteError error = result.getFailures().get(i);
+            String key = batch.get(result.getRejectedPositions().get(i)).key();
+            Headers headers = new RecordHeaders();
+            addException(headers, "com.mongodb.bulk.BulkWriteError", "code " + error.getCode() + ": " + error.getMessage());
+            sends.add(sendRetry(topic, key, serialize(topic, rejected.get(i)), headers, 1));
+        }
+        awaitAll(sends);
+        logger.warn("=== {} documents rejected by MongoDB moved to {} ===", rejected.size(), retryTopic(topic));
+    }
+
+    /**
+     * A retry failed again - schedule the next attempt or give up and dead-letter the record
+     */
+    public void retryOrDeadLetter(ConsumerRecord<String, ?> record, Exception cause) {
+        int attempt = getAttempt(record) + 1;
+        Headers headers = copyHeaders(record);
+        addException(headers, cause.getClass().getName(), cause.getMessage());
+        byte[] value = serialize(record.topic(), record.value());
+        if (attempt > maxAttempts) {
+            logger.error("Record {}-{}@{} failed {} attempts, moving it to {}", record.topic(), record.partition(),
+                record.offset(), maxAttempts, deadLetterTopic(record.topic()));
+            addOriginal(headers, record);
+            await(send(deadLetterTopic(record.topic()), record.key(), value, headers));
+        } else {
+            logger.warn("Record {}-{}@{} failed, attempt {} of {} scheduled", record.topic(), record.partition(),
+                record.offset(), attempt, maxAttempts);
+            await(sendRetry(record.topic(), record.key(), value, headers, attempt));
+        }
+    }
+
+    /**
+     * Dead-letter every record of the poll whose value could not be deserialized, keeping the original bytes.
+     * The records stay in the list; their null values are skipped by the writers.
+     * If some could not be moved this throws, and the redelivered poll only moves those that are still missing.
+     */
+    public int deadLetterDeserializationFailures(List<? extends ConsumerRecord<String, ?>> records) {
+        List<String> pollFailures = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>();
+        for (ConsumerRecord<String, ?> record : records) {
+            if (record.value() == null) {
+                DeserializationException failure = getDeserializationFailure(record);
+                if (failure != null) {
+                    String key = record.topic() + "-" + record.partition() + "@" + record.offset();
+                    pollFailures.add(key);
+                    if (!deadLettered.contains(key)) {
+                        keys.add(key);
+                        sends.add(deadLetterDeserializationFailure(record, failure));
+                    }
+                }
+            }
+        }
+        RuntimeException firstFailure = null;
+        for (int i = 0; i < sends.size(); i++) {
+            try {
+                await(sends.get(i));
+                deadLettered.add(keys.get(i));
+            } catch (RuntimeException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        // The whole poll is through, it is not redelivered again
+        pollFailures.forEach(deadLettered::remove);
+        if (!sends.isEmpty()) {
+            logger.error("=== {} records could not be deserialized, moved to {} ===",
+                sends.size(), deadLetterTopic(records.get(0).topic()));
+        }
+        return sends.size();
+    }
+
+    /**
+     * Deserialization failure carried by the record, or null if its value was read fine
+     */
+    public DeserializationException getDeserializationFailure(ConsumerRecord<?, ?> record) {
+        return SerializationUtils.getExceptionFromHeader(record,
+            SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, logAccessor);
+    }
+
+    public void deadLetter(ConsumerRecord<String, ?> record, DeserializationException failure) {
+        await(deadLetterDeserializationFailure(record, failure));
+    }
+
+    /**
+     * Milliseconds until the record's retry is due, 0 if it can run now
+     */
+    public long remainingBackoff(ConsumerRecord<?, ?> record) {
+        Header notBefore = record.headers().lastHeader(NOT_BEFORE_HEADER);
+        if (notBefore == null) {
+            return 0;
+        }
+        return Math.max(0, ByteBuffer.wrap(notBefore.value()).getLong() - System.currentTimeMillis());
+    }
+
+    public int getAttempt(ConsumerRecord<?, ?> record) {
+        Header attempt = record.headers().lastHeader(ATTEMPT_HEADER);
+        return attempt == null ? 0 : ByteBuffer.wrap(attempt.value()).getInt();
+    }
+
+    private CompletableFuture<SendResult<String, byte[]>> deadLetterDeserializationFailure(
+            ConsumerRecord<String, ?> record, DeserializationException failure) {
+        Headers headers = copyHeaders(record);
+        addException(headers, failure.getClass().getName(),
+            failure.getCause() != null ? failure.getCause().getMessage() : failure.getMessage());
+        addOriginal(headers, record);
+        return send(deadLetterTopic(record.topic()), record.key(), failure.getData(), headers);
+    }
+
+    private CompletableFuture<SendResult<String, byte[]>> sendRetry(String topic, String key, byte[] value,
+                                                                   Headers headers, int attempt) {
+        long backoffMs = (long) Math.min(maxBackoffMs, initialBackoffMs * Math.pow(backoffMultiplier, attempt - 1));
+        headers.remove(ATTEMPT_HEADER);
+        headers.remove(NOT_BEFORE_HEADER);
+        headers.add(ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(attempt).array());
+        headers.add(NOT_BEFORE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(System.currentTimeMillis() + backoffMs).array());
+        return send(retryTopic(topic), key, value, headers);
+    }
+
+    private CompletableFuture<SendResult<String, byte[]>> send(String topic, String key, byte[] value, Headers headers) {
+        return deadLetterKafkaTemplate.send(new ProducerRecord<>(topic, null, key, value, headers));
+    }
+
+    private byte[] serialize(String topic, Object value) {
+        if (value instanceof BsonEvent bsonEvent) {
+            // Raw BSON mode keeps the record bytes, re-publish them unchanged
+            return bsonEvent.getWireBytes();
+        }
+        return serializer.serialize(topic, value);
+    }
+
+    /**
+     * Headers of the failed record without the deserializer's exception header (it holds the whole stack trace)
+     */
+    private static Headers copyHeaders(ConsumerRecord<?, ?> record) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith(SerializationUtils.DESERIALIZER_EXCEPTION_HEADER_PREFIX)) {
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+
+    private static void addException(Headers headers, String exceptionClass, String message) {
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_FQCN);
+        headers.remove(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, exceptionClass.getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE,
+            String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Where the record was read from, kept from the first time it was moved
+     */
+    private static void addOriginal(Headers headers, ConsumerRecord<?, ?> record) {
+        if (headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC) != null) {
+            return;
+        }
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+    }
+
+    private static void awaitAll(List<CompletableFuture<SendResult<String, byte[]>>> sends) {
+        for (CompletableFuture<SendResult<String, byte[]>> send : sends) {
+            await(send);
+        }
+    }
+
+    private static void await(CompletableFuture<SendResult<String, byte[]>> send) {
+        try {
+            send.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while moving a record to the retry/dead-letter topic", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not move a record to the retry/dead-letter topic", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.BsonEvent;
+import com.aigreentick.audit.model.AuditLog;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Routes the audit logs of a consumer batch into one batch per organization, so each bulk insert holds a single
+ * tenant's records. The order of records within a tenant is kept, tenants follow in order of first appearance.
+ */
+final class TenantBatches {
+
+    // Raw BSON mode field of AuditLog.organizationId
+    private static final String ORGANIZATION_FIELD = "organization_id";
+
+    private TenantBatches() {
+    }
+
+    /**
+     * Writer that hands every tenant's part of a batch to {@code writer} separately
+     */
+    static <T> Consumer<List<ConsumerRecord<String, T>>> routing(Consumer<List<ConsumerRecord<String, T>>> writer) {
+        return batch -> {
+            Collection<List<ConsumerRecord<String, T>>> tenantBatches = split(batch);
+            if (tenantBatches.size() == 1) {
+                writer.accept(batch);
+                return;
+            }
+            tenantBatches.forEach(writer);
+        };
+    }
+
+    static <T> Collection<List<ConsumerRecord<String, T>>> split(List<ConsumerRecord<String, T>> batch) {
+        Map<String, List<ConsumerRecord<String, T>>> byTenant = new LinkedHashMap<>();
+        for (ConsumerRecord<String, T> record : batch) {
+            byTenant.computeIfAbsent(organizationId(record.value()), tenant -> new ArrayList<>()).add(record);
+        }
+        return byTenant.values();
+    }
+
+    /**
+     * Organization of an {@link AuditLog} or of a raw {@link BsonEvent}, empty if it has none
+     */
+    static String organizationId(Object value) {
+        if (value instanceof AuditLog auditLog) {
+            return auditLog.getOrganizationId() != null ? auditLog.getOrganizationId() : "";
+        }
+        if (value instanceof BsonEvent event) {
+            BsonValue organizationId = event.getDocument().get(ORGANIZATION_FIELD);
+            return organizationId != null && organizationId.isString() ? organizationId.asString().getValue() : "";
+        }
+        return "";
+    }
+}
@@ -0,0 +1,193 @@
+package com.aigreentick.audit.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded backlog of consumed records that are not yet durable in MongoDB, measured in records and bytes.
+ * A record enters the backlog when it is buffered and leaves it once its batch is written (or dropped
+ * because its partition was revoked). When either limit is reached the consumer's partitions are paused,
+ * and they are resumed once both records and bytes drained below the low-water mark.
+ * Pausing instead of blocking the poll thread keeps heap bounded during MongoDB incidents without the consumer
+ * exceeding {@code max.poll.interval.ms} and triggering a rebalance and redelivery storm.
+ * <p>
+ * Backlog size and paused partitions are published to Micrometer as {@code audit.consumer.backlog.records},
+ * {@code audit.consumer.backlog.bytes} and {@code audit.consumer.paused.partitions} (tagged with the consumer name).
+ */
+public class WriteBacklog {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBacklog.class);
+
+    /**
+     * Pauses and resumes fetching from a partition, e.g. through the listener container
+     */
+    public interface PartitionPauser {
+
+        void pause(TopicPartition partition);
+
+        void resume(TopicPartition partition);
+    }
+
+    private final String name;
+    private final long maxRecords;
+    private final long maxBytes;
+    private final long resumeRecords;
+    private final long resumeBytes;
+    private final PartitionPauser pauser;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    // Guarded by this
+    private final Set<TopicPartition> pausedPartitions = new HashSet<>();
+
+    /**
+     * @param resumeRatio low-water mark as a fraction of the limits, e.g. 0.5 resumes once the backlog halved
+     */
+    public WriteBacklog(String name, long maxRecords, long maxBytes, double resumeRatio,
+                        PartitionPauser pauser, MeterRegistry meterRegistry) {
+        if (maxRecords <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Backlog limits must be positive: " + maxRecords + " records, " + maxBytes + " bytes");
+        }
+        if (resumeRatio < 0 || resumeRatio >= 1) {
+            throw new IllegalArgumentException("resumeRatio must be in [0, 1): " + resumeRatio);
+        }
+        this.name = name;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.resumeRecords = (long) (maxRecords * resumeRatio);
+        this.resumeBytes = (long) (maxBytes * resumeRatio);
+        this.pauser = pauser;
+
+        if (meterRegistry != null) {
+            Gauge.builder("audit.consumer.backlog.records", records, AtomicLong::get)
+                    .description("Consumed records not yet written to MongoDB")
+                    .tag("consumer", name)
+                    .register(meterRegistry);
+            Gauge.builder("audit.consumer.backlog.bytes", bytes, AtomicLong::get)
+                    .description("Serialized bytes of consumed records not yet written to MongoDB")
+                    .tag("consumer", name)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("audit.consumer.paused.partitions", this, WriteBacklog::getPausedPartitions)
+                    .description("Partitions paused because the write backlog is full")
+                    .tag("consumer", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Backlog without limits that never pauses, for callers that do their own flow control
+     */
+    public static WriteBacklog unbounded(String name) {
+        return new WriteBacklog(name, Long.MAX_VALUE, Long.MAX_VALUE, 0.5, null, null);
+    }
+
+    /**
+     * Records were buffered
+     */
+    public void add(int recordCount, long byteCount) {
+        records.addAndGet(recordCount);
+        bytes.addAndGet(byteCount);
+    }
+
+    /**
+     * Records were written or dropped; resumes paused partitions once the low-water mark is reached
+     */
+    public void remove(int recordCount, long byteCount) {
+        records.addAndGet(-recordCount);
+        bytes.addAndGet(-byteCount);
+        resumeIfDrained();
+    }
+
+    public boolean isFull() {
+        return records.get() >= maxRecords || bytes.get() >= maxBytes;
+    }
+
+    public boolean isDrained() {
+        return records.get() <= resumeRecords && bytes.get() <= resumeBytes;
+    }
+
+    /**
+     * Pause the given partitions if the backlog is full. Pausing takes effect on the next poll,
+     * so the backlog may overshoot the limits by at most one poll.
+     */
+    public void pauseIfFull(Collection<TopicPartition> partitions) {
+        if (pauser == null || !isFull()) {
+            return;
+        }
+        List<TopicPartition> newlyPaused = new ArrayList<>();
+        synchronized (this) {
+            for (TopicPartition partition : partitions) {
+                if (pausedPartitions.add(partition)) {
+                    newlyPaused.add(partition);
+                }
+            }
+        }
+        if (newlyPaused.isEmpty()) {
+            return;
+        }
+        newlyPaused.forEach(pauser::pause);
+        logger.warn("=== {} write backlog full ({} records, {} bytes), paused {} ===",
+            name, records.get(), bytes.get(), newlyPaused);
+    }
+
+    /**
+     * Resume every paused partition once the backlog drained below the low-water mark
+     */
+    public void resumeIfDrained() {
+        if (pauser == null || !isDrained()) {
+            return;
+        }
+        List<TopicPartition> resumed;
+        synchronized (this) {
+            if (pausedPartitions.isEmpty()) {
+                return;
+            }
+            resumed = new ArrayList<>(pausedPartitions);
+            pausedPartitions.clear();
+        }
+        resumed.forEach(pauser::resume);
+        logger.info("=== {} write backlog drained ({} records, {} bytes), resumed {} ===",
+            name, records.get(), bytes.get(), resumed);
+    }
+
+    /**
+     * Partitions left this consumer - resume them so the container does not keep them paused on reassignment
+     */
+    public void forget(Collection<TopicPartition> partitions) {
+        List<TopicPartition> resumed = new ArrayList<>();
+        synchronized (this) {
+            for (TopicPartition partition : partitions) {
+                if (pausedPartitions.remove(partition)) {
+                    resumed.add(partition);
+                }
+            }
+        }
+        if (pauser != null) {
+            resumed.forEach(pauser::resume);
+        }
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public synchronized int getPausedPartitions() {
+        return pausedPartitions.size();
+    }
+}
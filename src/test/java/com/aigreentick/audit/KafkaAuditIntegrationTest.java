@@ -8,8 +8,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -26,6 +30,9 @@ class KafkaAuditIntegrationTest {
     @Autowired
     private AuditLogRepository auditLogRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @BeforeEach
     void setUp() {
         auditLogRepository.deleteAll();
@@ -92,6 +99,23 @@ class KafkaAuditIntegrationTest {
         });
     }
 
+    @Test
+    void testLimitedRemoveOverManyMatchesDeletesOnlyTheLimit() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            User user = new User();
+            user.setUsername("guest" + i);
+            user.setRole("GUEST");
+            users.add(user);
+        }
+        List<String> ids = mongoTemplate.insertAll(users).stream().map(User::getId).toList();
+
+        mongoTemplate.remove(new Query(Criteria.where("role").is("GUEST")).limit(10), User.class);
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)).limit(10), User.class);
+
+        assertThat(userRepository.count()).isEqualTo(1480);
+    }
+
     @Test
     void testBatchProcessing() {
         for (int i = 0; i < 5; i++) {
@@ -0,0 +1,153 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AdaptiveBatchSizer;
+import com.aigreentick.audit.service.BatchFlushPolicy;
+import com.aigreentick.audit.service.BatchWriterPool;
+import com.aigreentick.audit.service.BufferedBatchProcessor;
+import com.aigreentick.audit.service.WriteBacklog;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer throughput (records/s) at listener concurrency 1, 3, 6 and 12 on a 12 partition topic.
+ * Each listener thread owns 12/concurrency partitions, spends a little CPU per record (deserialization)
+ * and feeds polls of 500 records into {@link BufferedBatchProcessor}, which writes on a {@link BatchWriterPool}.
+ * The MongoDB write is simulated with a fixed round trip plus a per-document cost, so the numbers show how
+ * the engine overlaps polling and writing.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ConsumerConcurrencyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ConsumerConcurrencyBenchmark {
+
+    private static final String TOPIC = "audit-logs";
+    private static final int PARTITIONS = 12;
+    private static final int RECORDS_PER_PARTITION = 5_000;
+    private static final int TOTAL_RECORDS = PARTITIONS * RECORDS_PER_PARTITION;
+    private static final int POLL_SIZE = 500;
+
+    // Simulated MongoDB bulk insert: one round trip plus a small cost per document
+    private static final long WRITE_ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long WRITE_NANOS_PER_DOCUMENT = 2_000;
+    // Simulated deserialization work per record on the listener thread
+    private static final long DESERIALIZE_CPU_TOKENS = 200;
+
+    @Param({"1", "3", "6", "12"})
+    public int concurrency;
+
+    private final AuditLog payload = new AuditLog("bench-user", "User", "UPDATE");
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong nextOffset = new AtomicLong();
+
+    private BatchWriterPool writerPool;
+    private BufferedBatchProcessor<AuditLog> processor;
+    private ExecutorService listenerThreads;
+    private volatile CountDownLatch allWritten;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        writerPool = new BatchWriterPool("bench", 16, true);
+        BatchFlushPolicy flushPolicy = new BatchFlushPolicy(500, Duration.ofMillis(50), 8 * 1024 * 1024);
+        processor = new BufferedBatchProcessor<>("bench", flushPolicy,
+            AdaptiveBatchSizer.fixed("bench", 500, null), WriteBacklog.unbounded("bench"), this::simulateMongoWrite, writerPool, 4, Duration.ofSeconds(10));
+        processor.start();
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitions.add(new TopicPartition(TOPIC, p));
+        }
+        processor.onPartitionsAssigned(partitions);
+        listenerThreads = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listenerThreads.shutdownNow();
+        processor.stop();
+        writerPool.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_RECORDS)
+    public void consumeAllPartitions(Blackhole blackhole) throws Exception {
+        written.set(0);
+        allWritten = new CountDownLatch(1);
+        long baseOffset = nextOffset.getAndAdd(RECORDS_PER_PARTITION);
+
+        List<Future<?>> listeners = new ArrayList<>();
+        for (int thread = 0; thread < concurrency; thread++) {
+            int owner = thread;
+            listeners.add(listenerThreads.submit(() -> runListener(owner, baseOffset)));
+        }
+        for (Future<?> listener : listeners) {
+            listener.get();
+        }
+        // Records of the last polls are written once linger expires
+        if (!allWritten.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Only " + written.get() + " of " + TOTAL_RECORDS + " records written");
+        }
+        blackhole.consume(written.get());
+    }
+
+    /**
+     * One listener thread polling its share of the partitions round-robin, like a Kafka consumer would
+     */
+    private void runListener(int owner, long baseOffset) {
+        List<Integer> ownedPartitions = new ArrayList<>();
+        for (int p = owner; p < PARTITIONS; p += concurrency) {
+            ownedPartitions.add(p);
+        }
+        for (int polled = 0; polled < RECORDS_PER_PARTITION; polled += POLL_SIZE) {
+            List<ConsumerRecord<String, AuditLog>> poll = new ArrayList<>(POLL_SIZE * ownedPartitions.size());
+            for (int partition : ownedPartitions) {
+                for (int i = 0; i < POLL_SIZE; i++) {
+                    Blackhole.consumeCPU(DESERIALIZE_CPU_TOKENS);
+                    poll.add(new ConsumerRecord<>(TOPIC, partition, baseOffset + polled + i, "User-" + i, payload));
+                }
+            }
+            processor.add(poll);
+        }
+    }
+
+    private void simulateMongoWrite(List<ConsumerRecord<String, AuditLog>> batch) {
+        LockSupport.parkNanos(WRITE_ROUND_TRIP_NANOS + WRITE_NANOS_PER_DOCUMENT * batch.size());
+        if (written.addAndGet(batch.size()) >= TOTAL_RECORDS) {
+            allWritten.countDown();
+        }
+    }
+}
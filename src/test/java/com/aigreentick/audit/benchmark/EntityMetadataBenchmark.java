@@ -0,0 +1,65 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.config.EntityAuditMetadata;
+import com.aigreentick.audit.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-save metadata cost (ns/op) of the audit listener: entity id, entity name and new-entity check.
+ * <ul>
+ *     <li>{@code reflection} - the previous lookups: getDeclaredField/setAccessible and getMethod per call</li>
+ *     <li>{@code cached} - {@link EntityAuditMetadata}, resolved once per class</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main EntityMetadataBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class EntityMetadataBenchmark {
+
+    private final User user = new User("6650f1a2c3d4e5f6a7b8c9d0", "john.doe", "john@example.com", "John Doe", "USER");
+
+    @Benchmark
+    public void reflection(Blackhole blackhole) throws Exception {
+        java.lang.reflect.Field idField = user.getClass().getDeclaredField("id");
+        idField.setAccessible(true);
+        Object id = idField.get(user);
+        blackhole.consume(id != null ? id.toString() : null);
+
+        String className = user.getClass().getSimpleName();
+        if (className.endsWith("Entity")) {
+            className = className.substring(0, className.length() - 6);
+        }
+        blackhole.consume(className);
+
+        java.lang.reflect.Method getIdMethod = user.getClass().getMethod("getId");
+        Object currentId = getIdMethod.invoke(user);
+        blackhole.consume(currentId == null || currentId.toString().isEmpty());
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        EntityAuditMetadata metadata = EntityAuditMetadata.of(user.getClass());
+        blackhole.consume(metadata.getId(user));
+        blackhole.consume(metadata.getEntityName());
+        blackhole.consume(metadata.isNew(user));
+    }
+}
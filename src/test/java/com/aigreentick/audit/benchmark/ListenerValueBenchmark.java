@@ -0,0 +1,118 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener CPU per audited update (ns/op) for the old and new value representations:
+ * <ul>
+ *     <li>{@code jsonStrings} - the previous listener: entity and old document written to JSON strings with a
+ *     private ObjectMapper on the request thread</li>
+ *     <li>{@code bsonDocuments} - the stored document from the save event and the fetched old document are
+ *     referenced as they are</li>
+ * </ul>
+ * The {@code *WithWire} variants add the binary wire serialization the publisher thread does afterwards.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ListenerValueBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ListenerValueBenchmark {
+
+    /**
+     * Audit log as published before old and new values became documents
+     */
+    public static class JsonStringAuditLog {
+        public String id;
+        public String username;
+        public String entityName;
+        public String entityId;
+        public String action;
+        public String oldValue;
+        public String newValue;
+        public String description;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AuditEventSerializer<Object> wireSerializer = new AuditEventSerializer<>(AuditWireFormat.BINARY);
+
+    private User entity;
+    private Document savedDocument;
+    private Document oldDocument;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String id = "6650f1c2a1b2c3d4e5f60700";
+        entity = new User(id, "alice", "alice@example.com", "Alice Example", "ADMIN");
+        savedDocument = new Document("_id", new ObjectId(id)).append("username", "alice")
+            .append("email", "alice@example.com").append("fullName", "Alice Example").append("role", "ADMIN")
+            .append("_class", User.class.getName());
+        oldDocument = new Document("_id", new ObjectId(id)).append("username", "alice")
+            .append("email", "alice@old.example.com").append("fullName", "Alice Example").append("role", "USER")
+            .append("_class", User.class.getName());
+    }
+
+    @Benchmark
+    public Object jsonStrings() throws Exception {
+        JsonStringAuditLog auditLog = new JsonStringAuditLog();
+        auditLog.id = entity.getId();
+        auditLog.username = "alice";
+        auditLog.entityName = "User";
+        auditLog.entityId = entity.getId();
+        auditLog.action = "UPDATE";
+        auditLog.newValue = objectMapper.writeValueAsString(entity);
+        auditLog.oldValue = objectMapper.writeValueAsString(oldDocument);
+        auditLog.description = "Database UPDATE operation on User";
+        return auditLog;
+    }
+
+    @Benchmark
+    public Object bsonDocuments() {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setId(entity.getId());
+        auditLog.setUsername("alice");
+        auditLog.setEntityName("User");
+        auditLog.setEntityId(entity.getId());
+        auditLog.setAction("UPDATE");
+        auditLog.setNewValue(savedDocument);
+        auditLog.setOldValue(oldDocument);
+        auditLog.setDescription("Database UPDATE operation on User");
+        return auditLog;
+    }
+
+    @Benchmark
+    public byte[] jsonStringsWithWire() throws Exception {
+        return wireSerializer.serialize("audit-logs", jsonStrings());
+    }
+
+    @Benchmark
+    public byte[] bsonDocumentsWithWire() {
+        return wireSerializer.serialize("audit-logs", bsonDocuments());
+    }
+}
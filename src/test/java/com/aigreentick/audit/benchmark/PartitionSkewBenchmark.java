@@ -0,0 +1,133 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.config.AuditLogPartitioner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost (ns/record) and partition skew of the {@link AuditLogPartitioner} strategies on a 24 partition topic.
+ * The records follow a skewed tenant distribution: 200 organizations with Zipf-distributed traffic (the largest
+ * sends about a fifth of all records), and within each organization a hot entity type taking half of its writes.
+ * <p>
+ * The skew is printed at the end of each trial: the busiest partition's load relative to the mean (1.0 is even),
+ * the share of idle partitions and how many partitions the largest tenant occupies.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main PartitionSkewBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class PartitionSkewBenchmark {
+
+    private static final int PARTITIONS = 24;
+    private static final int ORGANIZATIONS = 200;
+    private static final int RECORDS = 100_000;
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    private static final String[] ENTITY_TYPES = {"Session", "Order", "User", "Invoice"};
+    private static final double[] ENTITY_TYPE_SHARES = {0.5, 0.3, 0.15, 0.05};
+
+    @Param({"entity", "organization", "spread"})
+    public String strategy;
+
+    @Param({"4"})
+    public int spreadPartitions;
+
+    private AuditLogPartitioner.Strategy partitioningStrategy;
+    private String[] organizationIds;
+    private byte[][] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        partitioningStrategy = AuditLogPartitioner.Strategy.fromProperty(strategy);
+        Random random = new Random(42);
+        double[] organizationWeights = new double[ORGANIZATIONS];
+        for (int i = 0; i < ORGANIZATIONS; i++) {
+            organizationWeights[i] = 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+        }
+        double[] organizationCdf = cumulative(organizationWeights);
+        double[] entityTypeCdf = cumulative(ENTITY_TYPE_SHARES);
+
+        organizationIds = new String[RECORDS];
+        keys = new byte[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            int organization = pick(organizationCdf, random);
+            String entityType = ENTITY_TYPES[pick(entityTypeCdf, random)];
+            organizationIds[i] = "org-" + organization;
+            // Ids are per tenant; a few hot entities per type dominate the updates
+            int entityId = random.nextDouble() < 0.3 ? random.nextInt(5) : random.nextInt(2_000);
+            keys[i] = (entityType + "-" + organization + "-" + entityId).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void partition(Blackhole blackhole) {
+        for (int i = 0; i < RECORDS; i++) {
+            blackhole.consume(AuditLogPartitioner.partition(partitioningStrategy, spreadPartitions,
+                organizationIds[i], keys[i], PARTITIONS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printSkew() {
+        long[] load = new long[PARTITIONS];
+        Set<Integer> largestTenantPartitions = new HashSet<>();
+        for (int i = 0; i < RECORDS; i++) {
+            int partition = AuditLogPartitioner.partition(partitioningStrategy, spreadPartitions,
+                organizationIds[i], keys[i], PARTITIONS);
+            load[partition]++;
+            if ("org-0".equals(organizationIds[i])) {
+                largestTenantPartitions.add(partition);
+            }
+        }
+        double mean = (double) RECORDS / PARTITIONS;
+        long max = Arrays.stream(load).max().orElse(0);
+        long idle = Arrays.stream(load).filter(count -> count == 0).count();
+        System.out.printf("%n%s: busiest partition %.2fx mean, %d of %d partitions idle, largest tenant on %d partition(s)%n",
+            strategy, max / mean, idle, PARTITIONS, largestTenantPartitions.size());
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = Arrays.stream(weights).sum();
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] / total;
+            cdf[i] = sum;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+}
@@ -0,0 +1,128 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.config.BsonEvent;
+import com.aigreentick.audit.config.BsonEventDeserializer;
+import com.aigreentick.audit.model.AuditLog;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer-side cost per record (records/s) from Kafka bytes to the BSON the driver sends to MongoDB:
+ * <ul>
+ *     <li>{@code entity} - record bytes to {@link AuditLog}, MappingMongoConverter to {@link Document},
+ *     driver encodes the Document</li>
+ *     <li>{@code raw-bson} - record bytes streamed into a {@link RawBsonDocument} by {@link BsonEventDeserializer},
+ *     driver copies its bytes</li>
+ * </ul>
+ * Both paths read the same batch of binary-format records; no MongoDB is involved.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main RawBsonConsumerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class RawBsonConsumerBenchmark {
+
+    private static final String TOPIC = "audit-logs";
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"entity", "raw-bson"})
+    public String path;
+
+    private final List<byte[]> records = new ArrayList<>(BATCH_SIZE);
+    private MappingMongoConverter converter;
+    private AuditEventDeserializer<AuditLog> entityDeserializer;
+    private BsonEventDeserializer bsonDeserializer;
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private final RawBsonDocumentCodec rawCodec = new RawBsonDocumentCodec();
+    private final EncoderContext encoderContext = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        entityDeserializer = new AuditEventDeserializer<>(AuditLog.class);
+        bsonDeserializer = new BsonEventDeserializer(AuditLog.class, converter);
+
+        AuditEventSerializer<AuditLog> serializer = new AuditEventSerializer<>(AuditWireFormat.BINARY);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            records.add(serializer.serialize(TOPIC, auditLog(i)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int consumeBatch() {
+        BasicOutputBuffer out = new BasicOutputBuffer(BATCH_SIZE * 1024);
+        if (path.equals("entity")) {
+            for (byte[] record : records) {
+                AuditLog auditLog = entityDeserializer.deserialize(TOPIC, record);
+                Document document = new Document();
+                converter.write(auditLog, document);
+                documentCodec.encode(new BsonBinaryWriter(out), document, encoderContext);
+            }
+        } else {
+            for (byte[] record : records) {
+                BsonEvent event = bsonDeserializer.deserialize(TOPIC, record);
+                rawCodec.encode(new BsonBinaryWriter(out), event.getDocument(), encoderContext);
+            }
+        }
+        return out.getPosition();
+    }
+
+    private static AuditLog auditLog(int i) {
+        AuditLog auditLog = new AuditLog("user" + i + "@example.com", "User", "UPDATE");
+        auditLog.setId(new org.bson.types.ObjectId().toHexString());
+        auditLog.setUserId("u-" + i);
+        auditLog.setOrganizationId("org-" + (i % 10));
+        auditLog.setUrlDomain("app.example.com");
+        auditLog.setEntityId(new org.bson.types.ObjectId().toHexString());
+        auditLog.setOldValue(Document.parse("{\"username\":\"user" + i + "\",\"email\":\"old" + i + "@example.com\",\"role\":\"USER\"}"));
+        auditLog.setNewValue(Document.parse("{\"username\":\"user" + i + "\",\"email\":\"new" + i + "@example.com\",\"role\":\"ADMIN\"}"));
+        auditLog.setDescription("User updated");
+        auditLog.setIpAddress("203.0.113." + (i % 250));
+        return auditLog;
+    }
+}
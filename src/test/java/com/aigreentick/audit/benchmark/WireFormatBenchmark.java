@@ -0,0 +1,151 @@
+package com.aigreentick.audit.benchmark;
+
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.ExceptionLog;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize/deserialize cost (ns/op) and record size of audit and exception events per wire format:
+ * <ul>
+ *     <li>{@code spring-json} - Spring's JsonSerializer/JsonDeserializer with type headers, the previous format</li>
+ *     <li>{@code json} - {@link AuditWireFormat#JSON} through {@link AuditEventSerializer}</li>
+ *     <li>{@code binary} - {@link AuditWireFormat#BINARY} (versioned CBOR)</li>
+ * </ul>
+ * Bytes per record are printed once per trial.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main WireFormatBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class WireFormatBenchmark {
+
+    private static final String TOPIC = "audit-logs";
+
+    @Param({"spring-json", "json", "binary"})
+    public String format;
+
+    @Param({"audit-log", "exception-log"})
+    public String payload;
+
+    private Object event;
+    private Serializer<Object> serializer;
+    private Deserializer<Object> deserializer;
+    private RecordHeaders headers;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp() {
+        event = payload.equals("audit-log") ? auditLog() : exceptionLog();
+        Class<?> type = event.getClass();
+        switch (format) {
+            case "spring-json" -> {
+                serializer = new JsonSerializer<>();
+                JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+                jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "*",
+                    JsonDeserializer.VALUE_DEFAULT_TYPE, type.getName()), false);
+                deserializer = jsonDeserializer;
+            }
+            case "json" -> {
+                serializer = new AuditEventSerializer<>(AuditWireFormat.JSON);
+                deserializer = new AuditEventDeserializer(type);
+            }
+            case "binary" -> {
+                serializer = new AuditEventSerializer<>(AuditWireFormat.BINARY);
+                deserializer = new AuditEventDeserializer(type);
+            }
+            default -> throw new IllegalArgumentException(format);
+        }
+        headers = new RecordHeaders();
+        serialized = serializer.serialize(TOPIC, headers, event);
+        System.out.printf("%n%s %s: %d bytes/record%n", format, payload, serialized.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        // Fresh headers like a producer record, the Spring serializer adds its type headers to them
+        return serializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserializer.deserialize(TOPIC, headers, serialized);
+    }
+
+    private static AuditLog auditLog() {
+        AuditLog auditLog = new AuditLog("alice@example.com", "User", "UPDATE");
+        auditLog.setId("6650f1c2a1b2c3d4e5f60718");
+        auditLog.setUserId("u-1001");
+        auditLog.setOrganizationId("org-42");
+        auditLog.setUrlDomain("app.example.com");
+        auditLog.setEntityId("6650f1c2a1b2c3d4e5f60700");
+        auditLog.setOldValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700")).append("username", "alice")
+            .append("email", "alice@old.example.com").append("fullName", "Alice Example").append("role", "USER")
+            .append("_class", "com.aigreentick.audit.model.User"));
+        auditLog.setNewValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700")).append("username", "alice")
+            .append("email", "alice@example.com").append("fullName", "Alice Example").append("role", "ADMIN")
+            .append("_class", "com.aigreentick.audit.model.User"));
+        auditLog.setDescription("User updated via PUT /api/demo/users/6650f1c2a1b2c3d4e5f60700");
+        auditLog.setIpAddress("203.0.113.17");
+        return auditLog;
+    }
+
+    private static ExceptionLog exceptionLog() {
+        ExceptionLog exceptionLog = new ExceptionLog();
+        exceptionLog.setId("6650f1c2a1b2c3d4e5f60719");
+        exceptionLog.setExceptionType("IllegalArgumentException");
+        exceptionLog.setExceptionMessage("Invalid organization id: org-?");
+        exceptionLog.setStackTrace(stackTrace());
+        exceptionLog.setClassName("com.aigreentick.audit.controller.AuditLogController");
+        exceptionLog.setMethodName("getAuditLogsByOrganizationId");
+        exceptionLog.setRequestUrl("http://app.example.com/api/audit-logs/organization-id/org-%3F");
+        exceptionLog.setRequestMethod("GET");
+        exceptionLog.setUsername("alice@example.com");
+        exceptionLog.setUserId("u-1001");
+        exceptionLog.setOrganizationId("org-42");
+        exceptionLog.setIpAddress("203.0.113.17");
+        exceptionLog.setHttpStatus(400);
+        return exceptionLog;
+    }
+
+    private static String stackTrace() {
+        StringBuilder trace = new StringBuilder("java.lang.IllegalArgumentException: Invalid organization id: org-?\n");
+        for (int i = 0; i < 25; i++) {
+            trace.append("\tat com.aigreentick.audit.service.Frame").append(i).append(".call(Frame").append(i).append(".java:")
+                .append(40 + i).append(")\n");
+        }
+        return trace.toString();
+    }
+}
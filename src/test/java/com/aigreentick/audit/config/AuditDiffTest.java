@@ -0,0 +1,75 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditDiffTest {
+
+    private static final ObjectId ID = new ObjectId("6650f1c2a1b2c3d4e5f60700");
+
+    @Test
+    void reportsChangedAddedAndRemovedPathsOnly() {
+        Document oldDocument = new Document("_id", ID).append("status", "PENDING").append("note", "first")
+            .append("address", new Document("city", "Pune").append("zip", "411001"))
+            .append("tags", List.of("a", "b"));
+        Document newDocument = new Document("_id", ID).append("status", "DONE")
+            .append("address", new Document("city", "Mumbai").append("zip", "411001"))
+            .append("tags", List.of("a", "b", "c")).append("closedBy", "alice");
+
+        List<Document> changes = AuditDiff.diff(oldDocument, newDocument);
+
+        assertThat(changes).containsExactly(
+            new Document("path", "status").append("old", "PENDING").append("new", "DONE"),
+            new Document("path", "note").append("old", "first"),
+            new Document("path", "address.city").append("old", "Pune").append("new", "Mumbai"),
+            new Document("path", "tags").append("old", List.of("a", "b")).append("new", List.of("a", "b", "c")),
+            new Document("path", "closedBy").append("new", "alice"));
+    }
+
+    @Test
+    void identicalDocumentsHaveNoChanges() {
+        Document document = new Document("_id", ID).append("nested", new Document("x", 1));
+        assertThat(AuditDiff.diff(document, new Document(document))).isEmpty();
+    }
+
+    @Test
+    void keepsSnapshotsOnlyWhenAskedOrWhenThereIsNothingToDiff() {
+        Document oldDocument = new Document("_id", ID).append("status", "PENDING");
+        Document newDocument = new Document("_id", ID).append("status", "DONE");
+
+        AuditLog compact = new AuditLog();
+        AuditDiff.applyUpdate(compact, oldDocument, newDocument, false);
+        assertThat(compact.getChanges()).hasSize(1);
+        assertThat(compact.getOldValue()).isNull();
+        assertThat(compact.getNewValue()).isNull();
+
+        AuditLog snapshot = new AuditLog();
+        AuditDiff.applyUpdate(snapshot, oldDocument, newDocument, true);
+        assertThat(snapshot.getChanges()).hasSize(1);
+        assertThat(snapshot.getNewValue()).isSameAs(newDocument);
+
+        AuditLog withoutPreImage = new AuditLog();
+        AuditDiff.applyUpdate(withoutPreImage, null, newDocument, false);
+        assertThat(withoutPreImage.getChanges()).isNull();
+        assertThat(withoutPreImage.getNewValue()).isSameAs(newDocument);
+    }
+
+    @Test
+    void mergedChangesKeepTheFirstOldAndTheLastNewValue() {
+        List<Document> first = List.of(new Document("path", "status").append("old", "NEW").append("new", "PAID"),
+            new Document("path", "note").append("old", "a").append("new", "b"));
+        List<Document> second = List.of(new Document("path", "status").append("old", "PAID").append("new", "SHIPPED"),
+            new Document("path", "note").append("old", "b").append("new", "a"),
+            new Document("path", "closedBy").append("new", "alice"));
+
+        assertThat(AuditDiff.merge(first, second)).containsExactly(
+            new Document("path", "status").append("old", "NEW").append("new", "SHIPPED"),
+            new Document("path", "closedBy").append("new", "alice"));
+    }
+}
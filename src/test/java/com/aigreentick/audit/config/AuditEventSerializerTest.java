@@ -0,0 +1,103 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.ExceptionLog;
+import org.apache.kafka.common.errors.SerializationException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditEventSerializerTest {
+
+    private final AuditEventDeserializer<AuditLog> deserializer = new AuditEventDeserializer<>(AuditLog.class);
+
+    @Test
+    void binaryRoundTrip() {
+        AuditLog auditLog = sampleAuditLog();
+        byte[] data = new AuditEventSerializer<AuditLog>(AuditWireFormat.BINARY).serialize("audit-logs", auditLog);
+
+        assertThat(data[0]).isEqualTo(AuditWireFormat.MAGIC_BYTE);
+        assertThat(data[1]).isEqualTo(AuditWireFormat.BINARY_VERSION);
+        assertSameAuditLog(deserializer.deserialize("audit-logs", data), auditLog);
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        AuditLog auditLog = sampleAuditLog();
+        byte[] json = new JsonSerializer<AuditLog>().serialize("audit-logs", auditLog);
+        byte[] binary = new AuditEventSerializer<AuditLog>(AuditWireFormat.BINARY).serialize("audit-logs", auditLog);
+        assertThat(binary.length).isLessThan(json.length);
+    }
+
+    @Test
+    void readsJsonWrittenBySpringJsonSerializer() {
+        AuditLog auditLog = sampleAuditLog();
+        byte[] json = new JsonSerializer<AuditLog>().serialize("audit-logs", auditLog);
+        assertSameAuditLog(deserializer.deserialize("audit-logs", json), auditLog);
+    }
+
+    @Test
+    void jsonFormatStaysReadableByItself() {
+        ExceptionLog exceptionLog = new ExceptionLog();
+        exceptionLog.setExceptionType("IllegalStateException");
+        exceptionLog.setHttpStatus(500);
+        byte[] json = new AuditEventSerializer<ExceptionLog>(AuditWireFormat.JSON).serialize("exception-logs", exceptionLog);
+
+        assertThat(json[0]).isEqualTo((byte) '{');
+        ExceptionLog read = new AuditEventDeserializer<>(ExceptionLog.class).deserialize("exception-logs", json);
+        assertThat(read.getExceptionType()).isEqualTo("IllegalStateException");
+        assertThat(read.getHttpStatus()).isEqualTo(500);
+    }
+
+    @Test
+    void rejectsUnknownBinaryVersion() {
+        byte[] data = new AuditEventSerializer<AuditLog>(AuditWireFormat.BINARY).serialize("audit-logs", sampleAuditLog());
+        data[1] = 99;
+        assertThatThrownBy(() -> deserializer.deserialize("audit-logs", data))
+            .isInstanceOf(SerializationException.class)
+            .hasMessageContaining("version 99");
+    }
+
+    @Test
+    void readsValuesPublishedAsJsonStrings() {
+        byte[] legacy = "{\"username\":\"alice\",\"oldValue\":\"{\\\"email\\\":\\\"old@example.com\\\"}\",\"newValue\":\"plain text\"}"
+            .getBytes();
+
+        AuditLog auditLog = deserializer.deserialize("audit-logs", legacy);
+
+        assertThat(auditLog.getOldValue()).containsEntry("email", "old@example.com");
+        assertThat(auditLog.getNewValue()).containsEntry("value", "plain text");
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThatThrownBy(() -> deserializer.deserialize("audit-logs", "not json".getBytes()))
+            .isInstanceOf(SerializationException.class);
+    }
+
+    private static AuditLog sampleAuditLog() {
+        AuditLog auditLog = new AuditLog("alice", "User", "UPDATE");
+        auditLog.setId("6650f1c2a1b2c3d4e5f60718");
+        auditLog.setEntityId("42");
+        auditLog.setOrganizationId("org-1");
+        auditLog.setOldValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700"))
+            .append("email", "old@example.com").append("role", "USER"));
+        auditLog.setNewValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700"))
+            .append("email", "new@example.com").append("role", "ADMIN")
+            .append("updatedAt", new Date(1717000000000L)));
+        auditLog.setChanges(List.of(new Document("path", "role").append("old", "USER").append("new", "ADMIN"),
+            new Document("path", "updatedAt").append("new", new Date(1717000000000L))));
+        return auditLog;
+    }
+
+    private static void assertSameAuditLog(AuditLog actual, AuditLog expected) {
+        assertThat(actual).usingRecursiveComparison().isEqualTo(expected);
+    }
+}
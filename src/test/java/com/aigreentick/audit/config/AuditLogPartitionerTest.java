@@ -0,0 +1,96 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.config.AuditLogPartitioner.Strategy;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditLogPartitionerTest {
+
+    private static final int PARTITIONS = 24;
+
+    @Test
+    void entityStrategyMatchesKafkasKeyHash() {
+        byte[] key = key("User-1");
+
+        assertThat(AuditLogPartitioner.partition(Strategy.ENTITY, 4, "org-1", key, PARTITIONS))
+            .isEqualTo(Utils.toPositive(Utils.murmur2(key)) % PARTITIONS);
+    }
+
+    @Test
+    void organizationStrategyKeepsATenantOnOnePartition() {
+        assertThat(partitions(Strategy.ORGANIZATION, "org-1")).hasSize(1);
+    }
+
+    @Test
+    void spreadStrategyKeepsATenantOnItsConsecutivePartitions() {
+        Set<Integer> partitions = partitions(Strategy.SPREAD, "org-1");
+
+        assertThat(partitions).hasSize(4);
+        int first = AuditLogPartitioner.partition(Strategy.ORGANIZATION, 4, "org-1", key("User-0"), PARTITIONS);
+        assertThat(partitions).containsExactlyInAnyOrder(
+            first, (first + 1) % PARTITIONS, (first + 2) % PARTITIONS, (first + 3) % PARTITIONS);
+    }
+
+    @Test
+    void anEntityAlwaysGoesToTheSamePartition() {
+        for (Strategy strategy : Strategy.values()) {
+            int partition = AuditLogPartitioner.partition(strategy, 4, "org-1", key("Order-42"), PARTITIONS);
+            assertThat(IntStream.range(0, 10)
+                .map(i -> AuditLogPartitioner.partition(strategy, 4, "org-1", key("Order-42"), PARTITIONS)))
+                .containsOnly(partition);
+        }
+    }
+
+    @Test
+    void anEntityIsOrderedPerOrganizationAndOnlyTheEntityStrategyIgnoresTheOrganization() {
+        byte[] key = key("Order-42");
+        int byEntity = AuditLogPartitioner.partition(Strategy.ENTITY, 4, null, key, PARTITIONS);
+        assertThat(AuditLogPartitioner.partition(Strategy.ENTITY, 4, "org-1", key, PARTITIONS)).isEqualTo(byEntity);
+        assertThat(AuditLogPartitioner.partition(Strategy.ENTITY, 4, "", key, PARTITIONS)).isEqualTo(byEntity);
+
+        // The same entity with and without organization: no common partition, so no order between the two
+        for (Strategy strategy : Set.of(Strategy.ORGANIZATION, Strategy.SPREAD)) {
+            assertThat(IntStream.range(0, 100).filter(i -> {
+                byte[] entity = key("Order-" + i);
+                return AuditLogPartitioner.partition(strategy, 4, "org-1", entity, PARTITIONS)
+                    != AuditLogPartitioner.partition(strategy, 4, null, entity, PARTITIONS);
+            })).as(strategy.name()).isNotEmpty();
+        }
+    }
+
+    @Test
+    void recordsWithoutOrganizationGoByEntity() {
+        assertThat(AuditLogPartitioner.partition(Strategy.SPREAD, 4, null, key("User-7"), PARTITIONS))
+            .isEqualTo(AuditLogPartitioner.partition(Strategy.ENTITY, 4, "org-1", key("User-7"), PARTITIONS));
+    }
+
+    @Test
+    void configuredFromProducerProperties() {
+        AuditLogPartitioner partitioner = new AuditLogPartitioner();
+        partitioner.configure(Map.of(AuditLogPartitioner.STRATEGY_CONFIG, "organization",
+            AuditLogPartitioner.SPREAD_PARTITIONS_CONFIG, 2));
+
+        assertThat(partitioner).hasFieldOrPropertyWithValue("strategy", Strategy.ORGANIZATION)
+            .hasFieldOrPropertyWithValue("spreadPartitions", 2);
+    }
+
+    private static Set<Integer> partitions(Strategy strategy, String organizationId) {
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            partitions.add(AuditLogPartitioner.partition(strategy, 4, organizationId, key("User-" + i), PARTITIONS));
+        }
+        return partitions;
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
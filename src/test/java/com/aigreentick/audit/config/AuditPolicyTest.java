@@ -0,0 +1,84 @@
+package com.aigreentick.audit.config;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditPolicyTest {
+
+    @Test
+    void excludesWinOverIncludesAndTheAuditCollectionIsNeverAudited() {
+        AuditPolicy policy = new AuditPolicy("audit_logs", List.of("users", "orders", "audit_logs"), List.of("orders"),
+            List.of("CREATE", "UPDATE", "DELETE"), List.of(), List.of(), List.of());
+
+        assertThat(policy.forCollection("users").isAudited()).isTrue();
+        assertThat(policy.forCollection("orders").isAudited()).isFalse();
+        assertThat(policy.forCollection("audit_logs").isAudited()).isFalse();
+        assertThat(policy.forCollection("invoices").isAudited()).isFalse();
+    }
+
+    @Test
+    void collectionActionsReplaceTheGlobalOnes() {
+        AuditPolicy policy = new AuditPolicy("audit_logs", List.of(), List.of(),
+            List.of("CREATE", "UPDATE", "sessions:delete"), List.of(), List.of("users"), List.of("sessions:250"));
+
+        assertThat(policy.forCollection("users").audits("UPDATE")).isTrue();
+        assertThat(policy.forCollection("users").audits("DELETE")).isFalse();
+        assertThat(policy.forCollection("users").isFullSnapshot()).isTrue();
+        assertThat(policy.forCollection("sessions").audits("DELETE")).isTrue();
+        assertThat(policy.forCollection("sessions").audits("CREATE")).isFalse();
+        assertThat(policy.forCollection("sessions").getCoalesceWindowMs()).isEqualTo(250);
+        assertThat(policy.forCollection("users").getCoalesceWindowMs()).isZero();
+        assertThat(policy.forCollection(null).audits("CREATE")).isTrue();
+        assertThatThrownBy(() -> new AuditPolicy("audit_logs", List.of(), List.of(), List.of("UPSERT"), List.of(), List.of(), List.of()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void ignoredFieldsAreRemovedFromACopy() {
+        AuditPolicy policy = new AuditPolicy("audit_logs", List.of(), List.of(), List.of("CREATE", "UPDATE", "DELETE"),
+            List.of("updatedAt", "users:profile.lastLoginAt", "users:tags.name"), List.of(), List.of());
+        Document user = new Document("_id", 1).append("updatedAt", 2L).append("tags", List.of(new Document("name", "x")))
+            .append("profile", new Document("lastLoginAt", 3L).append("city", "Pune"));
+
+        Document filtered = policy.forCollection("users").filter(user);
+
+        assertThat(filtered).isEqualTo(new Document("_id", 1).append("tags", List.of(new Document("name", "x")))
+            .append("profile", new Document("city", "Pune")));
+        assertThat(user).containsKey("updatedAt");
+        assertThat(((Document) user.get("profile"))).containsKey("lastLoginAt");
+        assertThat(policy.forCollection("orders").filter(user)).doesNotContainKey("updatedAt").containsKey("profile");
+
+        Document untouched = new Document("_id", 1);
+        assertThat(policy.forCollection("users").filter(untouched)).isSameAs(untouched);
+    }
+
+    @Test
+    void ignoredFieldsAreRemovedFromFiltersAndUpdateSpecs() {
+        AuditPolicy.CollectionPolicy users = new AuditPolicy("audit_logs", List.of(), List.of(),
+            List.of("CREATE", "UPDATE", "DELETE"), List.of("users:password", "users:profile.ssn"), List.of(), List.of())
+            .forCollection("users");
+
+        Document update = new Document("$set", new Document("password", "x").append("profile.ssn", "1")
+                .append("profile", new Document("ssn", "2").append("city", "Pune")).append("name", "Bob"))
+            .append("$unset", new Document("profile.ssn.last4", ""));
+        assertThat(users.filterOperation(update)).isEqualTo(new Document("$set",
+                new Document("profile", new Document("city", "Pune")).append("name", "Bob"))
+            .append("$unset", new Document()));
+
+        Document filter = new Document("$or", List.of(new Document("password", "x"), new Document("name", "Bob")))
+            .append("profile.ssn", new Document("$exists", true));
+        assertThat(users.filterOperation(filter))
+            .isEqualTo(new Document("$or", List.of(new Document(), new Document("name", "Bob"))));
+        assertThat(((Document) filter.get("$or", List.class).get(0))).containsKey("password");
+
+        assertThat(users.filterPipeline(List.of(new Document("$set", new Document("password", "$newPassword")))))
+            .isEqualTo(List.of(new Document("$set", new Document())));
+        Document untouched = new Document("name", "Bob");
+        assertThat(users.filterOperation(untouched)).isSameAs(untouched);
+    }
+}
@@ -0,0 +1,117 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.ExceptionLog;
+import org.apache.kafka.common.errors.SerializationException;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.BsonDocumentWriter;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BsonEventDeserializerTest {
+
+    private final MappingMongoConverter converter = converter();
+
+    @Test
+    void binaryRecordDecodesToTheDocumentTheConverterWrites() {
+        AuditLog auditLog = sampleAuditLog();
+        byte[] data = new AuditEventSerializer<AuditLog>(AuditWireFormat.BINARY).serialize("audit-logs", auditLog);
+
+        BsonEvent event = new BsonEventDeserializer(AuditLog.class, converter).deserialize("audit-logs", data);
+
+        assertThat(event.getWireBytes()).isSameAs(data);
+        assertThat(toBson(event.getDocument())).isEqualTo(converted(auditLog));
+    }
+
+    @Test
+    void jsonRecordDecodesToTheDocumentTheConverterWrites() {
+        AuditLog auditLog = sampleAuditLog();
+        byte[] data = new JsonSerializer<AuditLog>().serialize("audit-logs", auditLog);
+
+        BsonEvent event = new BsonEventDeserializer(AuditLog.class, converter).deserialize("audit-logs", data);
+
+        assertThat(toBson(event.getDocument())).isEqualTo(converted(auditLog));
+    }
+
+    @Test
+    void integerFieldsAndNonObjectIdIds() {
+        ExceptionLog exceptionLog = new ExceptionLog();
+        exceptionLog.setId("not-an-object-id");
+        exceptionLog.setExceptionType("IllegalStateException");
+        exceptionLog.setHttpStatus(503);
+        byte[] data = new AuditEventSerializer<ExceptionLog>(AuditWireFormat.BINARY).serialize("exception-logs", exceptionLog);
+
+        BsonEvent event = new BsonEventDeserializer(ExceptionLog.class, converter).deserialize("exception-logs", data);
+
+        assertThat(toBson(event.getDocument())).isEqualTo(converted(exceptionLog));
+    }
+
+    @Test
+    void unknownFieldsAreDropped() {
+        byte[] data = "{\"username\":\"alice\",\"addedLater\":{\"nested\":[1,2]},\"action\":\"LOGIN\"}".getBytes();
+
+        BsonEvent event = new BsonEventDeserializer(AuditLog.class, converter).deserialize("audit-logs", data);
+
+        assertThat(event.getDocument().keySet()).containsExactly("username", "action", "_class");
+    }
+
+    @Test
+    void rejectsMalformedRecords() {
+        BsonEventDeserializer deserializer = new BsonEventDeserializer(AuditLog.class, converter);
+        assertThatThrownBy(() -> deserializer.deserialize("audit-logs", "[1,2]".getBytes()))
+            .isInstanceOf(SerializationException.class);
+    }
+
+    private static AuditLog sampleAuditLog() {
+        AuditLog auditLog = new AuditLog("alice", "User", "UPDATE");
+        auditLog.setId("6650f1c2a1b2c3d4e5f60718");
+        auditLog.setEntityId("42");
+        auditLog.setOldValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700")).append("email", "old@example.com"));
+        auditLog.setNewValue(new Document("_id", new ObjectId("6650f1c2a1b2c3d4e5f60700")).append("email", "new@example.com")
+            .append("updatedAt", new java.util.Date(1717000000000L)));
+        auditLog.setChanges(List.of(new Document("path", "email").append("old", "old@example.com").append("new", "new@example.com"),
+            new Document("path", "updatedAt").append("new", new java.util.Date(1717000000000L))));
+        return auditLog;
+    }
+
+    private BsonDocument converted(Object entity) {
+        Document document = new Document();
+        converter.write(entity, document);
+        return toBson(document);
+    }
+
+    private static BsonDocument toBson(Document document) {
+        BsonDocument bson = new BsonDocument();
+        new DocumentCodec().encode(new BsonDocumentWriter(bson), document, EncoderContext.builder().build());
+        return bson;
+    }
+
+    private static BsonDocument toBson(BsonDocument document) {
+        // Decode the raw bytes so the comparison is by value
+        return document.clone();
+    }
+
+    static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
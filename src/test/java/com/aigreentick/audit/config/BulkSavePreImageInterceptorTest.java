@@ -0,0 +1,116 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.User;
+import com.aigreentick.audit.service.AuditLogCoalescer;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInvocation;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkSavePreImageInterceptorTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final AuditLogEmitter emitter = mock(AuditLogEmitter.class);
+    private final AuditPolicy auditPolicy = new AuditPolicy("audit_logs", List.of(), List.of(),
+        List.of("CREATE", "UPDATE", "DELETE", "events:CREATE"), List.of(), List.of(), List.of());
+    private final MongoAuditEventListener listener = new MongoAuditEventListener(
+        new AuditLogCoalescer(emitter, new SimpleMeterRegistry()), mongoTemplate, auditPolicy);
+    private final BulkSavePreImageInterceptor interceptor = new BulkSavePreImageInterceptor(() -> mongoTemplate, () -> auditPolicy);
+
+    BulkSavePreImageInterceptorTest() {
+        ReflectionTestUtils.setField(listener, "defaultUsername", "system");
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+    }
+
+    @Test
+    void saveAllFetchesOldDocumentsOnceAndKeepsThemPerEntity() throws Throwable {
+        User alice = new User("1", "alice", "alice@new", "Alice", "USER");
+        User bob = new User("2", "bob", "bob@new", "Bob", "USER");
+        User carol = new User(null, "carol", "carol@new", "Carol", "USER");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(List.of(
+            new Document("_id", "1").append("email", "alice@old"),
+            new Document("_id", "2").append("email", "bob@old")));
+
+        MethodInvocation saveAll = mock(MethodInvocation.class);
+        when(saveAll.getMethod()).thenReturn(CrudRepository.class.getMethod("saveAll", Iterable.class));
+        when(saveAll.getArguments()).thenReturn(new Object[]{List.of(alice, bob, carol)});
+        when(saveAll.proceed()).thenAnswer(invocation -> {
+            // Convert every entity first, like insertAll, so a single per-thread slot would be overwritten
+            for (User user : List.of(alice, bob, carol)) {
+                listener.onBeforeConvert(new BeforeConvertEvent<>(user, "users"));
+            }
+            carol.setId("3");
+            for (User user : List.of(alice, bob, carol)) {
+                listener.onAfterSave(new AfterSaveEvent<>(user, saved(user), "users"));
+            }
+            return null;
+        });
+
+        interceptor.invoke(saveAll);
+
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Document.class), eq("users"));
+        verify(mongoTemplate, never()).findById(any(), eq(Document.class), anyString());
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, times(3)).emit(sent.capture());
+        assertThat(sent.getAllValues()).extracting(AuditLog::getAction).containsExactly("UPDATE", "UPDATE", "CREATE");
+        assertThat(sent.getAllValues().get(0).getChanges()).containsExactly(emailChange("alice@old", "alice@new"));
+        assertThat(sent.getAllValues().get(1).getChanges()).containsExactly(emailChange("bob@old", "bob@new"));
+        assertThat(sent.getAllValues().get(2).getOldValue()).isNull();
+        assertThat(BulkSavePreImageInterceptor.isPrefetched("users")).isFalse();
+    }
+
+    @Test
+    void singleSaveStillLooksUpItsOldDocument() {
+        User alice = new User("1", "alice", "alice@new", "Alice", "USER");
+        when(mongoTemplate.findById("1", Document.class, "users")).thenReturn(new Document("_id", "1").append("email", "alice@old"));
+
+        listener.onBeforeConvert(new BeforeConvertEvent<>(alice, "users"));
+        listener.onAfterSave(new AfterSaveEvent<>(alice, saved(alice), "users"));
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter).emit(sent.capture());
+        assertThat(sent.getValue().getChanges()).containsExactly(emailChange("alice@old", "alice@new"));
+    }
+
+    @Test
+    void updatesThePolicyDoesNotAuditAreNeitherLookedUpNorSent() {
+        User alice = new User("1", "alice", "alice@new", "Alice", "USER");
+
+        listener.onBeforeConvert(new BeforeConvertEvent<>(alice, "events"));
+        listener.onAfterSave(new AfterSaveEvent<>(alice, saved(alice), "events"));
+        listener.onBeforeConvert(new BeforeConvertEvent<>(alice, "audit_logs"));
+        listener.onAfterSave(new AfterSaveEvent<>(alice, saved(alice), "audit_logs"));
+
+        verify(mongoTemplate, never()).findById(any(), eq(Document.class), anyString());
+        verify(emitter, never()).emit(any());
+    }
+
+    private static Document saved(User user) {
+        return new Document("_id", user.getId()).append("email", user.getEmail());
+    }
+
+    private static Document emailChange(String oldEmail, String newEmail) {
+        return new Document(AuditDiff.PATH, "email").append(AuditDiff.OLD, oldEmail).append(AuditDiff.NEW, newEmail);
+    }
+}
@@ -0,0 +1,99 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangeStreamAuditCaptureTest {
+
+    private final ChangeStreamAuditCapture capture = new ChangeStreamAuditCapture(null, null,
+        new AuditPolicy("audit_logs", List.of(), List.of("sessions"), List.of("CREATE", "UPDATE", "DELETE", "invoices:DELETE"),
+            List.of("users:lastLoginAt"), List.of(), List.of()));
+
+    ChangeStreamAuditCaptureTest() {
+        ReflectionTestUtils.setField(capture, "defaultUsername", "system");
+    }
+
+    @Test
+    void replaceIsAnUpdateAttributedToTheStampedUser() {
+        Document before = new Document("_id", "42").append("name", "old");
+        Document after = new Document("_id", "42").append("name", "new")
+            .append(MongoAuditContext.STAMP_FIELD, new Document("username", "alice").append("ipAddress", "10.0.0.1"));
+
+        AuditLog auditLog = capture.toAuditLog(event("replace", "users", after, before, null));
+
+        assertThat(auditLog.getAction()).isEqualTo("UPDATE");
+        assertThat(auditLog.getEntityName()).isEqualTo("User");
+        assertThat(auditLog.getEntityId()).isEqualTo("42");
+        assertThat(auditLog.getUsername()).isEqualTo("alice");
+        assertThat(auditLog.getIpAddress()).isEqualTo("10.0.0.1");
+        assertThat(auditLog.getChanges()).containsExactly(
+            new Document("path", "name").append("old", "old").append("new", "new"));
+        assertThat(auditLog.getNewValue()).isNull();
+    }
+
+    @Test
+    void updateThatDidNotWriteTheStampIsNotAttributedToThePreviousWriter() {
+        Document after = new Document("_id", "42").append("name", "new")
+            .append(MongoAuditContext.STAMP_FIELD, new Document("username", "alice"));
+        UpdateDescription changedName = new UpdateDescription(List.of(), new BsonDocument("name", new BsonString("new")));
+        UpdateDescription changedStamp = new UpdateDescription(List.of(),
+            new BsonDocument(MongoAuditContext.STAMP_FIELD + ".username", new BsonString("alice")));
+
+        assertThat(capture.toAuditLog(event("update", "users", after, null, changedName)).getUsername()).isEqualTo("system");
+        assertThat(capture.toAuditLog(event("update", "users", after, null, changedStamp)).getUsername()).isEqualTo("alice");
+    }
+
+    @Test
+    void deleteKeepsThePreImageAsOldValue() {
+        Document before = new Document("_id", "42").append("name", "gone");
+
+        AuditLog auditLog = capture.toAuditLog(event("delete", "invoices", null, before, null));
+
+        assertThat(auditLog.getAction()).isEqualTo("DELETE");
+        assertThat(auditLog.getEntityName()).isEqualTo("Invoice");
+        assertThat(auditLog.getOldValue()).containsEntry("name", "gone");
+        assertThat(auditLog.getNewValue()).isNull();
+        assertThat(auditLog.getUsername()).isEqualTo("system");
+    }
+
+    @Test
+    void auditLogIdIsStablePerEvent() {
+        BsonDocument token = new BsonDocument("_data", new BsonString("8265A1"));
+        assertThat(ChangeStreamAuditCapture.auditLogId(token))
+            .isEqualTo(ChangeStreamAuditCapture.auditLogId(token.clone()))
+            .isNotEqualTo(ChangeStreamAuditCapture.auditLogId(new BsonDocument("_data", new BsonString("8265A2"))))
+            .hasSize(24);
+    }
+
+    @Test
+    void skipsWhatThePolicyDoesNotAudit() {
+        Document session = new Document("_id", "1");
+        Document before = new Document("_id", "42").append("name", "same").append("lastLoginAt", 1L);
+        Document after = new Document("_id", "42").append("name", "same").append("lastLoginAt", 2L)
+            .append(MongoAuditContext.STAMP_FIELD, new Document("username", "alice"));
+
+        assertThat(capture.toAuditLog(event("insert", "sessions", session, null, null))).isNull();
+        assertThat(capture.toAuditLog(event("insert", "invoices", session, null, null))).isNull();
+        assertThat(capture.toAuditLog(event("replace", "users", after, before, null))).isNull();
+    }
+
+    private static ChangeStreamDocument<Document> event(String operationType, String collection, Document fullDocument,
+                                                        Document fullDocumentBeforeChange,
+                                                        UpdateDescription updateDescription) {
+        BsonDocument namespace = new BsonDocument("db", new BsonString("app")).append("coll", new BsonString(collection));
+        return new ChangeStreamDocument<>(operationType, new BsonDocument("_data", new BsonString(operationType)),
+            namespace, null, fullDocument, fullDocumentBeforeChange, new BsonDocument("_id", new BsonString("42")),
+            null, updateDescription, null, null, new BsonDateTime(0), null, null);
+    }
+}
@@ -0,0 +1,56 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.annotation.Id;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityAuditMetadataTest {
+
+    static class InvoiceEntity {
+        @Id
+        private Long number;
+
+        InvoiceEntity(Long number) {
+            this.number = number;
+        }
+    }
+
+    static class Base {
+        private String id = "base-1";
+    }
+
+    static class Derived extends Base {
+    }
+
+    public static class Computed {
+        public String getId() {
+            return "computed-1";
+        }
+    }
+
+    static class NoId {
+    }
+
+    @Test
+    void readsAnnotatedIdFieldWhateverItsName() {
+        EntityAuditMetadata metadata = EntityAuditMetadata.of(InvoiceEntity.class);
+        assertThat(metadata.getEntityName()).isEqualTo("Invoice");
+        assertThat(metadata.getId(new InvoiceEntity(42L))).isEqualTo("42");
+        assertThat(metadata.isNew(new InvoiceEntity(null))).isTrue();
+    }
+
+    @Test
+    void fallsBackToInheritedIdFieldThenGetter() {
+        assertThat(EntityAuditMetadata.of(Derived.class).getId(new Derived())).isEqualTo("base-1");
+        assertThat(EntityAuditMetadata.of(Computed.class).getId(new Computed())).isEqualTo("computed-1");
+        assertThat(EntityAuditMetadata.of(NoId.class).getId(new NoId())).isNull();
+    }
+
+    @Test
+    void isCachedPerClass() {
+        assertThat(EntityAuditMetadata.of(User.class)).isSameAs(EntityAuditMetadata.of(User.class));
+        assertThat(EntityAuditMetadata.of(User.class).getId(new User("7", "u", "e", "n", "r"))).isEqualTo("7");
+    }
+}
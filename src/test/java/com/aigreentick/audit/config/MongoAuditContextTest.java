@@ -0,0 +1,61 @@
+package com.aigreentick.audit.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongoAuditContextTest {
+
+    @AfterEach
+    void clear() {
+        MongoAuditContext.clear();
+    }
+
+    @Test
+    void requestContextResolvesTheClientAddressFromForwardingHeaders() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/users");
+        request.setServerName("app.example.com");
+        request.setRemoteAddr("10.0.0.9");
+        request.addHeader("X-User-Id", "u-1");
+        request.addHeader("X-Forwarded-For", " 203.0.113.7 , 10.0.0.1");
+
+        AuditContext context = AuditContext.fromRequest(request);
+
+        assertThat(context.getUsername()).isEqualTo("anonymous");
+        assertThat(context.getUserId()).isEqualTo("u-1");
+        assertThat(context.getUrlDomain()).isEqualTo("app.example.com");
+        assertThat(context.getIpAddress()).isEqualTo("203.0.113.7");
+        assertThat(AuditContext.fromRequest(new MockHttpServletRequest()).getIpAddress()).isEqualTo("127.0.0.1");
+    }
+
+    @Test
+    void contextFollowsTasksToOtherThreads() throws Exception {
+        AuditContext alice = AuditContext.of("alice", "u-1", "org-1", "app.example.com", "203.0.113.7");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            MongoAuditContext.set(alice);
+
+            CompletableFuture<AuditContext> onPool = CompletableFuture.supplyAsync(MongoAuditContext::get,
+                MongoAuditContext.propagating(pool));
+            AtomicReference<AuditContext> onThread = new AtomicReference<>();
+            Thread thread = new Thread(MongoAuditContext.wrap(() -> onThread.set(MongoAuditContext.get())));
+            thread.start();
+            thread.join();
+            AuditContext undecorated = pool.submit(MongoAuditContext::get).get();
+
+            assertThat(onPool.get()).isSameAs(alice);
+            assertThat(onThread.get()).isSameAs(alice);
+            // The pool thread does not keep the context after the task
+            assertThat(undecorated).isSameAs(AuditContext.EMPTY);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AuditLogCoalescer;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.DeleteOptions;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MongoAuditEventListenerTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final AuditLogEmitter emitter = mock(AuditLogEmitter.class);
+    private final MongoAuditEventListener listener = new MongoAuditEventListener(
+        new AuditLogCoalescer(emitter, new SimpleMeterRegistry()), mongoTemplate,
+        new AuditPolicy("audit_logs", List.of(), List.of(), List.of("CREATE", "UPDATE", "DELETE"),
+            List.of("users:password"), List.of(), List.of()));
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    @SuppressWarnings("unchecked")
+    private final MongoCommandAuditListener commandListener = new MongoCommandAuditListener(
+        mock(ObjectProvider.class), mock(AuditPolicy.class));
+    private int requestId;
+
+    MongoAuditEventListenerTest() {
+        ReflectionTestUtils.setField(listener, "defaultUsername", "system");
+        ReflectionTestUtils.setField(commandListener, "enabled", false);
+    }
+
+    @AfterEach
+    void clearMappedDelete() {
+        MongoCommandAuditListener.takeMappedDeleted();
+        MongoCommandAuditListener.clearMappedDelete();
+    }
+
+    @Test
+    void deleteByIdEmitsOneAuditLogPerDeletedDocumentAfterTheDelete() {
+        Document query = new Document("_id", new Document("$in", List.of("1", "2")));
+        MongoCollection<Document> collection = stubFind(List.of(
+            new Document("_id", "1").append("role", "GUEST").append("password", "x"),
+            new Document("_id", "2").append("role", "GUEST")), List.of());
+
+        listener.onBeforeDelete(new BeforeDeleteEvent<>(query, Object.class, "users"));
+        verify(emitter, never()).emit(any());
+        deleteCommand(2);
+        listener.onAfterDelete(new AfterDeleteEvent<>(query, Object.class, "users"));
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, times(2)).emit(sent.capture());
+        assertThat(sent.getAllValues()).extracting(AuditLog::getEntityId).containsExactly("1", "2");
+        assertThat(sent.getAllValues().get(0).getOldValue()).isEqualTo(new Document("_id", "1").append("role", "GUEST"));
+        assertThat(sent.getAllValues()).extracting(AuditLog::getAction).containsOnly("DELETE");
+        // All of them were deleted, no second read
+        verify(collection, times(1)).find(any(Bson.class));
+        verifyNoWrites(collection);
+    }
+
+    @Test
+    void aRemoveThatDeletedOnlySomeOfTheIdsAuditsOnlyThose() {
+        Document query = new Document("_id", new Document("$in", List.of("1", "2", "3")));
+        MongoCollection<Document> collection = stubFind(
+            List.of(new Document("_id", "1"), new Document("_id", "2"), new Document("_id", "3")),
+            List.of(new Document("_id", "2"), new Document("_id", "3")));
+
+        // remove(query.limit(1)) or a single-document remove
+        listener.onBeforeDelete(new BeforeDeleteEvent<>(query, Object.class, "users"));
+        deleteCommand(1);
+        listener.onAfterDelete(new AfterDeleteEvent<>(query, Object.class, "users"));
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter).emit(sent.capture());
+        assertThat(sent.getValue().getEntityId()).isEqualTo("1");
+        verifyNoWrites(collection);
+    }
+
+    @Test
+    void aRemoveThatDeletedNothingIsNotAudited() {
+        Document query = new Document("_id", "1");
+        stubFind(List.of(new Document("_id", "1")), List.of(new Document("_id", "1")));
+
+        listener.onBeforeDelete(new BeforeDeleteEvent<>(query, Object.class, "users"));
+        deleteCommand(0);
+        listener.onAfterDelete(new AfterDeleteEvent<>(query, Object.class, "users"));
+
+        verify(emitter, never()).emit(any());
+    }
+
+    @Test
+    void aLimitedRemoveOverMoreThanTheHeldMatchesDeletesOnlyWhatTheRemoveDeletes() {
+        ReflectionTestUtils.setField(listener, "maxHeldDeletes", 2);
+        List<Document> stored = new ArrayList<>(IntStream.range(0, 5).mapToObj(i -> new Document("_id", String.valueOf(i))).toList());
+        MongoCollection<Document> collection = stubFind(stored, List.of());
+
+        for (Document query : List.of(new Document("role", "GUEST"),
+                new Document("_id", new Document("$in", List.of("0", "1", "2", "3", "4"))))) {
+            // remove(new Query(...).limit(1)) matching all 5
+            listener.onBeforeDelete(new BeforeDeleteEvent<>(query, Object.class, "users"));
+            stored.remove(0);
+            deleteCommand(1);
+            listener.onAfterDelete(new AfterDeleteEvent<>(query, Object.class, "users"));
+        }
+
+        assertThat(stored).hasSize(3);
+        verifyNoWrites(collection);
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, times(2)).emit(sent.capture());
+        assertThat(sent.getAllValues()).extracting(AuditLog::getOldValue).containsOnlyNulls();
+        assertThat(sent.getAllValues().get(0).getDescription()).contains("GUEST");
+    }
+
+    @Test
+    void withoutThePreFetchTheQueryIsRecordedInTheDescription() {
+        Document query = new Document("_id", "7").append("password", "x");
+        when(mongoTemplate.getCollection("users")).thenThrow(new IllegalStateException("down"));
+
+        listener.onBeforeDelete(new BeforeDeleteEvent<>(query, Object.class, "users"));
+        listener.onAfterDelete(new AfterDeleteEvent<>(query, Object.class, "users"));
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter).emit(sent.capture());
+        assertThat(sent.getValue().getEntityId()).isEqualTo("7");
+        assertThat(sent.getValue().getOldValue()).isNull();
+        assertThat(sent.getValue().getDescription()).contains("\"_id\": \"7\"").doesNotContain("password");
+    }
+
+    /**
+     * The mapped delete of the remove, answered with the number of documents it deleted
+     */
+    private void deleteCommand(int deleted) {
+        int requestId = ++this.requestId;
+        commandListener.commandStarted(new CommandStartedEvent(null, 1, requestId, CONNECTION, "app", "delete",
+            BsonDocument.parse("{delete: 'users', deletes: []}")));
+        commandListener.commandSucceeded(new CommandSucceededEvent(null, 1, requestId, CONNECTION, "app", "delete",
+            BsonDocument.parse("{ok: 1, n: " + deleted + "}"), 1000));
+    }
+
+    private static void verifyNoWrites(MongoCollection<Document> collection) {
+        verify(collection, never()).deleteMany(any(Bson.class));
+        verify(collection, never()).deleteMany(any(Bson.class), any(DeleteOptions.class));
+        verify(collection, never()).deleteOne(any(Bson.class));
+        verify(collection, never()).deleteOne(any(Bson.class), any(DeleteOptions.class));
+    }
+
+    /**
+     * The first find answers with the held documents, the id lookup after the delete with the remaining ones
+     */
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> stubFind(List<Document> documents, List<Document> remaining) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        FindIterable<Document> iterable = mock(FindIterable.class);
+        FindIterable<Document> idLookup = mock(FindIterable.class);
+        when(mongoTemplate.getCollection("users")).thenReturn(collection);
+        when(collection.find(any(Bson.class))).thenReturn(iterable);
+        when(iterable.batchSize(anyInt())).thenReturn(iterable);
+        when(iterable.projection(any(Bson.class))).thenReturn(idLookup);
+        when(iterable.cursor()).thenAnswer(invocation -> cursor(documents));
+        when(idLookup.cursor()).thenAnswer(invocation -> cursor(remaining));
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<Document> cursor(List<Document> documents) {
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = List.copyOf(documents).iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+}
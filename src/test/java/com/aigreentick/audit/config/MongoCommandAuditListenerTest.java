@@ -0,0 +1,146 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MongoCommandAuditListenerTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final AuditLogEmitter emitter = mock(AuditLogEmitter.class);
+    private final MongoCommandAuditListener listener;
+
+    private int requestId;
+
+    @SuppressWarnings("unchecked")
+    MongoCommandAuditListenerTest() {
+        ObjectProvider<AuditLogEmitter> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(emitter);
+        listener = new MongoCommandAuditListener(provider, new AuditPolicy("audit_logs", List.of(), List.of(),
+            List.of("CREATE", "UPDATE", "DELETE"), List.of("users:password"), List.of(), List.of()));
+    }
+
+    @AfterEach
+    void clearContext() {
+        MongoAuditContext.clear();
+        MongoCommandAuditListener.clearMappedDelete();
+    }
+
+    @Test
+    void updateMultiIsOneAuditLogWithItsFilterAndUpdate() {
+        MongoAuditContext.set(AuditContext.of("alice", "u-1", null, null, null));
+
+        run("update", "{update: 'orders', ordered: true, updates: [{q: {status: 'NEW'}, u: {$set: {status: 'CANCELLED'}}, multi: true}]}",
+            "{ok: 1, n: 3, nModified: 3}");
+
+        AuditLog auditLog = sent();
+        assertThat(auditLog.getAction()).isEqualTo("UPDATE");
+        assertThat(auditLog.getEntityName()).isEqualTo("Order");
+        assertThat(auditLog.getEntityId()).isNull();
+        assertThat(auditLog.getUsername()).isEqualTo("alice");
+        assertThat(auditLog.getNewValue()).containsEntry("command", "update").containsEntry("matched", 3);
+        assertThat(auditLog.getNewValue().getList("statements", Document.class)).containsExactly(
+            new Document("filter", new Document("status", "NEW"))
+                .append("update", new Document("$set", new Document("status", "CANCELLED")))
+                .append("multi", true).append("upsert", false));
+    }
+
+    @Test
+    void bulkDeleteIsBatchedPerCommandAndSingleIdFiltersKeepTheEntityId() {
+        run("delete", "{delete: 'sessions', deletes: [{q: {_id: 'a'}, limit: 1}, {q: {_id: 'b'}, limit: 1}]}", "{ok: 1, n: 2}");
+        AuditLog bulk = sent();
+        assertThat(bulk.getAction()).isEqualTo("DELETE");
+        assertThat(bulk.getEntityId()).isNull();
+        assertThat(bulk.getOldValue()).containsEntry("statementCount", 2).containsEntry("deleted", 2);
+
+        run("findAndModify", "{findAndModify: 'orders', query: {_id: 'o-1'}, update: {$inc: {version: 1}}}",
+            "{ok: 1, lastErrorObject: {n: 1, updatedExisting: true}}");
+        assertThat(sent().getEntityId()).isEqualTo("o-1");
+    }
+
+    @Test
+    void skipsWritesTheMappingListenerAuditsAndWritesThatMatchedNothing() {
+        run("update", "{update: 'users', updates: [{q: {_id: 'u-1'}, u: {_id: 'u-1', name: 'saved'}, upsert: true}]}",
+            "{ok: 1, n: 1, nModified: 1}");
+        MongoCommandAuditListener.expectMappedDelete("users");
+        run("delete", "{delete: 'users', deletes: [{q: {_id: 'u-1'}, limit: 0}]}", "{ok: 1, n: 1}");
+        run("update", "{update: 'users', updates: [{q: {_id: 'missing'}, u: {$set: {name: 'x'}}}]}",
+            "{ok: 1, n: 0, nModified: 0}");
+        run("update", "{update: 'audit_logs', updates: [{q: {}, u: {$set: {x: 1}}, multi: true}]}",
+            "{ok: 1, n: 5, nModified: 5}");
+
+        verify(emitter, never()).emit(any());
+    }
+
+    @Test
+    void ignoredFieldsAreLeftOutOfFiltersAndUpdates() {
+        run("update", "{update: 'users', updates: [{q: {_id: 'u-1', password: 'old'}, u: {$set: {password: 'new', name: 'Bob'}}}]}",
+            "{ok: 1, n: 1, nModified: 1}");
+        Document statement = sent().getNewValue().getList("statements", Document.class).get(0);
+        assertThat(statement.get("filter")).isEqualTo(new Document("_id", "u-1"));
+        assertThat(statement.get("update")).isEqualTo(new Document("$set", new Document("name", "Bob")));
+
+        run("findAndModify", "{findAndModify: 'users', query: {password: 'old'}, update: [{$unset: 'password'}, {$set: {password: 'x'}}]}",
+            "{ok: 1, lastErrorObject: {n: 1, updatedExisting: true}}");
+        statement = sent().getNewValue().getList("statements", Document.class).get(0);
+        assertThat(statement.get("filter")).isEqualTo(new Document());
+        assertThat(statement.get("update")).isEqualTo(List.of(new Document("$unset", "password"), new Document("$set", new Document())));
+
+        run("delete", "{delete: 'users', deletes: [{q: {password: 'old'}, limit: 0}]}", "{ok: 1, n: 1}");
+        assertThat(sent().getOldValue().getList("statements", Document.class).get(0).get("filter")).isEqualTo(new Document());
+    }
+
+    @Test
+    void aMappedDeleteExpectationOnlyCoversTheNextCommand() {
+        // The remove failed before sending its delete
+        MongoCommandAuditListener.expectMappedDelete("users");
+        run("find", "{find: 'users', filter: {role: 'GUEST'}}", "{ok: 1, cursor: {id: 0, firstBatch: []}}");
+        run("delete", "{delete: 'users', deletes: [{q: {_id: 'u-1'}, limit: 0}]}", "{ok: 1, n: 1}");
+        assertThat(sent().getAction()).isEqualTo("DELETE");
+
+        // A remove with a limit looks the ids up first
+        MongoCommandAuditListener.expectMappedDelete("users");
+        run("find", "{find: 'users', filter: {role: 'GUEST'}, projection: {_id: 1}, limit: 1}",
+            "{ok: 1, cursor: {id: 0, firstBatch: []}}");
+        run("delete", "{delete: 'users', deletes: [{q: {_id: {$in: ['u-2']}}, limit: 0}]}", "{ok: 1, n: 1}");
+        verify(emitter, times(1)).emit(any());
+    }
+
+    private void run(String commandName, String command, String response) {
+        int id = ++requestId;
+        listener.commandStarted(new CommandStartedEvent(null, 1, id, CONNECTION, "app", commandName,
+            BsonDocument.parse(command)));
+        listener.commandSucceeded(new CommandSucceededEvent(null, 1, id, CONNECTION, "app", commandName,
+            BsonDocument.parse(response), 1000));
+    }
+
+    private AuditLog sent() {
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, atLeastOnce()).emit(sent.capture());
+        return sent.getValue();
+    }
+}
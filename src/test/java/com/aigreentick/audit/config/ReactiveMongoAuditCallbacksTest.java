@@ -0,0 +1,102 @@
+package com.aigreentick.audit.config;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.aigreentick.audit.model.User;
+import com.aigreentick.audit.service.AuditLogEmitter;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveMongoAuditCallbacksTest {
+
+    private final ReactiveMongoOperations mongoOperations = mock(ReactiveMongoOperations.class);
+    private final AuditLogEmitter emitter = mock(AuditLogEmitter.class);
+    private final ReactiveMongoAuditCallbacks callbacks;
+
+    @SuppressWarnings("unchecked")
+    ReactiveMongoAuditCallbacksTest() {
+        ObjectProvider<ReactiveMongoOperations> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(mongoOperations);
+        callbacks = new ReactiveMongoAuditCallbacks(provider, emitter,
+            new AuditPolicy("audit_logs", List.of(), List.of("sessions"), List.of("CREATE", "UPDATE", "DELETE"),
+                List.of(), List.of(), List.of()));
+    }
+
+    @Test
+    void updateIsAuditedWithTheChangesAndTheContextOfTheSubscriber() {
+        User user = new User("1", "alice", "new@example.com", "Alice", "USER");
+        when(mongoOperations.findById("1", Document.class, "users"))
+            .thenReturn(Mono.just(document("old@example.com")));
+
+        AuditContext context = AuditContext.of("alice", "u-1", "org-1", "api.example.com", "10.0.0.1");
+        Object saved = Mono.from(callbacks.onBeforeConvert(user, "users"))
+            .flatMap(entity -> Mono.from(callbacks.onAfterSave(entity, document("new@example.com"), "users")))
+            .contextWrite(ctx -> ctx.put(AuditContext.class, context))
+            .block();
+
+        assertThat(saved).isSameAs(user);
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter).tryEmit(sent.capture());
+        AuditLog auditLog = sent.getValue();
+        assertThat(auditLog.getAction()).isEqualTo("UPDATE");
+        assertThat(auditLog.getUsername()).isEqualTo("alice");
+        assertThat(auditLog.getOrganizationId()).isEqualTo("org-1");
+        assertThat(auditLog.getIpAddress()).isEqualTo("10.0.0.1");
+        assertThat(auditLog.getChanges()).containsExactly(new Document("path", "email")
+            .append("old", "old@example.com").append("new", "new@example.com"));
+        verify(emitter, never()).emit(any());
+    }
+
+    @Test
+    void createWithoutContextIsAuditedAsTheDefaultUser() {
+        User user = new User(null, "bob", "bob@example.com", "Bob", "USER");
+
+        Mono.from(callbacks.onBeforeConvert(user, "users")).block();
+        user.setId("2");
+        Mono.from(callbacks.onAfterSave(user, new Document("_id", "2").append("username", "bob"), "users")).block();
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter).tryEmit(sent.capture());
+        assertThat(sent.getValue().getAction()).isEqualTo("CREATE");
+        assertThat(sent.getValue().getUsername()).isEqualTo("system");
+        assertThat(sent.getValue().getEntityId()).isEqualTo("2");
+        assertThat(sent.getValue().getNewValue()).containsEntry("username", "bob");
+    }
+
+    @Test
+    void failedOldValueReadDoesNotFailTheSave() {
+        User user = new User("3", "carol", "carol@example.com", "Carol", "USER");
+        when(mongoOperations.findById("3", Document.class, "users"))
+            .thenReturn(Mono.error(new IllegalStateException("down")));
+
+        assertThat(Mono.from(callbacks.onBeforeConvert(user, "users")).block()).isSameAs(user);
+    }
+
+    @Test
+    void excludedCollectionsAreNotRead() {
+        Object session = new User("4", "dave", "dave@example.com", "Dave", "USER");
+
+        Mono.from(callbacks.onBeforeConvert(session, "sessions")).block();
+        Mono.from(callbacks.onAfterSave(session, new Document("_id", "4"), "sessions")).block();
+
+        verify(mongoOperations, never()).findById(any(), any(), any());
+        verify(emitter, never()).tryEmit(any());
+    }
+
+    private static Document document(String email) {
+        return new Document("_id", "1").append("username", "alice").append("email", email)
+            .append("fullName", "Alice").append("role", "USER");
+    }
+}
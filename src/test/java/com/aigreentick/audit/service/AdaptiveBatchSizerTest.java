@@ -0,0 +1,64 @@
+package com.aigreentick.audit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveBatchSizerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdaptiveBatchSizer sizer =
+            new AdaptiveBatchSizer("test", 100, 50, 1000, Duration.ofMillis(200), meterRegistry);
+
+    @Test
+    void growsWhilePerDocumentLatencyImproves() {
+        // Fixed round trip + tiny per-document cost: bigger batches are always cheaper per document
+        for (int window = 0; window < 5; window++) {
+            recordWindow(sizer.getBatchSize(), 5 + sizer.getBatchSize() / 100);
+        }
+        assertThat(sizer.getBatchSize()).isGreaterThan(200);
+    }
+
+    @Test
+    void shrinksWhenP99ExceedsTarget() {
+        recordWindow(100, 500);
+        assertThat(sizer.getBatchSize()).isEqualTo(70);
+    }
+
+    @Test
+    void aSingleSlowWriteInAWindowDoesNotShrinkTheBatch() {
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW; i++) {
+            sizer.recordWrite(100, TimeUnit.MILLISECONDS.toNanos(i == 7 ? 2000 : 50), true);
+        }
+        assertThat(sizer.getBatchSize()).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void staysWithinBounds() {
+        for (int window = 0; window < 20; window++) {
+            recordWindow(sizer.getBatchSize(), 1000);
+        }
+        assertThat(sizer.getBatchSize()).isEqualTo(50);
+    }
+
+    @Test
+    void partialBatchesDoNotMoveTheSize() {
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW * 3; i++) {
+            sizer.recordWrite(3, TimeUnit.MILLISECONDS.toNanos(1000), false);
+        }
+        assertThat(sizer.getBatchSize()).isEqualTo(100);
+        assertThat(meterRegistry.get("audit.consumer.batch.write").timer().count())
+                .isEqualTo(AdaptiveBatchSizer.WINDOW * 3);
+        assertThat(meterRegistry.get("audit.consumer.batch.size").gauge().value()).isEqualTo(100);
+    }
+
+    private void recordWindow(int documents, long latencyMillis) {
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW; i++) {
+            sizer.recordWrite(documents, TimeUnit.MILLISECONDS.toNanos(latencyMillis), true);
+        }
+    }
+}
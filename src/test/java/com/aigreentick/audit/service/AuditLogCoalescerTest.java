@@ -0,0 +1,102 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class AuditLogCoalescerTest {
+
+    private final AuditLogEmitter emitter = mock(AuditLogEmitter.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AuditLogCoalescer coalescer = new AuditLogCoalescer(emitter, meterRegistry);
+
+    @Test
+    void mergesUpdatesOfTheWindowIntoFirstOldAndLastNewValue() {
+        coalescer.emit(update("alice", "status", "NEW", "PAID"), 200);
+        coalescer.emit(update("alice", "status", "PAID", "SHIPPED"), 200);
+        coalescer.emit(update("alice", "status", "SHIPPED", "DELIVERED"), 200);
+        verify(emitter, never()).emit(any());
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> verify(emitter).emit(sent.capture()));
+        assertThat(sent.getValue().getChanges()).containsExactly(
+            new Document("path", "status").append("old", "NEW").append("new", "DELIVERED"));
+        assertThat(meterRegistry.counter("audit.coalescer.merged").count()).isEqualTo(2);
+        assertThat(coalescer.getPendingCount()).isZero();
+    }
+
+    @Test
+    void anotherUserOrADeleteEmitsThePendingUpdateFirst() {
+        AuditLog byAlice = update("alice", "status", "NEW", "PAID");
+        AuditLog byBob = update("bob", "status", "PAID", "SHIPPED");
+        AuditLog delete = auditLog("bob", "DELETE");
+
+        coalescer.emit(byAlice, 60_000);
+        coalescer.emit(byBob, 60_000);
+        coalescer.emit(delete, 60_000);
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, times(3)).emit(sent.capture());
+        assertThat(sent.getAllValues()).containsExactly(byAlice, byBob, delete);
+    }
+
+    @Test
+    void emitsOutsideTheMapSoTheEmitterMayCallBack() {
+        AuditLog pendingUpdate = update("alice", "status", "NEW", "PAID");
+        AuditLog delete = auditLog("alice", "DELETE");
+        // A map bin held while emitting would fail this with a recursive update
+        doAnswer(invocation -> {
+            coalescer.getPendingCount();
+            coalescer.emit(auditLog("bob", "DELETE"), 60_000);
+            return true;
+        }).when(emitter).emit(pendingUpdate);
+
+        coalescer.emit(pendingUpdate, 60_000);
+        coalescer.emit(delete, 60_000);
+
+        ArgumentCaptor<AuditLog> sent = ArgumentCaptor.forClass(AuditLog.class);
+        verify(emitter, times(3)).emit(sent.capture());
+        assertThat(sent.getAllValues().get(0)).isSameAs(pendingUpdate);
+        assertThat(sent.getAllValues().get(2)).isSameAs(delete);
+        assertThat(coalescer.getPendingCount()).isZero();
+    }
+
+    @Test
+    void withoutAWindowEventsPassStraightThrough() {
+        AuditLog auditLog = update("alice", "status", "NEW", "PAID");
+
+        coalescer.emit(auditLog, 0);
+
+        verify(emitter).emit(auditLog);
+        assertThat(coalescer.getPendingCount()).isZero();
+    }
+
+    private static AuditLog update(String username, String path, Object oldValue, Object newValue) {
+        AuditLog auditLog = auditLog(username, "UPDATE");
+        auditLog.setChanges(List.of(new Document("path", path).append("old", oldValue).append("new", newValue)));
+        return auditLog;
+    }
+
+    private static AuditLog auditLog(String username, String action) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setUsername(username);
+        auditLog.setEntityName("Order");
+        auditLog.setEntityId("42");
+        auditLog.setAction(action);
+        return auditLog;
+    }
+}
@@ -0,0 +1,152 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuditLogEmitterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AuditLogKafkaProducer producer = mock(AuditLogKafkaProducer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch kafkaDown = new CountDownLatch(1);
+
+    AuditLogEmitterTest() {
+        // The producer blocks like a full buffer.memory until the latch opens
+        when(producer.sendAuditLog(any())).thenAnswer(invocation -> {
+            kafkaDown.await(10, TimeUnit.SECONDS);
+            sent.add(invocation.<AuditLog>getArgument(0).getEntityId());
+            return null;
+        });
+        when(producer.sendAuditLogs(any())).thenAnswer(invocation -> {
+            kafkaDown.await(10, TimeUnit.SECONDS);
+            invocation.<List<AuditLog>>getArgument(0).forEach(auditLog -> sent.add(auditLog.getEntityId()));
+            return null;
+        });
+    }
+
+    @Test
+    void dropsAndCountsWhenTheRingIsFullWithoutBlockingTheCaller() throws Exception {
+        AuditLogEmitter emitter = emitter("drop");
+
+        long started = System.nanoTime();
+        int emitted = 0;
+        for (int i = 0; i < 20; i++) {
+            emitted += emitter.emit(auditLog(i)) ? 1 : 0;
+        }
+        int accepted = emitted;
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(1000);
+        // 4 slots plus the one the publisher is stuck sending
+        assertThat(accepted).isBetween(4, 5);
+        assertThat(meterRegistry.counter("audit.emitter.dropped").count()).isEqualTo(20 - accepted);
+
+        kafkaDown.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sent.size() == accepted);
+        emitter.stop();
+    }
+
+    @Test
+    void spillsOverflowToDiskAndSendsEverythingInOrder() throws Exception {
+        AuditLogEmitter emitter = emitter("spill");
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(emitter.emit(auditLog(i))).isTrue();
+        }
+        assertThat(meterRegistry.counter("audit.emitter.spilled").count()).isPositive();
+
+        kafkaDown.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sent.size() == 20);
+        assertThat(sent).containsExactly("0", "1", "2", "3", "4", "5", "6", "7", "8", "9",
+            "10", "11", "12", "13", "14", "15", "16", "17", "18", "19");
+        emitter.stop();
+    }
+
+    @Test
+    void dropsOnceTheSpillFileIsFullAndSpillsWithAssignedIds() throws Exception {
+        AuditLogEmitter emitter = emitter("spill");
+        ReflectionTestUtils.setField(emitter, "spillFile", new MappedSegmentSpool(tempDir.resolve("small"), 1024, 2048));
+
+        List<AuditLog> emitted = new ArrayList<>();
+        int accepted = 0;
+        for (int i = 0; i < 50; i++) {
+            AuditLog auditLog = auditLog(i);
+            if (emitter.emit(auditLog)) {
+                emitted.add(auditLog);
+                accepted++;
+            }
+        }
+
+        assertThat(accepted).isLessThan(50);
+        assertThat(meterRegistry.counter("audit.emitter.dropped").count()).isEqualTo(50 - accepted);
+        assertThat(emitted).filteredOn(auditLog -> Integer.parseInt(auditLog.getEntityId()) > 5)
+            .isNotEmpty()
+            .allSatisfy(auditLog -> assertThat(auditLog.getId()).isNotNull());
+        kafkaDown.countDown();
+        emitter.stop();
+    }
+
+    @Test
+    void tryEmitDropsInsteadOfSpilling() throws Exception {
+        AuditLogEmitter emitter = emitter("spill");
+
+        int accepted = 0;
+        for (int i = 0; i < 20; i++) {
+            accepted += emitter.tryEmit(auditLog(i)) ? 1 : 0;
+        }
+
+        assertThat(accepted).isBetween(4, 5);
+        assertThat(meterRegistry.counter("audit.emitter.spilled").count()).isZero();
+        assertThat(meterRegistry.counter("audit.emitter.dropped").count()).isEqualTo(20 - accepted);
+        kafkaDown.countDown();
+        emitter.stop();
+    }
+
+    @Test
+    void spillPolicyRequiresADirectory() {
+        AuditLogEmitter emitter = new AuditLogEmitter(producer, meterRegistry);
+        ReflectionTestUtils.setField(emitter, "ringSize", 4);
+        ReflectionTestUtils.setField(emitter, "overflowPolicyProperty", "spill");
+        ReflectionTestUtils.setField(emitter, "spillDirectory", "");
+
+        assertThatThrownBy(emitter::start).isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("audit.emitter.spill-directory");
+    }
+
+    private AuditLogEmitter emitter(String overflowPolicy) {
+        AuditLogEmitter emitter = new AuditLogEmitter(producer, meterRegistry);
+        ReflectionTestUtils.setField(emitter, "ringSize", 4);
+        ReflectionTestUtils.setField(emitter, "overflowPolicyProperty", overflowPolicy);
+        ReflectionTestUtils.setField(emitter, "blockTimeoutMs", 10L);
+        ReflectionTestUtils.setField(emitter, "spillDirectory", tempDir.toString());
+        ReflectionTestUtils.setField(emitter, "spillMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(emitter, "spillSegmentSize", 64 * 1024);
+        ReflectionTestUtils.setField(emitter, "drainTimeoutMs", 1000L);
+        emitter.start();
+        return emitter;
+    }
+
+    private static AuditLog auditLog(int id) {
+        AuditLog auditLog = new AuditLog("alice", "User", "UPDATE");
+        auditLog.setEntityId(String.valueOf(id));
+        return auditLog;
+    }
+}
@@ -0,0 +1,131 @@
+package com.aigreentick.audit.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuditLogKafkaProducerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Callback> callbacks = new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, AuditLog> kafkaTemplate = mock(KafkaTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final Producer<String, AuditLog> kafkaProducer = mock(Producer.class);
+
+    private final AuditLogKafkaProducer producer = new AuditLogKafkaProducer();
+
+    @SuppressWarnings("unchecked")
+    AuditLogKafkaProducerTest() {
+        // Acknowledgements are held until the test completes the callbacks
+        when(kafkaProducer.send(any(), any())).thenAnswer(invocation -> {
+            callbacks.add(invocation.getArgument(1));
+            return null;
+        });
+        when(kafkaTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<KafkaOperations.ProducerCallback<String, AuditLog, ?>>getArgument(0).doInKafka(kafkaProducer));
+        ReflectionTestUtils.setField(producer, "auditLogsTopic", "audit-logs");
+        ReflectionTestUtils.setField(producer, "kafkaTemplate", kafkaTemplate);
+        ReflectionTestUtils.setField(producer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(producer, "maxInFlight", 2);
+        ReflectionTestUtils.setField(producer, "spoolEnabled", false);
+        producer.start();
+    }
+
+    @Test
+    void batchCompletesOnceEveryRecordIsAcknowledgedWithBoundedInFlightSends() {
+        CompletableFuture<CompletableFuture<Void>> batch = CompletableFuture.supplyAsync(() ->
+            producer.sendAuditLogs(IntStream.range(0, 3).mapToObj(AuditLogKafkaProducerTest::auditLog).toList()));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> callbacks.size() == 2);
+        assertThat(meterRegistry.get("audit.producer.in-flight").gauge().value()).isEqualTo(2);
+        assertThat(batch).isNotDone();
+
+        callbacks.get(0).onCompletion(null, null);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> callbacks.size() == 3);
+        callbacks.get(1).onCompletion(null, null);
+        CompletableFuture<Void> result = batch.join();
+        assertThat(result).isNotDone();
+
+        callbacks.get(2).onCompletion(null, null);
+        assertThat(result).isCompleted();
+        assertThat(meterRegistry.get("audit.producer.send").timer().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("audit.producer.in-flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void batchFailsWhenARecordIsLost() {
+        CompletableFuture<Void> result = producer.sendAuditLogs(List.of(auditLog(1), auditLog(2)));
+
+        callbacks.get(0).onCompletion(null, null);
+        callbacks.get(1).onCompletion(null, new IllegalStateException("broker down"));
+
+        assertThat(result).isCompletedExceptionally();
+        assertThat(meterRegistry.get("audit.producer.failed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failuresAreCountedPerRecordButLoggedOncePerOutage() {
+        Logger logger = (Logger) LoggerFactory.getLogger(AuditLogKafkaProducer.class);
+        ListAppender<ILoggingEvent> logged = new ListAppender<>();
+        logged.start();
+        logger.addAppender(logged);
+        try {
+            producer.sendAuditLogs(IntStream.range(0, 2).mapToObj(AuditLogKafkaProducerTest::auditLog).toList());
+            callbacks.forEach(callback -> callback.onCompletion(null, new IllegalStateException("broker down")));
+            assertThat(producer.isFailing()).isTrue();
+            producer.sendAuditLogs(List.of(auditLog(2)));
+            callbacks.get(2).onCompletion(null, new IllegalStateException("broker down"));
+            producer.sendAuditLogs(List.of(auditLog(3)));
+            callbacks.get(3).onCompletion(null, null);
+
+            assertThat(meterRegistry.get("audit.producer.failed").counter().count()).isEqualTo(3);
+            assertThat(producer.isFailing()).isFalse();
+            assertThat(logged.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.ERROR, Level.INFO);
+        } finally {
+            logger.detachAppender(logged);
+        }
+    }
+
+    @Test
+    void everyRecordLeftUnsentIsCountedWhenTheProducerFails() {
+        doThrow(new IllegalStateException("producer closed")).when(kafkaTemplate).execute(any());
+
+        CompletableFuture<Void> result = producer.sendAuditLogs(
+            IntStream.range(0, 3).mapToObj(AuditLogKafkaProducerTest::auditLog).toList());
+
+        assertThat(result).isCompletedExceptionally();
+        assertThat(meterRegistry.get("audit.producer.failed").counter().count()).isEqualTo(3);
+        assertThat(producer.isFailing()).isTrue();
+    }
+
+    private static AuditLog auditLog(int id) {
+        AuditLog auditLog = new AuditLog("alice", "User", "UPDATE");
+        auditLog.setEntityId(String.valueOf(id));
+        return auditLog;
+    }
+}
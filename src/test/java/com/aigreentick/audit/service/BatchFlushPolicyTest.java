@@ -0,0 +1,49 @@
+package com.aigreentick.audit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchFlushPolicyTest {
+
+    private final BatchFlushPolicy policy = new BatchFlushPolicy(10, Duration.ofMillis(500), 1024);
+
+    @Test
+    void emptyBufferNeverFlushes() {
+        assertThat(policy.evaluate(0, 0, Duration.ofHours(1).toNanos())).isNull();
+    }
+
+    @Test
+    void flushesOnWhicheverLimitIsReachedFirst() {
+        assertThat(policy.evaluate(10, 100, 0)).isEqualTo(BatchFlushPolicy.FlushReason.SIZE);
+        assertThat(policy.evaluate(3, 2048, 0)).isEqualTo(BatchFlushPolicy.FlushReason.BYTES);
+        assertThat(policy.evaluate(3, 100, Duration.ofMillis(500).toNanos())).isEqualTo(BatchFlushPolicy.FlushReason.LINGER);
+        assertThat(policy.evaluate(3, 100, Duration.ofMillis(100).toNanos())).isNull();
+    }
+
+    @Test
+    void byteLimitGrowsWithALargerBatchSize() {
+        assertThat(policy.evaluate(3, 5, 1024, 0)).isEqualTo(BatchFlushPolicy.FlushReason.BYTES);
+        assertThat(policy.evaluate(15, 40, 2048, 0)).isNull();
+        assertThat(policy.evaluate(15, 40, 4096, 0)).isEqualTo(BatchFlushPolicy.FlushReason.BYTES);
+        assertThat(new BatchFlushPolicy(10, Duration.ofMillis(500), Long.MAX_VALUE).maxBytesFor(1000))
+            .isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void checkIntervalIsBoundedByLinger() {
+        assertThat(policy.checkInterval()).isEqualTo(Duration.ofMillis(125));
+        assertThat(new BatchFlushPolicy(10, Duration.ofSeconds(30), 1024).checkInterval()).isEqualTo(Duration.ofMillis(250));
+    }
+
+    @Test
+    void rejectsNonPositiveLimits() {
+        assertThatThrownBy(() -> new BatchFlushPolicy(0, Duration.ofMillis(500), 1024))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BatchFlushPolicy(10, Duration.ZERO, 1024))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
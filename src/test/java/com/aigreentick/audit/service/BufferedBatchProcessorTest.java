@@ -0,0 +1,139 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class BufferedBatchProcessorTest {
+
+    private static final TopicPartition P0 = new TopicPartition("audit-logs", 0);
+    private static final TopicPartition P1 = new TopicPartition("audit-logs", 1);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofMillis(500);
+
+    private final ExecutorService writers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "test-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger writeAttempts = new AtomicInteger();
+
+    // MongoDB is down for good
+    private final BufferedBatchProcessor<String> processor = new BufferedBatchProcessor<>("test",
+            new BatchFlushPolicy(2, Duration.ofSeconds(30), Long.MAX_VALUE),
+            AdaptiveBatchSizer.fixed("test", 2, null),
+            WriteBacklog.unbounded("test"),
+            batch -> {
+                writeAttempts.incrementAndGet();
+                throw new IllegalStateException("MongoDB unavailable");
+            },
+            writers, 1, DRAIN_TIMEOUT);
+
+    @AfterEach
+    void shutDownWriters() {
+        writers.shutdownNow();
+    }
+
+    @Test
+    void stopReturnsWithinDrainTimeoutWhileWritesKeepFailing() {
+        fillWithStuckWriter();
+
+        long started = System.nanoTime();
+        processor.stop();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(DRAIN_TIMEOUT.plusMillis(250));
+        assertThat(writeAttempts).hasPositiveValue();
+        assertThat(processor.getBufferedRecords()).isZero();
+        assertThat(processor.getAssignedPartitions()).isZero();
+    }
+
+    @Test
+    void revokeReturnsWithinDrainTimeoutWhileWritesKeepFailing() {
+        fillWithStuckWriter();
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(P0));
+
+        long started = System.nanoTime();
+        processor.onPartitionsRevoked(consumer, List.of(P0));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(DRAIN_TIMEOUT.plusMillis(250));
+        assertThat(processor.getAssignedPartitions()).isZero();
+        // Nothing was written, so nothing may be committed
+        assertThat(consumer.committed(Set.of(P0)).get(P0)).isNull();
+        processor.stop();
+    }
+
+    @Test
+    void saturatedWriterPoolKeepsRecordsBufferedInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<String>> written = new CopyOnWriteArrayList<>();
+        try (BatchWriterPool pool = new BatchWriterPool("test", 1, false)) {
+            BufferedBatchProcessor<String> pooled = new BufferedBatchProcessor<>("test",
+                    new BatchFlushPolicy(2, Duration.ofSeconds(30), Long.MAX_VALUE),
+                    AdaptiveBatchSizer.fixed("test", 2, null),
+                    WriteBacklog.unbounded("test"),
+                    batch -> {
+                        awaitQuietly(release);
+                        written.add(BufferedBatchProcessor.values(batch));
+                    },
+                    pool, 4, DRAIN_TIMEOUT);
+            pooled.onPartitionsAssigned(List.of(P0, P1));
+
+            pooled.add(records(P0, 0, 2));
+            // The only writer is busy with P0 - P1 must not park the poll thread
+            long started = System.nanoTime();
+            pooled.add(records(P1, 0, 2));
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(100));
+            assertThat(pooled.getBufferedRecords()).isEqualTo(2);
+
+            release.countDown();
+            pooled.start();
+            await().atMost(Duration.ofSeconds(5)).until(() -> written.size() == 2);
+            assertThat(pooled.getBufferedRecords()).isZero();
+            pooled.stop();
+        }
+    }
+
+    /**
+     * One batch retrying in the only writer slot and a second full batch waiting for it
+     */
+    private void fillWithStuckWriter() {
+        processor.start();
+        processor.onPartitionsAssigned(List.of(P0));
+        processor.add(records(P0, 0, 2));
+        processor.add(records(P0, 2, 2));
+        assertThat(processor.getBufferedRecords()).isEqualTo(2);
+    }
+
+    private static List<ConsumerRecord<String, String>> records(TopicPartition partition, long firstOffset, int count) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long offset = firstOffset + i;
+            records.add(new ConsumerRecord<>(partition.topic(), partition.partition(), offset, "key-" + offset, "value-" + offset));
+        }
+        return records;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.config.AuditEventDeserializer;
+import com.aigreentick.audit.config.AuditEventSerializer;
+import com.aigreentick.audit.config.AuditWireFormat;
+import com.aigreentick.audit.model.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class KafkaSendSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private volatile boolean kafkaDown = true;
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, AuditLog> kafkaTemplate = mock(KafkaTemplate.class);
+
+    KafkaSendSpoolTest() {
+        when(kafkaTemplate.send(eq("audit-logs"), anyString(), any())).thenAnswer(invocation -> {
+            if (kafkaDown) {
+                return CompletableFuture.failedFuture(new IllegalStateException("broker down"));
+            }
+            sent.add(invocation.<AuditLog>getArgument(2).getEntityId());
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void replaysSpooledRecordsInOrderOnceKafkaIsBack() {
+        KafkaSendSpool<AuditLog> spool = spool(new MappedSegmentSpool(tempDir, 4096, 1 << 20));
+        for (int i = 0; i < 5; i++) {
+            assertThat(spool.spool(auditLog(i))).isTrue();
+        }
+        assertThat(spool.isBrokerDown()).isTrue();
+
+        assertThat(spool.replayBatch()).isFalse();
+        assertThat(sent).isEmpty();
+
+        kafkaDown = false;
+        assertThat(spool.replayBatch()).isTrue();
+        assertThat(spool.replayBatch()).isTrue();
+        assertThat(sent).containsExactly("0", "1", "2", "3", "4");
+        assertThat(meterRegistry.counter("audit.spool.spooled", "topic", "audit-logs").count()).isEqualTo(5);
+        assertThat(meterRegistry.counter("audit.spool.drained", "topic", "audit-logs").count()).isEqualTo(5);
+    }
+
+    @Test
+    void brokerStaysDownWhileRecordsAreSpooled() {
+        KafkaSendSpool<AuditLog> spool = spool(new MappedSegmentSpool(tempDir, 4096, 1 << 20));
+        spool.spool(auditLog(0));
+
+        assertThat(spool.clearBrokerDownIfEmpty()).isFalse();
+        assertThat(spool.isBrokerDown()).isTrue();
+
+        kafkaDown = false;
+        spool.replayBatch();
+        assertThat(spool.clearBrokerDownIfEmpty()).isTrue();
+        assertThat(spool.isBrokerDown()).isFalse();
+    }
+
+    @Test
+    void countsRecordsLostToAFullSpool() {
+        KafkaSendSpool<AuditLog> spool = spool(new MappedSegmentSpool(tempDir, 256, 512));
+
+        int spooled = 0;
+        for (int i = 0; i < 50; i++) {
+            spooled += spool.spool(auditLog(i)) ? 1 : 0;
+        }
+
+        assertThat(spooled).isLessThan(50);
+        assertThat(meterRegistry.counter("audit.spool.dropped", "topic", "audit-logs").count()).isEqualTo(50 - spooled);
+    }
+
+    private KafkaSendSpool<AuditLog> spool(MappedSegmentSpool mappedSpool) {
+        // 30 records per second: 3 per replayed batch
+        return new KafkaSendSpool<>("audit-logs", mappedSpool, kafkaTemplate, AuditLog::getEntityId,
+            new AuditEventSerializer<>(AuditWireFormat.BINARY), new AuditEventDeserializer<>(AuditLog.class),
+            30, 10, meterRegistry);
+    }
+
+    private static AuditLog auditLog(int i) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setEntityName("User");
+        auditLog.setEntityId(String.valueOf(i));
+        auditLog.setAction("UPDATE");
+        return auditLog;
+    }
+}
@@ -0,0 +1,93 @@
+package com.aigreentick.audit.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedSegmentSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void recordsStayUntilCommitted() {
+        MappedSegmentSpool spool = new MappedSegmentSpool(tempDir, 1024, 1 << 20);
+        spool.append(bytes("a"));
+        spool.append(bytes("b"));
+        spool.append(bytes("c"));
+
+        assertThat(strings(spool.peek(2))).containsExactly("a", "b");
+        assertThat(strings(spool.peek(2))).containsExactly("a", "b");
+        spool.commit();
+
+        assertThat(strings(spool.peek(10))).containsExactly("c");
+        spool.commit();
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(spool.getPendingBytes()).isZero();
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesThemOnceRead() throws Exception {
+        MappedSegmentSpool spool = new MappedSegmentSpool(tempDir, 64, 1 << 20);
+        IntStream.range(0, 20).forEach(i -> spool.append(bytes("record-" + i)));
+        assertThat(spool.getSegmentCount()).isGreaterThan(3);
+
+        List<String> read = strings(spool.peek(100));
+        spool.commit();
+
+        assertThat(read).containsExactlyElementsOf(IntStream.range(0, 20).mapToObj(i -> "record-" + i).toList());
+        assertThat(segmentFiles()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsRecordsOnceFull() {
+        MappedSegmentSpool spool = new MappedSegmentSpool(tempDir, 64, 128);
+
+        long appended = IntStream.range(0, 20).filter(i -> spool.append(bytes("record-" + i))).count();
+
+        assertThat(appended).isLessThan(20);
+        assertThat(spool.getPendingRecords()).isEqualTo(appended);
+        assertThat(spool.append(new byte[100])).isFalse();
+    }
+
+    @Test
+    void uncommittedRecordsAreReadAgainAfterRestart() {
+        MappedSegmentSpool spool = new MappedSegmentSpool(tempDir, 64, 1 << 20);
+        IntStream.range(0, 10).forEach(i -> spool.append(bytes("record-" + i)));
+        spool.peek(4);
+        spool.commit();
+        spool.peek(3);
+        spool.close();
+
+        MappedSegmentSpool reopened = new MappedSegmentSpool(tempDir, 64, 1 << 20);
+        assertThat(reopened.getPendingRecords()).isEqualTo(6);
+        assertThat(strings(reopened.peek(100))).containsExactly(
+            "record-4", "record-5", "record-6", "record-7", "record-8", "record-9");
+
+        reopened.append(bytes("after-restart"));
+        reopened.commit();
+        assertThat(strings(reopened.peek(100))).containsExactly("after-restart");
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        return records.stream().map(record -> new String(record, StandardCharsets.UTF_8)).toList();
+    }
+}
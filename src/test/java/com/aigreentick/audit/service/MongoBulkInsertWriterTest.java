@@ -0,0 +1,129 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MongoBulkInsertWriterTest {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int VALIDATION_FAILED = 121;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> collection = mock(MongoCollection.class);
+    // Entity ids of every bulk insert, in call order
+    private final List<List<String>> bulkWrites = new ArrayList<>();
+
+    MongoBulkInsertWriterTest() {
+        MongoConverter converter = mock(MongoConverter.class);
+        doAnswer(invocation -> {
+            invocation.<Document>getArgument(1).put("_id", invocation.<AuditLog>getArgument(0).getEntityId());
+            return null;
+        }).when(converter).write(any(), any());
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollection("audit_logs")).thenReturn(collection);
+    }
+
+    @Test
+    void duplicatesAreSkippedAndOnlyFailedDocumentsAreRetried() {
+        // 0 and 4 stored, 1 a redelivered copy, 2 and 3 fail - 2 goes through on the second attempt, 3 on the third
+        stubBulkWrites(
+            List.of(error(1, DUPLICATE_KEY), error(2, VALIDATION_FAILED), error(3, VALIDATION_FAILED)),
+            List.of(error(1, VALIDATION_FAILED)),
+            List.of());
+        MongoBulkInsertWriter<AuditLog> writer = new MongoBulkInsertWriter<>(mongoTemplate, "audit_logs", 3);
+
+        MongoBulkInsertWriter.BulkInsertResult<AuditLog> result = writer.insert(auditLogs(5));
+
+        assertThat(bulkWrites).containsExactly(List.of("0", "1", "2", "3", "4"), List.of("2", "3"), List.of("3"));
+        assertThat(result.getInserted()).isEqualTo(4);
+        assertThat(result.getDuplicates()).isEqualTo(1);
+        assertThat(result.getFailures()).isEmpty();
+        assertThat(result.getRejected()).isEmpty();
+    }
+
+    @Test
+    void documentsStillFailingAfterTheLastAttemptAreReturnedWithTheirPositions() {
+        stubBulkWrites(
+            List.of(error(1, VALIDATION_FAILED), error(3, VALIDATION_FAILED)),
+            List.of(error(0, VALIDATION_FAILED), error(1, VALIDATION_FAILED)),
+            List.of(error(1, VALIDATION_FAILED)));
+        MongoBulkInsertWriter<AuditLog> writer = new MongoBulkInsertWriter<>(mongoTemplate, "audit_logs", 3);
+
+        MongoBulkInsertWriter.BulkInsertResult<AuditLog> result = writer.insert(auditLogs(4));
+
+        assertThat(bulkWrites).containsExactly(List.of("0", "1", "2", "3"), List.of("1", "3"), List.of("1", "3"));
+        assertThat(result.getInserted()).isEqualTo(3);
+        assertThat(result.getRejected()).extracting(AuditLog::getEntityId).containsExactly("3");
+        assertThat(result.getRejectedPositions()).containsExactly(3);
+        assertThat(result.getFailures()).extracting(BulkWriteError::getCode).containsExactly(VALIDATION_FAILED);
+    }
+
+    @Test
+    void acceptFailsOnlyWhenDocumentsWereRejected() {
+        stubBulkWrites(List.of(error(0, DUPLICATE_KEY)));
+        new MongoBulkInsertWriter<AuditLog>(mongoTemplate, "audit_logs", 1).accept(auditLogs(2));
+
+        stubBulkWrites(List.of(error(1, VALIDATION_FAILED)));
+        assertThatThrownBy(() -> new MongoBulkInsertWriter<AuditLog>(mongoTemplate, "audit_logs", 1).accept(auditLogs(2)))
+            .isInstanceOf(MongoBulkInsertWriter.MongoBulkInsertException.class)
+            .hasMessageContaining("1 documents could not be inserted into audit_logs");
+    }
+
+    /**
+     * Every bulk write answers with the next list of errors; an empty list means all documents were inserted
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void stubBulkWrites(List<BulkWriteError>... errorsPerCall) {
+        bulkWrites.clear();
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+            List<InsertOneModel<Document>> models = invocation.getArgument(0);
+            bulkWrites.add(models.stream().map(model -> model.getDocument().getString("_id")).toList());
+            List<BulkWriteError> errors = errorsPerCall[bulkWrites.size() - 1];
+            BulkWriteResult result = BulkWriteResult.acknowledged(models.size() - errors.size(), 0, 0, 0,
+                List.of(), List.of());
+            if (errors.isEmpty()) {
+                return result;
+            }
+            throw new MongoBulkWriteException(result, errors, null, new ServerAddress(), Set.of());
+        });
+    }
+
+    private static BulkWriteError error(int index, int code) {
+        return new BulkWriteError(code, "error " + code, new BsonDocument(), index);
+    }
+
+    private static List<AuditLog> auditLogs(int count) {
+        List<AuditLog> auditLogs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AuditLog auditLog = new AuditLog("alice", "User", "CREATE");
+            auditLog.setEntityId(String.valueOf(i));
+            auditLogs.add(auditLog);
+        }
+        return auditLogs;
+    }
+}
@@ -0,0 +1,70 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOffsetTrackerTest {
+
+    private static final TopicPartition P0 = new TopicPartition("audit-logs", 0);
+    private static final TopicPartition P1 = new TopicPartition("audit-logs", 1);
+
+    private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+
+    @Test
+    void watermarkOnlyAdvancesPastContiguousDurableBatches() {
+        List<PartitionOffsetTracker.Segment> first = tracker.register(Map.of(P0, 9L));
+        List<PartitionOffsetTracker.Segment> second = tracker.register(Map.of(P0, 19L));
+
+        // Second batch finishes first - nothing may be committed yet
+        tracker.markDurable(second);
+        assertThat(tracker.committableOffsets(List.of(P0))).isEmpty();
+
+        tracker.markDurable(first);
+        assertThat(tracker.committableOffsets(List.of(P0)))
+                .containsEntry(P0, new OffsetAndMetadata(20));
+    }
+
+    @Test
+    void committedOffsetsAreNotReturnedTwice() {
+        tracker.markDurable(tracker.register(Map.of(P0, 4L, P1, 7L)));
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.committableOffsets(List.of(P0, P1));
+        assertThat(offsets).containsEntry(P0, new OffsetAndMetadata(5)).containsEntry(P1, new OffsetAndMetadata(8));
+
+        tracker.markCommitted(offsets);
+        assertThat(tracker.committableOffsets(List.of(P0, P1))).isEmpty();
+    }
+
+    @Test
+    void onlyAssignedPartitionsAreReturned() {
+        tracker.markDurable(tracker.register(Map.of(P0, 4L, P1, 7L)));
+
+        assertThat(tracker.committableOffsets(List.of(P1))).containsOnlyKeys(P1);
+    }
+
+    @Test
+    void forgottenPartitionsIgnoreLateCompletions() {
+        List<PartitionOffsetTracker.Segment> segments = tracker.register(Map.of(P0, 4L));
+        tracker.forget(List.of(P0));
+
+        tracker.markDurable(segments);
+        assertThat(tracker.committableOffsets(List.of(P0))).isEmpty();
+        assertThat(tracker.pendingSegments(P0)).isZero();
+    }
+
+    @Test
+    void cancelledSegmentsDoNotHoldBackTheWatermark() {
+        List<PartitionOffsetTracker.Segment> first = tracker.register(Map.of(P0, 9L));
+        tracker.cancel(tracker.register(Map.of(P0, 19L)));
+        assertThat(tracker.pendingSegments(P0)).isEqualTo(1);
+
+        tracker.markDurable(first);
+        assertThat(tracker.committableOffsets(List.of(P0))).containsEntry(P0, new OffsetAndMetadata(10));
+    }
+}
@@ -0,0 +1,127 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import com.mongodb.bulk.BulkWriteError;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RetryTopicPublisherTest {
+
+    private final RetryTopicPublisher publisher = new RetryTopicPublisher();
+
+    @Test
+    void derivesRetryAndDeadLetterTopicsFromAnyStage() {
+        assertThat(RetryTopicPublisher.retryTopic("audit-logs")).isEqualTo("audit-logs-retry");
+        assertThat(RetryTopicPublisher.retryTopic("audit-logs-retry")).isEqualTo("audit-logs-retry");
+        assertThat(RetryTopicPublisher.deadLetterTopic("audit-logs")).isEqualTo("audit-logs.DLT");
+        assertThat(RetryTopicPublisher.deadLetterTopic("audit-logs-retry")).isEqualTo("audit-logs.DLT");
+        assertThat(RetryTopicPublisher.baseTopic("exception-logs.DLT")).isEqualTo("exception-logs");
+    }
+
+    @Test
+    void readsAttemptAndBackoffHeaders() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("audit-logs-retry", 0, 0, "key", "value");
+        assertThat(publisher.getAttempt(record)).isZero();
+        assertThat(publisher.remainingBackoff(record)).isZero();
+
+        record.headers().add(RetryTopicPublisher.ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(2).array());
+        record.headers().add(RetryTopicPublisher.NOT_BEFORE_HEADER,
+            ByteBuffer.allocate(Long.BYTES).putLong(System.currentTimeMillis() + 60_000).array());
+        assertThat(publisher.getAttempt(record)).isEqualTo(2);
+        assertThat(publisher.remainingBackoff(record)).isBetween(50_000L, 60_000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void redeliveredPollOnlyDeadLettersWhatWasNotMovedYet() {
+        KafkaTemplate<String, byte[]> template = mock(KafkaTemplate.class);
+        ReflectionTestUtils.setField(publisher, "deadLetterKafkaTemplate", template);
+        List<Long> sentOffsets = new ArrayList<>();
+        AtomicBoolean failOffsetOne = new AtomicBoolean(true);
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, byte[]> sent = invocation.getArgument(0);
+            long offset = ByteBuffer.wrap(sent.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong();
+            sentOffsets.add(offset);
+            return offset == 1 && failOffsetOne.get()
+                ? CompletableFuture.failedFuture(new IllegalStateException("broker down"))
+                : CompletableFuture.completedFuture(null);
+        });
+        List<ConsumerRecord<String, Object>> poll = List.of(undeserializable(0), undeserializable(1));
+
+        assertThatThrownBy(() -> publisher.deadLetterDeserializationFailures(poll))
+            .isInstanceOf(IllegalStateException.class);
+        failOffsetOne.set(false);
+        publisher.deadLetterDeserializationFailures(poll);
+
+        assertThat(sentOffsets).containsExactly(0L, 1L, 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rejectedDocumentsKeepTheKeysOfTheirRecords() {
+        KafkaTemplate<String, byte[]> template = mock(KafkaTemplate.class);
+        ReflectionTestUtils.setField(publisher, "deadLetterKafkaTemplate", template);
+        ReflectionTestUtils.setField(publisher, "wireFormat", "json");
+        publisher.init();
+        List<ProducerRecord<String, byte[]>> sent = new ArrayList<>();
+        when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+        List<ConsumerRecord<String, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(new ConsumerRecord<>("audit-logs", 0, i, "User-" + i, new AuditLog("alice", "User", "UPDATE")));
+        }
+        BulkWriteError error = new BulkWriteError(121, "Document failed validation", new BsonDocument(), 0);
+
+        publisher.publishRejected("audit-logs", batch, new MongoBulkInsertWriter.BulkInsertResult<>(2, 0,
+            List.of(error), List.of(batch.get(2).value()), List.of(2)));
+
+        assertThat(sent).singleElement().satisfies(record -> {
+            assertThat(record.topic()).isEqualTo("audit-logs-retry");
+            assertThat(record.key()).isEqualTo("User-2");
+        });
+    }
+
+    @Test
+    void recordWithoutDeserializationHeaderIsNotAFailure() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("audit-logs", 0, 0, "key", null);
+        assertThat(publisher.getDeserializationFailure(record)).isNull();
+    }
+
+    /**
+     * Record as the listener sees it after the ErrorHandlingDeserializer caught a failure
+     */
+    private static ConsumerRecord<String, Object> undeserializable(long offset) {
+        Headers headers = new RecordHeaders();
+        try (ErrorHandlingDeserializer<Object> deserializer = new ErrorHandlingDeserializer<>((topic, data) -> {
+            throw new IllegalArgumentException("unknown version");
+        })) {
+            deserializer.deserialize("audit-logs", headers, new byte[] {1, 2, 3});
+        }
+        return new ConsumerRecord<>("audit-logs", 0, offset, 0L, TimestampType.CREATE_TIME, 0, 3, "key", null,
+            headers, Optional.empty());
+    }
+}
@@ -0,0 +1,41 @@
+package com.aigreentick.audit.service;
+
+import com.aigreentick.audit.model.AuditLog;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantBatchesTest {
+
+    @Test
+    void writesOneBatchPerOrganizationKeepingTheOrderWithin() {
+        List<List<String>> written = new ArrayList<>();
+        TenantBatches.<AuditLog>routing(batch -> written.add(batch.stream().map(record -> record.value().getEntityId()).toList()))
+            .accept(List.of(auditLog("1", "org-a"), auditLog("2", "org-b"), auditLog("3", "org-a"),
+                auditLog("4", null), auditLog("5", "org-b")));
+
+        assertThat(written).containsExactly(List.of("1", "3"), List.of("2", "5"), List.of("4"));
+    }
+
+    @Test
+    void singleTenantBatchIsWrittenAsIs() {
+        List<ConsumerRecord<String, AuditLog>> batch = List.of(auditLog("1", "org-a"), auditLog("2", "org-a"));
+        List<List<ConsumerRecord<String, AuditLog>>> written = new ArrayList<>();
+
+        TenantBatches.<AuditLog>routing(written::add).accept(batch);
+
+        assertThat(written).containsExactly(batch);
+        assertThat(written.get(0)).isSameAs(batch);
+    }
+
+    private static ConsumerRecord<String, AuditLog> auditLog(String entityId, String organizationId) {
+        AuditLog auditLog = new AuditLog("alice", "User", "UPDATE");
+        auditLog.setEntityId(entityId);
+        auditLog.setOrganizationId(organizationId);
+        return new ConsumerRecord<>("audit-logs", 0, Long.parseLong(entityId), "User-" + entityId, auditLog);
+    }
+}
@@ -0,0 +1,91 @@
+package com.aigreentick.audit.service;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBacklogTest {
+
+    private static final TopicPartition P0 = new TopicPartition("audit-logs", 0);
+    private static final TopicPartition P1 = new TopicPartition("audit-logs", 1);
+
+    private final List<TopicPartition> paused = new ArrayList<>();
+    private final List<TopicPartition> resumed = new ArrayList<>();
+    private final WriteBacklog backlog = new WriteBacklog("test", 100, 10_000, 0.5,
+            new WriteBacklog.PartitionPauser() {
+                @Override
+                public void pause(TopicPartition partition) {
+                    paused.add(partition);
+                }
+
+                @Override
+                public void resume(TopicPartition partition) {
+                    resumed.add(partition);
+                }
+            }, null);
+
+    @Test
+    void pausesOnlyWhenRecordLimitReached() {
+        backlog.add(99, 100);
+        backlog.pauseIfFull(List.of(P0, P1));
+        assertThat(paused).isEmpty();
+
+        backlog.add(1, 10);
+        backlog.pauseIfFull(List.of(P0, P1));
+        assertThat(paused).containsExactly(P0, P1);
+        assertThat(backlog.getPausedPartitions()).isEqualTo(2);
+    }
+
+    @Test
+    void pausesWhenByteLimitReached() {
+        backlog.add(1, 10_000);
+        backlog.pauseIfFull(List.of(P0));
+        assertThat(paused).containsExactly(P0);
+    }
+
+    @Test
+    void pausesEachPartitionOnce() {
+        backlog.add(150, 100);
+        backlog.pauseIfFull(List.of(P0));
+        backlog.pauseIfFull(List.of(P0, P1));
+        assertThat(paused).containsExactly(P0, P1);
+    }
+
+    @Test
+    void resumesOnlyBelowLowWaterMark() {
+        backlog.add(120, 1_000);
+        backlog.pauseIfFull(List.of(P0, P1));
+
+        backlog.remove(60, 500);
+        assertThat(resumed).isEmpty();
+
+        backlog.remove(10, 100);
+        assertThat(resumed).containsExactlyInAnyOrder(P0, P1);
+        assertThat(backlog.getPausedPartitions()).isZero();
+        assertThat(backlog.getRecords()).isEqualTo(50);
+    }
+
+    @Test
+    void forgottenPartitionsAreResumedAndNotResumedAgain() {
+        backlog.add(100, 100);
+        backlog.pauseIfFull(List.of(P0, P1));
+
+        backlog.forget(List.of(P0));
+        assertThat(resumed).containsExactly(P0);
+
+        backlog.remove(100, 100);
+        assertThat(resumed).containsExactly(P0, P1);
+    }
+
+    @Test
+    void unboundedBacklogNeverPauses() {
+        WriteBacklog unbounded = WriteBacklog.unbounded("test");
+        unbounded.add(1_000_000, Integer.MAX_VALUE);
+        unbounded.pauseIfFull(List.of(P0));
+        assertThat(unbounded.getPausedPartitions()).isZero();
+    }
+}